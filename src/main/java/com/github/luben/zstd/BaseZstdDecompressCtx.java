@@ -0,0 +1,17 @@
+package com.github.luben.zstd;
+
+/**
+ * Base class of {@link ZstdDecompressCtx}. It is replaced in the Java 22 layer of the
+ * multi-release jar by a version that adds methods working on MemorySegments.
+ */
+abstract class BaseZstdDecompressCtx extends AutoCloseBase {
+
+    abstract void ensureOpen();
+
+    abstract long getNativePtr();
+
+    /**
+     * Whether the native calls may run in a critical region, false if they call back into Java
+     */
+    abstract boolean allowsCriticalCall();
+}
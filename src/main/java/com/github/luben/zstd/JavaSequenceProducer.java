@@ -0,0 +1,93 @@
+package com.github.luben.zstd;
+
+import com.github.luben.zstd.util.Native;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link SequenceProducer} implemented in Java: the native sequence producer
+ * registered by {@link ZstdCompressCtx#registerSequenceProducer(SequenceProducer)}
+ * calls back {@link #produceSequences} for each block, so an external match finder
+ * can be written without a native build.
+ *
+ * The callback goes through JNI, so the compression methods of the context don't access
+ * byte arrays in a JNI critical region while such a producer is registered: byte arrays are
+ * compressed through direct staging buffers, and the streaming methods don't accept a mix of
+ * heap and direct buffers.
+ *
+ * The producer is called in the thread calling the compression, zstd doesn't support
+ * external sequence producers with workers. An exception thrown by the producer is
+ * rethrown when the compression returns, even if the compression falls back to the
+ * internal match finder, see {@link ZstdCompressCtx#setSequenceProducerFallback(boolean)}.
+ */
+public abstract class JavaSequenceProducer implements SequenceProducer {
+
+    static {
+        Native.load();
+    }
+
+    /**
+     * Return value of {@link #produceSequences} failing the block
+     */
+    public static final long ERROR = -1;
+
+    // size of ZSTD_Sequence
+    private static final int SEQUENCE_SIZE = 16;
+
+    /**
+     * Produces the sequences of a block
+     *
+     * Each sequence is 16 bytes, 4 ints in the native byte order: offset, litLength,
+     * matchLength and rep, that is ignored. The sum of the litLengths and matchLengths must
+     * be the size of the block. Each matchLength must be at least 3, except that of the last
+     * sequence that may be 0 with an offset of 0, to end the block with literals. The offsets
+     * must not exceed the window size.
+     *
+     * @param sequences the destination of the sequences, direct and in the native byte order,
+     *                  with room for at least {@link Zstd#sequenceBound(long)} sequences. It's
+     *                  valid only during the call.
+     * @param src the block, at most 128KB, read-only and valid only during the call
+     * @param dict the history before the block, zstd passes an empty one for now
+     * @param compressionLevel the compression level of the context
+     * @param windowSize the largest offset allowed
+     * @return the number of sequences, more than 0 for a non-empty block, or {@link #ERROR}
+     */
+    public abstract long produceSequences(@NotNull ByteBuffer sequences, @NotNull ByteBuffer src, @NotNull ByteBuffer dict,
+            int compressionLevel, long windowSize);
+
+    // called from the native sequence producer
+    private long produce(@NotNull ByteBuffer sequences, @NotNull ByteBuffer src, @NotNull ByteBuffer dict,
+            int compressionLevel, long windowSize) {
+        sequences.order(ByteOrder.nativeOrder());
+        long count = produceSequences(sequences, src.asReadOnlyBuffer(), dict.asReadOnlyBuffer(), compressionLevel, windowSize);
+        return count < 0 || count > sequences.capacity() / SEQUENCE_SIZE ? ERROR : count;
+    }
+
+    @Override
+    public final long getFunctionPointer() {
+        return functionPointer0();
+    }
+
+    @Override
+    public final long createState() {
+        long state = createState0(this);
+        if (state == 0) {
+            throw new ZstdException(Zstd.errMemoryAllocation(), "Cannot create the state of the sequence producer");
+        }
+        return state;
+    }
+
+    @Override
+    public final void freeState(long statePointer) {
+        freeState0(statePointer);
+    }
+
+    private static native long functionPointer0();
+
+    private static native long createState0(@NotNull JavaSequenceProducer producer);
+
+    private static native void freeState0(long statePointer);
+}
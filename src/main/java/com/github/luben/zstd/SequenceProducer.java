@@ -4,6 +4,9 @@ package com.github.luben.zstd;
  * Interface for an extenal sequence producer. To register a sequence producer,
  * pass an object implementing this interface to
  * {@link ZstdCompressCtx#registerSequenceProducer(SequenceProducer)}.
+ *
+ * The sequence producer function is native, see {@link JavaSequenceProducer} to
+ * implement it in Java.
  */
 public interface SequenceProducer {
   /**
@@ -3,6 +3,7 @@ package com.github.luben.zstd;
 import com.github.luben.zstd.util.Native;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -18,6 +19,16 @@ public class Zstd {
      */
     public static final long MAX_DECOMPRESS_SIZE;
 
+    private static final @NotNull String maxCriticalSizeOverride = "ZstdMaxCriticalSize";
+    /**
+     * Default max size of the byte arrays that compression and decompression contexts access in a JNI critical
+     * region, blocking the GC for the duration of the call. Larger arrays are copied through direct buffers of
+     * this size instead, see {@link ZstdCompressCtx#setMaxCriticalSize(int)}.
+     *
+     * It can be controlled by the ZstdMaxCriticalSize property and defaults to 0 (no limit)
+     */
+    public static final int MAX_CRITICAL_SIZE;
+
     static {
         Native.load();
         long configuredMax;
@@ -28,6 +39,14 @@ public class Zstd {
             configuredMax = 512L * 1024L * 1024L;
         }
         MAX_DECOMPRESS_SIZE = configuredMax;
+        int configuredCritical;
+        try {
+            String prop = System.getProperty(maxCriticalSizeOverride);
+            configuredCritical = (prop != null) ? Integer.parseInt(prop) : 0;
+        } catch (NumberFormatException e) {
+            configuredCritical = 0;
+        }
+        MAX_CRITICAL_SIZE = Math.max(configuredCritical, 0);
     }
 
     /**
@@ -621,11 +640,17 @@ public class Zstd {
     public static native int setCompressionChecksums(long stream, boolean useChecksums);
     public static native int setCompressionMagicless(long stream, boolean useMagicless);
     public static native int setCompressionLevel(long stream, int level);
+    public static native int getCompressionLevel(long stream);
     public static native int setCompressionLong(long stream, int windowLog);
     public static native int setCompressionWorkers(long stream, int workers);
+    static native int setCompressionThreadPool(long stream, long pool);
     public static native int setCompressionOverlapLog(long stream, int overlapLog);
     public static native int setCompressionJobSize(long stream, int jobSize);
+    public static native int setCompressionRsyncable(long stream, boolean rsyncable);
+    public static native int setCompressionSrcSizeHint(long stream, int srcSizeHint);
+    public static native int setCompressionPledgedSrcSize(long stream, long srcSize);
     public static native int setCompressionTargetLength(long stream, int targetLength);
+    public static native int setCompressionTargetCBlockSize(long stream, int targetCBlockSize);
     public static native int setCompressionMinMatch(long stream, int minMatch);
     public static native int setCompressionSearchLog(long stream, int searchLog);
     public static native int setCompressionChainLog(long stream, int chainLog);
@@ -634,11 +659,19 @@ public class Zstd {
     public static native int setCompressionStrategy(long stream, int strategy);
     public static native int setDecompressionLongMax(long stream, int windowLogMax);
     public static native int setDecompressionMagicless(long stream, boolean useMagicless);
+    public static native int setCompressionStableInBuffer(long stream, boolean stable);
+    public static native int setCompressionStableOutBuffer(long stream, boolean stable);
+    public static native int setDecompressionStableOutBuffer(long stream, boolean stable);
     public static native int setRefMultipleDDicts(long stream, boolean useMultiple);
     public static native int setValidateSequences(long stream, int validateSequences);
     public static native int setSequenceProducerFallback(long stream, boolean fallbackFlag);
+    public static native int setBlockDelimiters(long stream, boolean explicitDelimiters);
     public static native int setSearchForExternalRepcodes(long stream, int searchRepcodes);
     public static native int setEnableLongDistanceMatching(long stream, int enableLDM);
+    public static native int setLiteralCompressionMode(long stream, int literalCompressionMode);
+    public static native int setBlockSplitterLevel(long stream, int blockSplitterLevel);
+    public static native int setSplitAfterSequences(long stream, int splitAfterSequences);
+    public static native int setUseRowMatchFinder(long stream, int useRowMatchFinder);
 
     /* Utility methods */
     /**
@@ -666,7 +699,7 @@ public class Zstd {
         return size;
     }
 
-    private static native long findFrameCompressedSize0(byte @NotNull [] src, int srcPosition, int srcSize);
+    static native long findFrameCompressedSize0(byte @NotNull [] src, int srcPosition, int srcSize);
 
     /**
      * Return the compressed size of a frame within a buffer.
@@ -913,6 +946,32 @@ public class Zstd {
      */
     public static native long    compressBound(long srcSize);
 
+    /**
+     * Maximum number of sequences generated from the data
+     *
+     * @param srcSize the size of the data
+     * @return the maximum number of sequences, see {@link ZstdCompressCtx#generateSequences(int[], byte[], int, int)}
+     */
+    public static native long    sequenceBound(long srcSize);
+
+    /**
+     * Remove the block delimiters from an array of sequences, merging the literals of each
+     * delimiter into the next sequence, so they can be compressed with
+     * {@link ZstdCompressCtx#setBlockDelimiters(boolean)} disabled.
+     *
+     * @param sequences the sequences, 4 ints per sequence: offset, litLength, matchLength, rep
+     * @param nbSequences the number of sequences
+     * @return the number of sequences left at the start of the array
+     */
+    public static int mergeBlockDelimiters(int @NotNull [] sequences, int nbSequences) {
+        if (nbSequences < 0 || nbSequences > sequences.length / 4) {
+            throw new ArrayIndexOutOfBoundsException(nbSequences);
+        }
+        return mergeBlockDelimiters0(sequences, nbSequences);
+    }
+
+    private static native int mergeBlockDelimiters0(int @NotNull [] sequences, int nbSequences);
+
     /**
      * Error handling
      *
@@ -982,9 +1041,33 @@ public class Zstd {
         if (samples.length <= 10) {
             throw new ZstdException(Zstd.errGeneric(), "nb of samples too low");
         }
-        return trainFromBuffer0(samples, dictBuffer, legacy, compressionLevel);
+        return trainFromBuffer0(samples, dictBuffer, legacy, compressionLevel, null);
     }
-    private static native long trainFromBuffer0(byte @NotNull [][] samples, byte @NotNull [] dictBuffer, boolean legacy, int compressionLevel);
+
+    /**
+     * Creates a new dictionary to tune a kind of samples with the COVER or fastCover
+     * algorithm, optionally searching for the best parameters in parallel
+     *
+     * @param samples the samples buffer array
+     * @param dictBuffer the new dictionary buffer
+     * @param params the training parameters, updated with the selected ones when optimizing
+     * @return the number of bytes into buffer 'dictBuffer' or an error code if
+     *          it fails (which can be tested using ZSTD_isError())
+     */
+    public static long trainFromBuffer(byte @NotNull [][] samples, byte @NotNull [] dictBuffer, @NotNull ZstdDictTrainParams params) {
+        Objects.requireNonNull(samples, "samples");
+        Objects.requireNonNull(dictBuffer, "dictBuffer");
+        Objects.requireNonNull(params, "params");
+        for (byte[] sample : samples) {
+            Objects.requireNonNull(sample, "sample");
+        }
+        if (samples.length <= 10) {
+            throw new ZstdException(Zstd.errGeneric(), "nb of samples too low");
+        }
+        return trainFromBuffer0(samples, dictBuffer, false, params.getCompressionLevel(), params);
+    }
+
+    private static native long trainFromBuffer0(byte @NotNull [][] samples, byte @NotNull [] dictBuffer, boolean legacy, int compressionLevel, @Nullable ZstdDictTrainParams params);
 
     /**
      * Creates a new dictionary to tune a kind of samples
@@ -1018,11 +1101,32 @@ public class Zstd {
         if (sampleSizes.length <= 10) {
             throw new ZstdException(Zstd.errGeneric(), "nb of samples too low");
         }
-        return trainFromBufferDirect0(samples, sampleSizes, dictBuffer, legacy, compressionLevel);
+        return trainFromBufferDirect0(samples, sampleSizes, dictBuffer, legacy, compressionLevel, null);
     }
 
+    /**
+     * Creates a new dictionary to tune a kind of samples with the COVER or fastCover
+     * algorithm, optionally searching for the best parameters in parallel
+     *
+     * @param samples the samples direct byte buffer array
+     * @param sampleSizes java integer array of sizes
+     * @param dictBuffer the new dictionary buffer (preallocated direct byte buffer)
+     * @param params the training parameters, updated with the selected ones when optimizing
+     * @return the number of bytes into buffer 'dictBuffer' or an error code if
+     *          it fails (which can be tested using ZSTD_isError())
+     */
+    public static long trainFromBufferDirect(@NotNull ByteBuffer samples, int @NotNull [] sampleSizes, @NotNull ByteBuffer dictBuffer, @NotNull ZstdDictTrainParams params) {
+        Objects.requireNonNull(samples, "samples");
+        Objects.requireNonNull(sampleSizes, "sampleSizes");
+        Objects.requireNonNull(dictBuffer, "dictBuffer");
+        Objects.requireNonNull(params, "params");
+        if (sampleSizes.length <= 10) {
+            throw new ZstdException(Zstd.errGeneric(), "nb of samples too low");
+        }
+        return trainFromBufferDirect0(samples, sampleSizes, dictBuffer, false, params.getCompressionLevel(), params);
+    }
 
-    private static native long trainFromBufferDirect0(@NotNull ByteBuffer samples, int @NotNull [] sampleSizes, @NotNull ByteBuffer dictBuffer, boolean legacy, int compressionLevel);
+    private static native long trainFromBufferDirect0(@NotNull ByteBuffer samples, int @NotNull [] sampleSizes, @NotNull ByteBuffer dictBuffer, boolean legacy, int compressionLevel, @Nullable ZstdDictTrainParams params);
 
     /**
      * Get DictId from a compressed frame
@@ -0,0 +1,203 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * OutputStream filter that compresses the data adapting the compression level to the
+ * bottleneck, like `zstd --adapt`: the level is raised when the time is spent writing
+ * to the underlying stream, e.g. on a slow network, and lowered when it's spent compressing.
+ *
+ * The level is evaluated every {@link #setUpdateInterval(int) updateInterval} bytes of input
+ * and moves by one step at a time within the configured bounds. With workers, the new level
+ * applies from the next compression job. Without workers zstd can't change the level of a
+ * started frame, so the frame is ended and the next one uses the new level - the output is
+ * then a sequence of frames, that the decompressors of this library read as one stream.
+ *
+ * It's not thread-safe.
+ */
+public class ZstdAdaptiveOutputStream extends FilterOutputStream {
+
+    // share of the time spent writing above which the level is raised
+    private static final double RAISE_THRESHOLD = 0.5;
+    // share of the time spent writing below which the level is lowered
+    private static final double LOWER_THRESHOLD = 0.2;
+
+    @NotNull
+    private final ZstdCompressCtx ctx;
+    @NotNull
+    private final ByteBuffer dst;
+    @NotNull
+    private final ByteBuffer empty = ByteBuffer.allocate(0);
+    private final int minLevel;
+    private final int maxLevel;
+    private final boolean multithreaded;
+    private int level;
+    private int updateInterval = 1 << 20;
+    private boolean closed = false;
+
+    // since the last evaluation
+    private long pendingBytes = 0;
+    private long compressNanos = 0;
+    private long writeNanos = 0;
+    // input buffered by the workers and not compressed yet, at the last evaluation
+    private long backlog = 0;
+
+    /**
+     * @param out the output stream
+     * @param level the initial compression level
+     * @param minLevel the lowest level to use
+     * @param maxLevel the highest level to use
+     * @param workers the number of worker threads, 0 to compress in the calling thread
+     */
+    public ZstdAdaptiveOutputStream(@NotNull OutputStream out, int level, int minLevel, int maxLevel, int workers) {
+        super(out);
+        if (minLevel > maxLevel || level < minLevel || level > maxLevel) {
+            throw new IllegalArgumentException("The level must be between minLevel and maxLevel");
+        }
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+        this.level = level;
+        this.multithreaded = workers > 0;
+        this.ctx = new ZstdCompressCtx();
+        try {
+            ctx.setLevel(level);
+            if (workers > 0) {
+                ctx.setWorkers(workers);
+            }
+        } catch (RuntimeException e) {
+            ctx.close();
+            throw e;
+        }
+        this.dst = ByteBuffer.allocate((int) ZstdOutputStreamNoFinalizer.recommendedCOutSize());
+    }
+
+    /**
+     * Set how often the level is evaluated
+     *
+     * @param updateInterval the bytes of input between the evaluations, default: 1MB
+     */
+    public @NotNull ZstdAdaptiveOutputStream setUpdateInterval(int updateInterval) {
+        if (updateInterval <= 0) {
+            throw new IllegalArgumentException("updateInterval must be positive");
+        }
+        this.updateInterval = updateInterval;
+        return this;
+    }
+
+    /**
+     * @return the current compression level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public void write(int i) throws IOException {
+        write(new byte[] {(byte) i}, 0, 1);
+    }
+
+    @Override
+    public void write(byte @NotNull [] src, int offset, int len) throws IOException {
+        Objects.checkFromIndexSize(offset, len, src.length);
+        if (closed) {
+            throw new IOException("StreamClosed");
+        }
+        int end = offset + len;
+        while (offset < end) {
+            if (pendingBytes >= updateInterval) {
+                // the interval was lowered since the last write
+                adapt();
+            }
+            // large writes are split to evaluate the level on time
+            int chunk = (int) Math.min(end - offset, updateInterval - pendingBytes);
+            ByteBuffer input = ByteBuffer.wrap(src, offset, chunk);
+            while (input.hasRemaining()) {
+                compress(input, EndDirective.CONTINUE);
+            }
+            offset += chunk;
+            pendingBytes += chunk;
+            if (pendingBytes >= updateInterval) {
+                adapt();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            throw new IOException("StreamClosed");
+        }
+        while (!compress(empty, EndDirective.FLUSH)) {
+        }
+        long start = System.nanoTime();
+        out.flush();
+        writeNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            while (!compress(empty, EndDirective.END)) {
+            }
+            out.close();
+        } finally {
+            closed = true;
+            ctx.close();
+        }
+    }
+
+    private boolean compress(@NotNull ByteBuffer input, @NotNull EndDirective endOp) throws IOException {
+        boolean done;
+        long start = System.nanoTime();
+        try {
+            done = ctx.compressByteBufferStream(dst, input, endOp);
+        } catch (ZstdException e) {
+            throw new ZstdIOException(e.getErrorCode(), e.getMessage());
+        }
+        compressNanos += System.nanoTime() - start;
+        if (dst.position() > 0) {
+            start = System.nanoTime();
+            out.write(dst.array(), dst.arrayOffset(), dst.position());
+            writeNanos += System.nanoTime() - start;
+            dst.clear();
+        }
+        return done;
+    }
+
+    private void adapt() throws IOException {
+        boolean compressionLagging = false;
+        if (multithreaded) {
+            ZstdFrameProgression progression = ctx.getFrameProgression();
+            long current = progression.getIngested() - progression.getConsumed();
+            compressionLagging = current > backlog;
+            backlog = current;
+        }
+        double writeShare = (double) writeNanos / Math.max(1, writeNanos + compressNanos);
+        int next = level;
+        if (compressionLagging || writeShare < LOWER_THRESHOLD) {
+            next = Math.max(minLevel, level - 1);
+        } else if (writeShare > RAISE_THRESHOLD) {
+            next = Math.min(maxLevel, level + 1);
+        }
+        if (next != level) {
+            if (!multithreaded) {
+                // the level of a started frame can't change
+                while (!compress(empty, EndDirective.END)) {
+                }
+            }
+            ctx.setLevel(next);
+            level = next;
+        }
+        pendingBytes = 0;
+        compressNanos = 0;
+        writeNanos = 0;
+    }
+}
@@ -6,9 +6,10 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
-public class ZstdCompressCtx extends AutoCloseBase {
+public class ZstdCompressCtx extends BaseZstdCompressCtx {
 
     static {
         Native.load();
@@ -19,11 +20,47 @@ public class ZstdCompressCtx extends AutoCloseBase {
     @Nullable
     private ZstdDictCompress compression_dict = null;
 
+    @Nullable
+    private ZstdThreadPool thread_pool = null;
+
     @Nullable
     private SequenceProducer seqprod = null;
 
     private long seqprod_state = 0;
 
+    // the registered producer calls back into Java, so the arrays must not be accessed in a critical region
+    private boolean java_producer = false;
+
+    @NotNull
+    private Zstd.ParamSwitch validate_sequences = Zstd.ParamSwitch.AUTO;
+
+    // Note: keeps a reference to the prefix so it's not garbage collected while referenced
+    @Nullable
+    private ByteBuffer prefix = null;
+
+    // direct buffer holding the copies of byte array prefixes
+    @Nullable
+    private ByteBuffer prefix_copy = null;
+
+    private int max_critical_size = Zstd.MAX_CRITICAL_SIZE;
+
+    // the byte arrays are not staged with stable buffers, the staging would break their guarantees
+    private boolean stable_in = false;
+    private boolean stable_out = false;
+
+    @Nullable
+    private ZstdCompressibilityProbe probe = null;
+
+    // direct buffers used to stage byte arrays larger than max_critical_size
+    @Nullable
+    private ByteBuffer staging_in = null;
+
+    @Nullable
+    private ByteBuffer staging_out = null;
+
+    // size of the staging buffers without limit on the critical size, one block
+    private static final int STAGING_SIZE = 128 * 1024;
+
     private static native long init();
 
     private static native void free(long ptr);
@@ -53,9 +90,13 @@ public class ZstdCompressCtx extends AutoCloseBase {
             compression_dict.releaseSharedLock();
             compression_dict = null;
         }
+        if (thread_pool != null) {
+            thread_pool.releaseSharedLock();
+            thread_pool = null;
+        }
     }
 
-    private void ensureOpen() {
+    void ensureOpen() {
         if (nativePtr == 0) {
             throw new IllegalStateException("Compression context is closed");
         }
@@ -119,6 +160,42 @@ public class ZstdCompressCtx extends AutoCloseBase {
         return this;
     }
 
+    /**
+     * Use a shared pool of native threads for the workers of this context instead
+     * of creating dedicated threads. Has effect only if workers are enabled with
+     * {@link #setWorkers(int)}.
+     *
+     * The context keeps a reference to the pool until it is closed, so the pool
+     * cannot be changed once set. Changing the number of workers of the context
+     * resizes the pool for all the contexts referencing it, see {@link ZstdThreadPool}.
+     *
+     * @param pool the thread pool to use
+     */
+    @NotNull
+    public ZstdCompressCtx setThreadPool(@NotNull ZstdThreadPool pool) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            if (thread_pool == pool) {
+                return this;
+            }
+            if (thread_pool != null) {
+                throw new IllegalStateException("Thread pool cannot be changed once set");
+            }
+            pool.acquireSharedLock();
+            long result = Zstd.setCompressionThreadPool(nativePtr, pool.getNativePtr());
+            if (Zstd.isError(result)) {
+                pool.releaseSharedLock();
+                throw new ZstdException(result);
+            }
+            // keep a reference to the pool so it's not closed while in use
+            thread_pool = pool;
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
     @NotNull
     public ZstdCompressCtx setOverlapLog(int overlapLog) {
         ensureOpen();
@@ -149,6 +226,122 @@ public class ZstdCompressCtx extends AutoCloseBase {
         return this;
     }
 
+    /**
+     * Enable or disable the rsyncable mode
+     *
+     * The frame is cut in independent blocks at positions depending only on the content, so
+     * a local change of the input changes only the compressed data around it and the rest
+     * deduplicates with the previous version, e.g. with rsync or content-defined chunking.
+     * The cuts are on average one job size apart, see {@link #setJobSize(int)}, at a small
+     * cost of compression ratio.
+     *
+     * Has effect only if workers are enabled with {@link #setWorkers(int)}.
+     *
+     * @param rsyncable the output is rsyncable, default: false
+     */
+    @NotNull
+    public ZstdCompressCtx setRsyncable(boolean rsyncable) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = Zstd.setCompressionRsyncable(nativePtr, rsyncable);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    /**
+     * Enable or disable the stable input buffer mode of the streaming compression
+     *
+     * The caller guarantees that the whole input of a frame is in one buffer, that is passed
+     * to each call of {@link #compressDirectByteBufferStream} with only its position advanced
+     * by the previous call (its limit may grow) and stays unmodified until the end of the frame.
+     * The context then compresses directly from the buffer instead of copying the input
+     * into its internal window buffer, that is not allocated.
+     *
+     * Calls breaking the guarantee fail with a {@link ZstdException}. While the mode is
+     * enabled the byte arrays are not staged, they are compressed in a critical region whatever
+     * their size, see {@link #setMaxCriticalSize(int)}. They can't be compressed with a
+     * {@link JavaSequenceProducer}, that requires the staging.
+     *
+     * @param stable the input buffer is stable, default: false
+     */
+    @NotNull
+    public ZstdCompressCtx setStableInBuffer(boolean stable) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = Zstd.setCompressionStableInBuffer(nativePtr, stable);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+            stable_in = stable;
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    /**
+     * Enable or disable the stable output buffer mode of the streaming compression
+     *
+     * The caller guarantees that the destination buffer passed to each call of
+     * {@link #compressDirectByteBufferStream} is the same, with the position and limit left
+     * by the previous call, until the end of the frame. The context then compresses directly
+     * into the buffer instead of its internal output buffer, that is not allocated. The whole
+     * frame must fit in the buffer: use {@link Zstd#compressBound(long)}.
+     *
+     * Calls breaking the guarantee fail with a {@link ZstdException}. While the mode is
+     * enabled the byte arrays are not staged, they are compressed in a critical region whatever
+     * their size, see {@link #setMaxCriticalSize(int)}. They can't be compressed with a
+     * {@link JavaSequenceProducer}, that requires the staging.
+     *
+     * @param stable the output buffer is stable, default: false
+     */
+    @NotNull
+    public ZstdCompressCtx setStableOutBuffer(boolean stable) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = Zstd.setCompressionStableOutBuffer(nativePtr, stable);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+            stable_out = stable;
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    /**
+     * Set the target size of the compressed blocks
+     *
+     * Smaller blocks can be decoded as soon as they are received, reducing the latency
+     * of interactive streams at the cost of some compression ratio. It's a target, not a
+     * guarantee, blocks may be larger, e.g. when the input is not compressible.
+     *
+     * @param targetCBlockSize the target size in bytes, from 1340 to 128KB, 0 disables it (default)
+     */
+    @NotNull
+    public ZstdCompressCtx setTargetCBlockSize(int targetCBlockSize) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = Zstd.setCompressionTargetCBlockSize(nativePtr, targetCBlockSize);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
     @NotNull
     public ZstdCompressCtx setTargetLength(int targetLength) {
         ensureOpen();
@@ -254,6 +447,88 @@ public class ZstdCompressCtx extends AutoCloseBase {
         return this;
     }
 
+    /**
+     * Set the expected size of the input when it's not known exactly, e.g. for streaming
+     * compression. It's used only to choose the compression parameters, so it's not written
+     * in the frame header and the input may be of any size.
+     *
+     * @param srcSizeHint the expected size in bytes, 0 means unknown (default)
+     */
+    @NotNull
+    public ZstdCompressCtx setSrcSizeHint(int srcSizeHint) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = Zstd.setCompressionSrcSizeHint(nativePtr, srcSizeHint);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    /**
+     * Set all the compression parameters of the match finder at once
+     *
+     * The parameters are validated before any is applied, so on error the context is unchanged.
+     * They override those derived from the level.
+     *
+     * @param params the parameters, all must be set
+     */
+    @NotNull
+    public ZstdCompressCtx setParameters(@NotNull ZstdCompressionParameters params) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = setParameters0(nativePtr, params.getWindowLog(), params.getChainLog(), params.getHashLog(),
+                params.getSearchLog(), params.getMinMatch(), params.getTargetLength(), params.getStrategy());
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    private static native long setParameters0(long ptr, int windowLog, int chainLog, int hashLog, int searchLog,
+            int minMatch, int targetLength, int strategy);
+
+    /**
+     * Get the compression parameters of the match finder set on this context
+     *
+     * @return the parameters, 0 for those not set, that are derived from the level when compressing
+     */
+    @NotNull
+    public ZstdCompressionParameters getParameters() {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            return new ZstdCompressionParameters(
+                    getParameter(ZstdCompressionParameters.Parameter.WINDOW_LOG),
+                    getParameter(ZstdCompressionParameters.Parameter.CHAIN_LOG),
+                    getParameter(ZstdCompressionParameters.Parameter.HASH_LOG),
+                    getParameter(ZstdCompressionParameters.Parameter.SEARCH_LOG),
+                    getParameter(ZstdCompressionParameters.Parameter.MIN_MATCH),
+                    getParameter(ZstdCompressionParameters.Parameter.TARGET_LENGTH),
+                    getParameter(ZstdCompressionParameters.Parameter.STRATEGY));
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    private int getParameter(@NotNull ZstdCompressionParameters.Parameter param) {
+        long result = getParameter0(nativePtr, param.value());
+        if (Zstd.isError(result)) {
+            throw new ZstdException(result);
+        }
+        return (int) result;
+    }
+
+    private static native long getParameter0(long ptr, int param);
+
     /**
      * Enable or disable content size
      * @param contentSizeFlag Content size will be written into frame header _whenever known_, default: true
@@ -321,8 +596,11 @@ public class ZstdCompressCtx extends AutoCloseBase {
                 Zstd.registerSequenceProducer(nativePtr, seqprod_state, producer.getFunctionPointer());
                 this.seqprod = producer;
             }
+            java_producer = producer instanceof JavaSequenceProducer;
+            applyValidateSequences();
         } catch (Exception e) {
             this.seqprod = null;
+            java_producer = false;
             Zstd.registerSequenceProducer(nativePtr, 0, 0);
             throw e;
         } finally {
@@ -374,6 +652,15 @@ public class ZstdCompressCtx extends AutoCloseBase {
     /**
      * Enable or disable sequence validation. Useful for the sequence-level API
      * and with external sequence producers.
+     *
+     * With AUTO (default), the sequences passed to
+     * {@link #compressSequences(byte[], int, int, int[], int, byte[], int, int)} and those of a
+     * {@link JavaSequenceProducer} are validated, those of the native sequence producers are not.
+     * Invalid sequences that are not validated cause undefined behavior.
+     *
+     * zstd's ZSTD_c_validateSequences is a plain 0/1 switch, so the context sets it to 1 only for
+     * ENABLE and for AUTO with a {@link JavaSequenceProducer}, and to 0 otherwise, including DISABLE.
+     *
      * @param validateSequences whether to enable sequence validation
      */
     @NotNull
@@ -381,7 +668,43 @@ public class ZstdCompressCtx extends AutoCloseBase {
         ensureOpen();
         acquireSharedLock();
         try {
-            long result = Zstd.setValidateSequences(nativePtr, validateSequences.getValue());
+            Zstd.ParamSwitch previous = validate_sequences;
+            validate_sequences = validateSequences;
+            try {
+                applyValidateSequences();
+            } catch (ZstdException e) {
+                validate_sequences = previous;
+                throw e;
+            }
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    private void applyValidateSequences() {
+        boolean validate = validate_sequences == Zstd.ParamSwitch.ENABLE
+                || (validate_sequences == Zstd.ParamSwitch.AUTO && java_producer);
+        long result = Zstd.setValidateSequences(nativePtr, validate ? 1 : 0);
+        if (Zstd.isError(result)) {
+            throw new ZstdException(result);
+        }
+    }
+
+    /**
+     * Set the format of the sequences passed to
+     * {@link #compressSequences(byte[], int, int, int[], int, byte[], int, int)}
+     *
+     * @param explicitDelimiters whether the sequences contain the block delimiters, as generated by
+     *                           {@link #generateSequences(int[], byte[], int, int)}. Otherwise the
+     *                           sequences are split in blocks by the compression, default: false
+     */
+    @NotNull
+    public ZstdCompressCtx setBlockDelimiters(boolean explicitDelimiters) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = Zstd.setBlockDelimiters(nativePtr, explicitDelimiters);
             if (Zstd.isError(result)) {
                 throw new ZstdException(result);
             }
@@ -410,11 +733,151 @@ public class ZstdCompressCtx extends AutoCloseBase {
         return this;
     }
 
+    /**
+     * Control the compression of the literals, the bytes not covered by matches.
+     *
+     * {@link Zstd.ParamSwitch#DISABLE} stores them raw, that is faster and costs little for
+     * data that is already entropy coded, {@link Zstd.ParamSwitch#ENABLE} always Huffman
+     * codes them. By default negative levels store them raw.
+     * @param literalCompressionMode the literal compression mode
+     */
+    @NotNull
+    public ZstdCompressCtx setLiteralCompressionMode(@NotNull Zstd.ParamSwitch literalCompressionMode) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = Zstd.setLiteralCompressionMode(nativePtr, literalCompressionMode.getValue());
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    /**
+     * Set the effort of the block splitter running before the match finder, that cuts
+     * the blocks where the statistics of the input change, e.g. between compressed and
+     * text parts of mixed data.
+     * @param blockSplitterLevel 0 chooses from the strategy (default), 1 disables the splitting,
+     *                           2 to 6 split with increasing effort
+     */
+    @NotNull
+    public ZstdCompressCtx setBlockSplitterLevel(int blockSplitterLevel) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = Zstd.setBlockSplitterLevel(nativePtr, blockSplitterLevel);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    /**
+     * Enable or disable the block splitter running on the sequences found by the match
+     * finder. It's slower and by default enabled only for the strongest strategies. It can
+     * be combined with {@link #setBlockSplitterLevel(int)}.
+     * @param splitAfterSequences whether to split the blocks after the sequences
+     */
+    @NotNull
+    public ZstdCompressCtx setSplitAfterSequences(@NotNull Zstd.ParamSwitch splitAfterSequences) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = Zstd.setSplitAfterSequences(nativePtr, splitAfterSequences.getValue());
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    /**
+     * Enable or disable the row-based match finder of the greedy, lazy and lazy2
+     * strategies. By default it's used depending on the SIMD support and the window log.
+     * @param useRowMatchFinder whether to use the row-based match finder
+     */
+    @NotNull
+    public ZstdCompressCtx setUseRowMatchFinder(@NotNull Zstd.ParamSwitch useRowMatchFinder) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = Zstd.setUseRowMatchFinder(nativePtr, useRowMatchFinder.getValue());
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    /**
+     * Probe the compressibility of the inputs of {@link #compressByteArray(byte[], int, int, byte[], int, int)},
+     * {@link #compressDirectByteBuffer(ByteBuffer, int, int, ByteBuffer, int, int)} and the methods using them,
+     * and compress those that are predicted to compress poorly at a lower level, see
+     * {@link ZstdCompressibilityProbe}. The configured level is restored after each call.
+     *
+     * It doesn't apply to the streaming methods.
+     *
+     * @param probe the probe or `null` to disable it (default)
+     */
+    @NotNull
+    public ZstdCompressCtx setCompressibilityProbe(@Nullable ZstdCompressibilityProbe probe) {
+        ensureOpen();
+        this.probe = probe;
+        return this;
+    }
+
+    /**
+     * Limit the size of the byte arrays that are accessed in a JNI critical region by
+     * {@link #compressByteArray(byte[], int, int, byte[], int, int)} and the methods using it.
+     *
+     * While in a critical region the GC is blocked, so compressing a large array at a high
+     * level can cause long GC pauses in other threads. Arrays larger than the limit are copied
+     * through direct buffers of this size and compressed with the streaming API instead, at
+     * the cost of the extra copies and of the memory for the buffers. The result is a valid
+     * frame with the content size, but it may differ from the one produced in one shot.
+     *
+     * @param maxCriticalSize the max size in bytes or 0 for no limit,
+     *                        default: {@link Zstd#MAX_CRITICAL_SIZE}
+     */
+    @NotNull
+    public ZstdCompressCtx setMaxCriticalSize(int maxCriticalSize) {
+        if (maxCriticalSize < 0) {
+            throw new IllegalArgumentException("maxCriticalSize must not be negative");
+        }
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            if (max_critical_size != maxCriticalSize) {
+                staging_in = null;
+                staging_out = null;
+            }
+            max_critical_size = maxCriticalSize;
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
     // Used in tests
     long getNativePtr() {
         return nativePtr;
     }
 
+    // a JavaSequenceProducer is called back through JNI
+    boolean allowsCriticalCall() {
+        return !java_producer;
+    }
+
     /**
      * Load compression dictionary to be used for subsequently compressed frames.
      *
@@ -469,6 +932,121 @@ public class ZstdCompressCtx extends AutoCloseBase {
     }
     private native long loadCDict0(long ptr, byte @Nullable [] dict);
 
+    /**
+     * Reference a prefix (a raw content dictionary) to be used for the next compressed frame only.
+     *
+     * Unlike a {@link ZstdDictCompress} the prefix is not digested upfront, so it's cheap to
+     * reference e.g. the previous version of a document when compressing the new one.
+     * Decompression must reference the same prefix with {@link ZstdDecompressCtx#refPrefix(ByteBuffer)}.
+     * It replaces any loaded dictionary.
+     *
+     * @param prefix direct buffer with the prefix between its position and limit. It's referenced,
+     *               not copied, so it must not be modified until the frame is compressed.
+     *               `null` removes the referenced prefix.
+     */
+    @NotNull
+    public ZstdCompressCtx refPrefix(@Nullable ByteBuffer prefix) {
+        if (prefix != null && !prefix.isDirect()) {
+            throw new IllegalArgumentException("prefix must be a direct buffer");
+        }
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = prefix == null
+                ? refPrefix0(nativePtr, null, 0, 0)
+                : refPrefix0(nativePtr, prefix, prefix.position(), prefix.limit() - prefix.position());
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+            if (compression_dict != null) {
+                compression_dict.releaseSharedLock();
+                compression_dict = null;
+            }
+            this.prefix = prefix;
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    /**
+     * Reference a prefix (a raw content dictionary) to be used for the next compressed frame only.
+     *
+     * The prefix is copied to a direct buffer owned by the context, that is reused by the next calls.
+     *
+     * @param prefix the prefix
+     * @see #refPrefix(ByteBuffer)
+     */
+    @NotNull
+    public ZstdCompressCtx refPrefix(byte @NotNull [] prefix) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            // drop the current prefix first, as it may be the copy we are going to overwrite
+            long result = refPrefix0(nativePtr, null, 0, 0);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+            this.prefix = null;
+            if (prefix_copy == null || prefix_copy.capacity() < prefix.length) {
+                prefix_copy = ByteBuffer.allocateDirect(prefix.length);
+            }
+            prefix_copy.clear();
+            prefix_copy.put(prefix);
+            prefix_copy.flip();
+        } finally {
+            releaseSharedLock();
+        }
+        return refPrefix(prefix_copy);
+    }
+
+    private static native long refPrefix0(long ptr, @Nullable ByteBuffer prefix, int offset, int length);
+
+    /**
+     * Prepare the next frame as a patch from `reference` to the new content, like `zstd --patch-from`.
+     *
+     * References `reference` as prefix and sets the window log so the window covers both the
+     * reference and the new content, enabling long distance matching when the match finder of the
+     * current level can't search the whole window, and the max target length with the optimal
+     * parsers (strategies btopt and above). Set the level before calling it.
+     *
+     * Only the prefix is limited to the next frame: the window log, long distance matching and
+     * the target length stay set for the next frames, until they are set again or the context is
+     * {@link #reset()}. The parameters are changed only when `reference` is valid.
+     *
+     * The patch can be applied with {@link ZstdDecompressCtx#refPrefix(ByteBuffer)} and a
+     * {@link ZstdDecompressCtx#setLongMax(int)} of at least the returned window log,
+     * see {@link ZstdPatch} for a complete implementation.
+     *
+     * @param reference direct buffer with the old content between its position and limit,
+     *                  e.g. a mapped file. It's referenced, not copied, so it must not be
+     *                  modified until the frame is compressed.
+     * @param srcSize the size of the new content
+     * @return the window log of the patch
+     */
+    public int refPatchFrom(@NotNull ByteBuffer reference, long srcSize) {
+        if (srcSize < 0) {
+            throw new IllegalArgumentException("srcSize must not be negative");
+        }
+        if (!reference.isDirect()) {
+            throw new IllegalArgumentException("reference must be a direct buffer");
+        }
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = setPatchFromParameters0(nativePtr, reference.limit() - reference.position(), srcSize);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+            refPrefix(reference);
+            return (int) result;
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    private static native long setPatchFromParameters0(long ptr, long refSize, long srcSize);
+
     /**
      * Tells how much data has been ingested (read from input),
      * consumed (input actually compressed) and produced (output) for current frame.
@@ -502,6 +1080,21 @@ public class ZstdCompressCtx extends AutoCloseBase {
                 compression_dict.releaseSharedLock();
                 compression_dict = null;
             }
+            prefix = null;
+            validate_sequences = Zstd.ParamSwitch.AUTO;
+            max_critical_size = Zstd.MAX_CRITICAL_SIZE;
+            staging_in = null;
+            staging_out = null;
+            probe = null;
+            stable_in = false;
+            stable_out = false;
+            // ZSTD_reset_parameters also removes the sequence producer
+            if (seqprod != null) {
+                seqprod.freeState(seqprod_state);
+                seqprod = null;
+                seqprod_state = 0;
+            }
+            java_producer = false;
         } finally {
             releaseSharedLock();
         }
@@ -553,6 +1146,9 @@ public class ZstdCompressCtx extends AutoCloseBase {
         if (!src.isDirect() && !src.hasArray()) {
             throw new IllegalArgumentException("src must be a direct or array-backed buffer");
         }
+        if (java_producer && dst.isDirect() != src.isDirect()) {
+            throw new IllegalArgumentException("dst and src must be both direct or both array-backed with a JavaSequenceProducer");
+        }
 
         acquireSharedLock();
         try {
@@ -655,10 +1251,19 @@ public class ZstdCompressCtx extends AutoCloseBase {
         Objects.checkFromIndexSize(srcOffset, srcSize, srcBuff.limit());
         Objects.checkFromIndexSize(dstOffset, dstSize, dstBuff.limit());
 
+        ZstdCompressibilityProbe probe = this.probe;
+        ZstdCompressibilityProbe.Action action = probe == null ? null
+                : probe.decide(probe.estimateRatio(srcBuff, srcOffset, srcSize));
+
         acquireSharedLock();
 
+        int level = action == null ? 0 : applyProbe(action);
         try {
-            long size = compressDirectByteBuffer0(nativePtr, dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize);
+            // the small buffers go through critical FFM downcalls, they can't call back into Java
+            ZstdForeign foreign = ZstdForeign.INSTANCE;
+            long size = foreign != null && !java_producer
+                    ? foreign.compressDirectByteBuffer(nativePtr, dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize)
+                    : compressDirectByteBuffer0(nativePtr, dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize);
             if (Zstd.isError(size)) {
                 throw new ZstdException(size);
             }
@@ -667,12 +1272,28 @@ public class ZstdCompressCtx extends AutoCloseBase {
             }
             return (int) size;
         } finally {
+            if (action != null) {
+                setLevel0(nativePtr, level);
+            }
             releaseSharedLock();
         }
     }
 
     private static native long compressDirectByteBuffer0(long ptr, @NotNull ByteBuffer dst, int dstOffset, int dstSize, @NotNull ByteBuffer src, int srcOffset, int srcSize);
 
+    /**
+     * Switches to the level of the action of the probe
+     *
+     * @return the configured level, to restore after compressing
+     */
+    private int applyProbe(@NotNull ZstdCompressibilityProbe.Action action) {
+        int level = Zstd.getCompressionLevel(nativePtr);
+        if (action != ZstdCompressibilityProbe.Action.COMPRESS) {
+            setLevel0(nativePtr, ZstdCompressibilityProbe.level(action));
+        }
+        return level;
+    }
+
     /**
      * Compresses byte array 'srcBuff' into byte array 'dstBuff' reusing this ZstdCompressCtx.
      *
@@ -693,10 +1314,33 @@ public class ZstdCompressCtx extends AutoCloseBase {
         Objects.checkFromIndexSize(dstOffset, dstSize, dstBuff.length);
 
         ensureOpen();
+        ZstdCompressibilityProbe probe = this.probe;
+        ZstdCompressibilityProbe.Action action = probe == null ? null : probe.decide(srcBuff, srcOffset, srcSize);
+
         acquireSharedLock();
 
+        int level = action == null ? 0 : applyProbe(action);
         try {
-            long size = compressByteArray0(nativePtr, dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize);
+            long size;
+            if (java_producer && (stable_in || stable_out)) {
+                throw new IllegalStateException("Byte arrays can't be compressed with both a JavaSequenceProducer and stable buffers");
+            }
+            if (java_producer || (max_critical_size > 0 && srcSize > max_critical_size && !stable_in && !stable_out)) {
+                boolean staged = false;
+                try {
+                    size = compressByteArrayStaged(dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize);
+                    staged = !Zstd.isError(size);
+                } finally {
+                    if (!staged) {
+                        // close the failed frame, so the parameters can be changed
+                        resetSession0(nativePtr);
+                    }
+                }
+            } else if (ZstdForeign.INSTANCE != null) {
+                size = ZstdForeign.INSTANCE.compressByteArray(nativePtr, dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize);
+            } else {
+                size = compressByteArray0(nativePtr, dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize);
+            }
             if (Zstd.isError(size)) {
                 throw new ZstdException(size);
             }
@@ -705,12 +1349,189 @@ public class ZstdCompressCtx extends AutoCloseBase {
             }
             return (int) size;
         } finally {
+            if (action != null) {
+                setLevel0(nativePtr, level);
+            }
             releaseSharedLock();
         }
     }
 
     private static native long compressByteArray0(long ptr, byte @NotNull [] dst, int dstOffset, int dstSize, byte @NotNull [] src, int srcOffset, int srcSize);
 
+    /**
+     * Compresses through the staging direct buffers, so the arrays are never accessed in a critical region.
+     *
+     * @return the compressed size or an error code
+     */
+    private long compressByteArrayStaged(byte @NotNull [] dst, int dstOffset, int dstSize, byte @NotNull [] src, int srcOffset, int srcSize) {
+        if (staging_in == null || staging_out == null) {
+            // also used without a limit when a JavaSequenceProducer is registered
+            int stagingSize = max_critical_size > 0 ? max_critical_size : STAGING_SIZE;
+            staging_in = ByteBuffer.allocateDirect(stagingSize);
+            staging_out = ByteBuffer.allocateDirect(stagingSize);
+        }
+        ByteBuffer in = staging_in;
+        ByteBuffer out = staging_out;
+        long result = resetSession0(nativePtr);
+        if (Zstd.isError(result)) {
+            return result;
+        }
+        result = setPledgedSrcSize0(nativePtr, srcSize);
+        if (Zstd.isError(result)) {
+            return result;
+        }
+        int srcPos = srcOffset;
+        int srcEnd = srcOffset + srcSize;
+        int dstPos = dstOffset;
+        int dstEnd = dstOffset + dstSize;
+        boolean flushed = false;
+        while (!flushed) {
+            int chunk = Math.min(in.capacity(), srcEnd - srcPos);
+            in.clear();
+            in.put(src, srcPos, chunk);
+            in.flip();
+            srcPos += chunk;
+            EndDirective endOp = srcPos == srcEnd ? EndDirective.END : EndDirective.CONTINUE;
+            do {
+                result = compressDirectByteBufferStream0(nativePtr, out, 0, out.capacity(), in, in.position(), in.limit(), endOp.value());
+                if ((result & 0x80000000L) != 0) {
+                    return -(result & 0xFF);
+                }
+                in.position((int) (result & 0x7FFFFFFF));
+                int produced = (int) (result >>> 32) & 0x7FFFFFFF;
+                if (produced > dstEnd - dstPos) {
+                    return -Zstd.errDstSizeTooSmall();
+                }
+                out.clear();
+                out.get(dst, dstPos, produced);
+                dstPos += produced;
+                flushed = endOp == EndDirective.END && (result >>> 63) == 1;
+            } while (in.hasRemaining() || (endOp == EndDirective.END && !flushed));
+        }
+        return dstPos - dstOffset;
+    }
+
+    private static native long resetSession0(long ptr);
+
+    /**
+     * Compresses the native memory region at 'src' into the native memory region at 'dst'
+     * reusing this ZstdCompressCtx.
+     *
+     * Unlike the buffer and array methods, sizes are not limited to 2GB, so this method
+     * can be used with memory mapped files or other off-heap regions of any size. The
+     * caller is responsible for keeping both regions valid for the duration of the call.
+     *
+     * Destination region should be sized to handle worst cases situations (input
+     * data not compressible). Worst case size evaluation is provided by function
+     * ZSTD_compressBound().
+     *
+     * @param dst address of the destination region
+     * @param dstSize size of the destination region
+     * @param src address of the source region
+     * @param srcSize size of the source region
+     * @return  the number of bytes written into the destination region
+     */
+    public long compressUnsafe(long dst, long dstSize, long src, long srcSize) {
+        if (dstSize < 0) {
+            throw new IllegalArgumentException("dstSize must not be negative");
+        }
+        if (srcSize < 0) {
+            throw new IllegalArgumentException("srcSize must not be negative");
+        }
+        if (dst == 0 && dstSize > 0) {
+            throw new IllegalArgumentException("dst must not be null");
+        }
+        if (src == 0 && srcSize > 0) {
+            throw new IllegalArgumentException("src must not be null");
+        }
+
+        ensureOpen();
+        acquireSharedLock();
+
+        try {
+            long size = compressUnsafe0(nativePtr, dst, dstSize, src, srcSize);
+            if (Zstd.isError(size)) {
+                throw new ZstdException(size);
+            }
+            return size;
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    private static native long compressUnsafe0(long ptr, long dst, long dstSize, long src, long srcSize);
+
+    /**
+     * Compresses the remaining bytes of all 'srcs' buffers, in order, into a single frame
+     * written to the 'dsts' buffers, in order. This allows to compress inputs larger than
+     * 2GB, or inputs spread over several buffers, without copying them together first.
+     *
+     * Buffers may be direct or array-backed heap buffers. The `position()` of each source
+     * buffer is set to its `limit()`, and the `position()` of each destination buffer is
+     * advanced by the number of bytes written into it. A destination buffer is filled up
+     * before moving on to the next one.
+     *
+     * The total source size is pledged, so it is stored in the frame header. The context
+     * must not be in the middle of a streaming operation. If the compression fails, the
+     * session is reset and the context can be used again.
+     *
+     * @param dsts destination buffers
+     * @param srcs source buffers
+     * @return the total number of bytes written into 'dsts'
+     * @throws ZstdException if the destination buffers are too small
+     * @throws IllegalArgumentException if a buffer is neither direct nor array-backed, or a destination is read-only
+     */
+    public long compressByteBuffers(@NotNull ByteBuffer[] dsts, @NotNull ByteBuffer[] srcs) {
+        long srcSize = 0;
+        for (ByteBuffer src : srcs) {
+            srcSize += src.remaining();
+        }
+        ensureOpen();
+        boolean done = false;
+        try {
+            setPledgedSrcSize(srcSize);
+
+            long written = 0;
+            int di = 0;
+            for (ByteBuffer src : srcs) {
+                while (src.hasRemaining()) {
+                    di = nextByteBuffer(dsts, di);
+                    int pos = dsts[di].position();
+                    compressByteBufferStream(dsts[di], src, EndDirective.CONTINUE);
+                    written += dsts[di].position() - pos;
+                }
+            }
+            ByteBuffer empty = ByteBuffer.allocate(0);
+            do {
+                di = nextByteBuffer(dsts, di);
+                int pos = dsts[di].position();
+                done = compressByteBufferStream(dsts[di], empty, EndDirective.END);
+                written += dsts[di].position() - pos;
+            } while (!done);
+            return written;
+        } finally {
+            if (!done) {
+                // close the failed frame, so the context can be used again
+                acquireSharedLock();
+                try {
+                    resetSession0(nativePtr);
+                } finally {
+                    releaseSharedLock();
+                }
+            }
+        }
+    }
+
+    private static int nextByteBuffer(@NotNull ByteBuffer[] dsts, int index) {
+        while (index < dsts.length && !dsts[index].hasRemaining()) {
+            index++;
+        }
+        if (index == dsts.length) {
+            throw new ZstdException(Zstd.errDstSizeTooSmall(), "Destination buffers are too small");
+        }
+        return index;
+    }
+
     /* Convenience methods */
 
     /**
@@ -790,4 +1611,211 @@ public class ZstdCompressCtx extends AutoCloseBase {
         int size = compressByteArray(dst, 0, dst.length, src, 0, src.length);
         return Arrays.copyOfRange(dst, 0, size);
     }
+
+    /**
+     * Runs the match finder of the compression over 'src' and writes the sequences it finds,
+     * instead of compressing them. The sequences can be modified and compressed with
+     * {@link #compressSequences(byte[], int, int, int[], int, byte[], int, int)}.
+     *
+     * Each sequence is 4 ints, the layout of `ZSTD_Sequence`: offset, litLength, matchLength and rep.
+     * Each block ends with a delimiter, a sequence with offset and matchLength 0 holding the last
+     * literals of the block, so the sequences are compressed with {@link #setBlockDelimiters(boolean)}
+     * enabled, or after {@link Zstd#mergeBlockDelimiters(int[], int)}.
+     *
+     * It uses `ZSTD_generateSequences`, that zstd deprecates and intends for analysis: it may
+     * fail with some parameters, e.g. with workers.
+     *
+     * @param sequences the destination of the sequences, 4 ints per sequence, with room for
+     *                  {@link Zstd#sequenceBound(long)} sequences
+     * @param srcBuff the source buffer
+     * @param srcOffset the start offset of 'srcBuff'
+     * @param srcSize the length of 'srcBuff' (after 'srcOffset')
+     * @return the number of sequences
+     */
+    public int generateSequences(int @NotNull [] sequences, byte @NotNull [] srcBuff, int srcOffset, int srcSize) {
+        Objects.checkFromIndexSize(srcOffset, srcSize, srcBuff.length);
+        ensureOpen();
+        if (java_producer) {
+            throw new IllegalStateException("Use the direct buffers with a JavaSequenceProducer");
+        }
+        acquireSharedLock();
+        try {
+            long result = generateSequences0(nativePtr, sequences, srcBuff, srcOffset, srcSize);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+            return (int) result;
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    private static native long generateSequences0(long ptr, int @NotNull [] sequences, byte @NotNull [] src, int srcOffset, int srcSize);
+
+    /**
+     * Generates the sequences of the data
+     *
+     * @see #generateSequences(int[], byte[], int, int)
+     * @return the sequences, 4 ints per sequence
+     */
+    public int @NotNull [] generateSequences(byte @NotNull [] src) {
+        long bound = Zstd.sequenceBound(src.length);
+        if (bound > Integer.MAX_VALUE / 4) {
+            throw new ZstdException(Zstd.errGeneric(), "Max number of sequences is greater than MAX_INT / 4");
+        }
+        int[] sequences = new int[(int) bound * 4];
+        int count = generateSequences(sequences, src, 0, src.length);
+        return Arrays.copyOf(sequences, count * 4);
+    }
+
+    /**
+     * Generates the sequences of the data in buffer 'srcBuf'
+     *
+     * @param sequences the destination buffer - must be direct, in the native byte order. The sequences, 16 bytes
+     *                  each, are written from its `position()` that is then advanced past them.
+     * @param srcBuf the source buffer - must be direct. Its content between `position()` and `limit()` is
+     *               read, and its `position()` set to its `limit()`.
+     * @see #generateSequences(int[], byte[], int, int)
+     * @return the number of sequences
+     */
+    public int generateSequences(@NotNull ByteBuffer sequences, @NotNull ByteBuffer srcBuf) {
+        checkSequenceBuffer(sequences);
+        if (!srcBuf.isDirect()) {
+            throw new IllegalArgumentException("srcBuf must be a direct buffer");
+        }
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = generateSequencesDirect0(nativePtr, sequences, sequences.position(), sequences.remaining() / SEQUENCE_SIZE,
+                    srcBuf, srcBuf.position(), srcBuf.remaining());
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+            sequences.position(sequences.position() + (int) result * SEQUENCE_SIZE);
+            srcBuf.position(srcBuf.limit());
+            return (int) result;
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    private static native long generateSequencesDirect0(long ptr, @NotNull ByteBuffer sequences, int sequencesOffset, int sequencesCapacity,
+            @NotNull ByteBuffer src, int srcOffset, int srcSize);
+
+    /**
+     * Compresses the sequences of byte array 'srcBuff' into byte array 'dstBuff' in one frame, leaving only
+     * the entropy coding to zstd: the sequences replace its match finder.
+     *
+     * Each sequence is 4 ints: offset, litLength, matchLength and rep, that is ignored. The bytes of 'srcBuff'
+     * after the last sequence are literals. By default the sequences have no block delimiters, see
+     * {@link #setBlockDelimiters(boolean)}. The matches must not be shorter than the minMatch of the
+     * parameters, see {@link #setMinMatch(int)}, nor the offsets larger than the window. The sequences
+     * are validated unless {@link #setValidateSequences(Zstd.ParamSwitch)} is disabled.
+     *
+     * @param dstBuff the destination buffer
+     * @param dstOffset the start offset of 'dstBuff'
+     * @param dstSize the size of 'dstBuff' (after 'dstOffset')
+     * @param sequences the sequences, 4 ints per sequence
+     * @param nbSequences the number of sequences
+     * @param srcBuff the source buffer
+     * @param srcOffset the start offset of 'srcBuff'
+     * @param srcSize the length of 'srcBuff' (after 'srcOffset')
+     * @return the number of bytes written into buffer 'dstBuff'.
+     */
+    public int compressSequences(byte @NotNull [] dstBuff, int dstOffset, int dstSize, int @NotNull [] sequences, int nbSequences,
+            byte @NotNull [] srcBuff, int srcOffset, int srcSize) {
+        Objects.checkFromIndexSize(srcOffset, srcSize, srcBuff.length);
+        Objects.checkFromIndexSize(dstOffset, dstSize, dstBuff.length);
+        Objects.checkFromIndexSize(0, nbSequences, sequences.length / 4);
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = compressSequences0(nativePtr, dstBuff, dstOffset, dstSize, sequences, nbSequences, srcBuff, srcOffset, srcSize,
+                    validate_sequences == Zstd.ParamSwitch.AUTO);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+            return (int) result;
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    private static native long compressSequences0(long ptr, byte @NotNull [] dst, int dstOffset, int dstSize, int @NotNull [] sequences,
+            int nbSequences, byte @NotNull [] src, int srcOffset, int srcSize, boolean validate);
+
+    /**
+     * Compresses the sequences of the data
+     *
+     * @see #compressSequences(byte[], int, int, int[], int, byte[], int, int)
+     * @param sequences the sequences, 4 ints per sequence
+     * @param src the data
+     * @return the compressed frame
+     */
+    public byte @NotNull [] compressSequences(int @NotNull [] sequences, byte @NotNull [] src) {
+        long maxDstSize = Zstd.compressBound(src.length);
+        if (maxDstSize > Integer.MAX_VALUE) {
+            throw new ZstdException(Zstd.errGeneric(), "Max output size is greater than MAX_INT");
+        }
+        byte[] dst = new byte[(int) maxDstSize];
+        int size = compressSequences(dst, 0, dst.length, sequences, sequences.length / 4, src, 0, src.length);
+        return Arrays.copyOfRange(dst, 0, size);
+    }
+
+    /**
+     * Compresses the sequences of the data in buffer 'srcBuf'
+     *
+     * @param dstBuf the destination buffer - must be direct. The compressed frame is written from its
+     *               `position()`, that is then advanced past it, up to its `limit()`.
+     * @param sequences the sequences - must be direct, in the native byte order, 16 bytes per sequence.
+     *                  Those between `position()` and `limit()` are read, and its `position()` set to its `limit()`.
+     * @param srcBuf the source buffer - must be direct. Its content between `position()` and `limit()` is
+     *               read, and its `position()` set to its `limit()`.
+     * @see #compressSequences(byte[], int, int, int[], int, byte[], int, int)
+     * @return the size of the compressed data
+     */
+    public int compressSequences(@NotNull ByteBuffer dstBuf, @NotNull ByteBuffer sequences, @NotNull ByteBuffer srcBuf) {
+        checkSequenceBuffer(sequences);
+        if (sequences.remaining() % SEQUENCE_SIZE != 0) {
+            throw new IllegalArgumentException("sequences must hold whole sequences of " + SEQUENCE_SIZE + " bytes");
+        }
+        if (!srcBuf.isDirect()) {
+            throw new IllegalArgumentException("srcBuf must be a direct buffer");
+        }
+        if (!dstBuf.isDirect()) {
+            throw new IllegalArgumentException("dstBuf must be a direct buffer");
+        }
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = compressSequencesDirect0(nativePtr, dstBuf, dstBuf.position(), dstBuf.remaining(),
+                    sequences, sequences.position(), sequences.remaining() / SEQUENCE_SIZE,
+                    srcBuf, srcBuf.position(), srcBuf.remaining(), validate_sequences == Zstd.ParamSwitch.AUTO);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+            sequences.position(sequences.limit());
+            srcBuf.position(srcBuf.limit());
+            dstBuf.position(dstBuf.position() + (int) result);
+            return (int) result;
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    private static native long compressSequencesDirect0(long ptr, @NotNull ByteBuffer dst, int dstOffset, int dstSize,
+            @NotNull ByteBuffer sequences, int sequencesOffset, int nbSequences, @NotNull ByteBuffer src, int srcOffset, int srcSize,
+            boolean validate);
+
+    // size of ZSTD_Sequence
+    private static final int SEQUENCE_SIZE = 16;
+
+    private static void checkSequenceBuffer(@NotNull ByteBuffer sequences) {
+        if (!sequences.isDirect()) {
+            throw new IllegalArgumentException("sequences must be a direct buffer");
+        }
+        if (sequences.order() != ByteOrder.nativeOrder()) {
+            throw new IllegalArgumentException("sequences must be in the native byte order");
+        }
+    }
 }
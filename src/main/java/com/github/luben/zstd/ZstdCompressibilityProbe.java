@@ -0,0 +1,153 @@
+package com.github.luben.zstd;
+
+import com.github.luben.zstd.util.Native;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fast estimate of the compressibility of the input, to avoid spending CPU on
+ * data that is already compressed or encrypted.
+ *
+ * It samples a few KB spread over the input and computes the order-0 entropy of
+ * their byte histogram. The predicted ratio, 8 bits divided by the entropy, ignores
+ * the matches, so it underestimates compressible data, but it's close to 1 for data
+ * that zstd can't compress either.
+ *
+ * When set on a {@link ZstdCompressCtx} or a {@link ZstdOutputStreamNoFinalizer}, inputs
+ * predicted below the store ratio are compressed at the lowest level, that stores them
+ * mostly in raw blocks, and those below the fast ratio at level 1.
+ */
+public class ZstdCompressibilityProbe {
+
+    static {
+        Native.load();
+    }
+
+    public enum Action {
+        /** compress at the configured level */
+        COMPRESS,
+        /** compress at level 1 */
+        FAST,
+        /** compress at the lowest level, storing raw blocks */
+        STORE
+    }
+
+    private final double storeRatio;
+    private final double fastRatio;
+    private int sampleSize = 1024;
+    private int samples = 4;
+
+    /**
+     * A probe storing inputs predicted to compress less than 1.03:1 and compressing at
+     * level 1 those predicted to compress less than 1.1:1
+     */
+    public ZstdCompressibilityProbe() {
+        this(1.03, 1.1);
+    }
+
+    /**
+     * @param storeRatio the predicted ratio below which the input is stored
+     * @param fastRatio the predicted ratio below which the input is compressed at level 1
+     */
+    public ZstdCompressibilityProbe(double storeRatio, double fastRatio) {
+        if (storeRatio > fastRatio) {
+            throw new IllegalArgumentException("storeRatio must not be larger than fastRatio");
+        }
+        this.storeRatio = storeRatio;
+        this.fastRatio = fastRatio;
+    }
+
+    /**
+     * Set the samples taken from the input, default: 4 samples of 1KB
+     *
+     * @param sampleSize the size of each sample
+     * @param samples the number of samples
+     */
+    public @NotNull ZstdCompressibilityProbe setSampling(int sampleSize, int samples) {
+        if (sampleSize <= 0 || samples <= 0) {
+            throw new IllegalArgumentException("sampleSize and samples must be positive");
+        }
+        this.sampleSize = sampleSize;
+        this.samples = samples;
+        return this;
+    }
+
+    /**
+     * Estimate the compression ratio of a byte array
+     */
+    public double estimateRatio(byte @NotNull [] src, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, src.length);
+        int[] counts = new int[256];
+        histogram0(src, offset, length, sampleSize, samples, counts);
+        return ratio(counts);
+    }
+
+    /**
+     * Estimate the compression ratio of the content of a direct buffer between its position and limit
+     */
+    public double estimateRatio(@NotNull ByteBuffer src) {
+        if (!src.isDirect()) {
+            throw new IllegalArgumentException("src must be a direct buffer");
+        }
+        return estimateRatio(src, src.position(), src.remaining());
+    }
+
+    double estimateRatio(@NotNull ByteBuffer src, int offset, int length) {
+        int[] counts = new int[256];
+        histogramDirect0(src, offset, length, sampleSize, samples, counts);
+        return ratio(counts);
+    }
+
+    public @NotNull Action decide(byte @NotNull [] src, int offset, int length) {
+        return decide(estimateRatio(src, offset, length));
+    }
+
+    public @NotNull Action decide(@NotNull ByteBuffer src) {
+        return decide(estimateRatio(src));
+    }
+
+    @NotNull
+    Action decide(double ratio) {
+        if (ratio < storeRatio) {
+            return Action.STORE;
+        }
+        if (ratio < fastRatio) {
+            return Action.FAST;
+        }
+        return Action.COMPRESS;
+    }
+
+    /**
+     * @return the level replacing the configured one for the action
+     */
+    static int level(@NotNull Action action) {
+        return action == Action.STORE ? Zstd.minCompressionLevel() : 1;
+    }
+
+    private static double ratio(int @NotNull [] counts) {
+        long total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / total;
+                entropy -= p * Math.log(p);
+            }
+        }
+        entropy /= Math.log(2);
+        return entropy == 0 ? Double.POSITIVE_INFINITY : 8 / entropy;
+    }
+
+    private static native void histogram0(byte @NotNull [] src, int offset, int length, int sampleSize, int samples,
+            int @NotNull [] counts);
+
+    private static native void histogramDirect0(@NotNull ByteBuffer src, int offset, int length, int sampleSize,
+            int samples, int @NotNull [] counts);
+}
@@ -0,0 +1,293 @@
+package com.github.luben.zstd;
+
+import com.github.luben.zstd.util.Native;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An immutable set of the compression parameters tuning the match finder, as
+ * derived by zstd from a compression level and the source size, so they can be
+ * tweaked, compared and cached by value.
+ *
+ * The parameters are applied to a context with
+ * {@link ZstdCompressCtx#setParameters(ZstdCompressionParameters)} and read back
+ * with {@link ZstdCompressCtx#getParameters()}:
+ * <pre>
+ *     ZstdCompressionParameters params = ZstdCompressionParameters.forLevel(19, srcSize, 0)
+ *         .withWindowLog(20);
+ *     ctx.setParameters(params);
+ * </pre>
+ *
+ * A value of 0 means that the parameter is not set, the compression derives it
+ * from the level. Parameters set from scratch are built with {@link Builder}.
+ */
+public final class ZstdCompressionParameters {
+
+    static {
+        Native.load();
+    }
+
+    /**
+     * The parameters, with their bounds in the linked zstd
+     */
+    public enum Parameter {
+        WINDOW_LOG(101),
+        HASH_LOG(102),
+        CHAIN_LOG(103),
+        SEARCH_LOG(104),
+        MIN_MATCH(105),
+        TARGET_LENGTH(106),
+        STRATEGY(107);
+
+        private final int value;
+        private Parameter(int value) {
+            this.value = value;
+        }
+
+        int value() {
+            return value;
+        }
+
+        /**
+         * @return the smallest valid value of the parameter
+         */
+        public int getLowerBound() {
+            return (int) getBounds0(value);
+        }
+
+        /**
+         * @return the largest valid value of the parameter
+         */
+        public int getUpperBound() {
+            return (int) (getBounds0(value) >> 32);
+        }
+    }
+
+    private final int windowLog;
+    private final int chainLog;
+    private final int hashLog;
+    private final int searchLog;
+    private final int minMatch;
+    private final int targetLength;
+    private final int strategy;
+
+    /**
+     * Builds parameters from scratch, those not set are 0
+     */
+    public static class Builder {
+        private int windowLog = 0;
+        private int hashLog = 0;
+        private int chainLog = 0;
+        private int searchLog = 0;
+        private int minMatch = 0;
+        private int targetLength = 0;
+        private int strategy = 0;
+
+        public @NotNull Builder setWindowLog(int windowLog) {
+            this.windowLog = windowLog;
+            return this;
+        }
+
+        public @NotNull Builder setHashLog(int hashLog) {
+            this.hashLog = hashLog;
+            return this;
+        }
+
+        public @NotNull Builder setChainLog(int chainLog) {
+            this.chainLog = chainLog;
+            return this;
+        }
+
+        public @NotNull Builder setSearchLog(int searchLog) {
+            this.searchLog = searchLog;
+            return this;
+        }
+
+        public @NotNull Builder setMinMatch(int minMatch) {
+            this.minMatch = minMatch;
+            return this;
+        }
+
+        public @NotNull Builder setTargetLength(int targetLength) {
+            this.targetLength = targetLength;
+            return this;
+        }
+
+        /**
+         * @param strategy the strategy, from 1 (fast) to 9 (btultra2), 0 means default for the level
+         */
+        public @NotNull Builder setStrategy(int strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        public @NotNull ZstdCompressionParameters build() {
+            return new ZstdCompressionParameters(windowLog, chainLog, hashLog, searchLog, minMatch, targetLength, strategy);
+        }
+    }
+
+    // in the order of ZSTD_compressionParameters, also used by the natives
+    ZstdCompressionParameters(int windowLog, int chainLog, int hashLog, int searchLog, int minMatch,
+            int targetLength, int strategy) {
+        this.windowLog = windowLog;
+        this.chainLog = chainLog;
+        this.hashLog = hashLog;
+        this.searchLog = searchLog;
+        this.minMatch = minMatch;
+        this.targetLength = targetLength;
+        this.strategy = strategy;
+    }
+
+    /**
+     * The parameters of a compression level for inputs of unknown size
+     *
+     * @param level the compression level
+     */
+    public static @NotNull ZstdCompressionParameters forLevel(int level) {
+        return forLevel(level, 0, 0);
+    }
+
+    /**
+     * The parameters of a compression level, adjusted to the source and dictionary sizes
+     *
+     * @param level the compression level
+     * @param srcSize the size of the input, 0 if unknown
+     * @param dictSize the size of the dictionary, 0 if none
+     */
+    public static @NotNull ZstdCompressionParameters forLevel(int level, long srcSize, long dictSize) {
+        if (srcSize < 0 || dictSize < 0) {
+            throw new IllegalArgumentException("The sizes must not be negative");
+        }
+        return getCParams0(level, srcSize, dictSize);
+    }
+
+    private static native @NotNull ZstdCompressionParameters getCParams0(int level, long srcSize, long dictSize);
+
+    private static native long getBounds0(int param);
+
+    public int getWindowLog() {
+        return windowLog;
+    }
+
+    public int getChainLog() {
+        return chainLog;
+    }
+
+    public int getHashLog() {
+        return hashLog;
+    }
+
+    public int getSearchLog() {
+        return searchLog;
+    }
+
+    public int getMinMatch() {
+        return minMatch;
+    }
+
+    public int getTargetLength() {
+        return targetLength;
+    }
+
+    public int getStrategy() {
+        return strategy;
+    }
+
+    public int get(@NotNull Parameter param) {
+        switch (param) {
+            case WINDOW_LOG:
+                return windowLog;
+            case HASH_LOG:
+                return hashLog;
+            case CHAIN_LOG:
+                return chainLog;
+            case SEARCH_LOG:
+                return searchLog;
+            case MIN_MATCH:
+                return minMatch;
+            case TARGET_LENGTH:
+                return targetLength;
+            default:
+                return strategy;
+        }
+    }
+
+    public @NotNull ZstdCompressionParameters withWindowLog(int windowLog) {
+        return new ZstdCompressionParameters(windowLog, chainLog, hashLog, searchLog, minMatch, targetLength, strategy);
+    }
+
+    public @NotNull ZstdCompressionParameters withChainLog(int chainLog) {
+        return new ZstdCompressionParameters(windowLog, chainLog, hashLog, searchLog, minMatch, targetLength, strategy);
+    }
+
+    public @NotNull ZstdCompressionParameters withHashLog(int hashLog) {
+        return new ZstdCompressionParameters(windowLog, chainLog, hashLog, searchLog, minMatch, targetLength, strategy);
+    }
+
+    public @NotNull ZstdCompressionParameters withSearchLog(int searchLog) {
+        return new ZstdCompressionParameters(windowLog, chainLog, hashLog, searchLog, minMatch, targetLength, strategy);
+    }
+
+    public @NotNull ZstdCompressionParameters withMinMatch(int minMatch) {
+        return new ZstdCompressionParameters(windowLog, chainLog, hashLog, searchLog, minMatch, targetLength, strategy);
+    }
+
+    public @NotNull ZstdCompressionParameters withTargetLength(int targetLength) {
+        return new ZstdCompressionParameters(windowLog, chainLog, hashLog, searchLog, minMatch, targetLength, strategy);
+    }
+
+    public @NotNull ZstdCompressionParameters withStrategy(int strategy) {
+        return new ZstdCompressionParameters(windowLog, chainLog, hashLog, searchLog, minMatch, targetLength, strategy);
+    }
+
+    /**
+     * Check that all parameters are set and within their bounds
+     *
+     * @return this
+     * @throws IllegalArgumentException naming the first invalid parameter
+     */
+    public @NotNull ZstdCompressionParameters validate() {
+        for (Parameter param : Parameter.values()) {
+            int value = get(param);
+            int lower = param.getLowerBound();
+            int upper = param.getUpperBound();
+            if (value < lower || value > upper) {
+                throw new IllegalArgumentException(param + " " + value + " is out of bounds [" + lower + ", " + upper + "]");
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ZstdCompressionParameters)) {
+            return false;
+        }
+        ZstdCompressionParameters other = (ZstdCompressionParameters) o;
+        return windowLog == other.windowLog
+            && chainLog == other.chainLog
+            && hashLog == other.hashLog
+            && searchLog == other.searchLog
+            && minMatch == other.minMatch
+            && targetLength == other.targetLength
+            && strategy == other.strategy;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = windowLog;
+        hash = 31 * hash + chainLog;
+        hash = 31 * hash + hashLog;
+        hash = 31 * hash + searchLog;
+        hash = 31 * hash + minMatch;
+        hash = 31 * hash + targetLength;
+        return 31 * hash + strategy;
+    }
+
+    @Override
+    public String toString() {
+        return "ZstdCompressionParameters(windowLog=" + windowLog + ", chainLog=" + chainLog + ", hashLog=" + hashLog
+            + ", searchLog=" + searchLog + ", minMatch=" + minMatch + ", targetLength=" + targetLength
+            + ", strategy=" + strategy + ")";
+    }
+}
@@ -8,7 +8,7 @@ import org.jetbrains.annotations.Nullable;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-public class ZstdDecompressCtx extends AutoCloseBase {
+public class ZstdDecompressCtx extends BaseZstdDecompressCtx {
 
     static {
         Native.load();
@@ -19,6 +19,40 @@ public class ZstdDecompressCtx extends AutoCloseBase {
     @Nullable
     private ZstdDictDecompress decompression_dict = null;
 
+    @Nullable
+    private ZstdDictRegistry dict_registry = null;
+
+    // whether the next call of the streaming decompression starts a frame
+    private boolean frame_start = true;
+    // the start of a frame header split across calls of decompressDirectByteBufferStream
+    private ByteBuffer frame_header = null;
+    private static final int FRAME_HEADER_SIZE_MAX = 18;
+
+    // size of the direct buffers staging the heap buffers of decompressByteBuffers
+    private static final int STAGING_SIZE = 128 * 1024;
+
+    private boolean magicless = false;
+
+    // Note: keeps a reference to the prefix so it's not garbage collected while referenced
+    @Nullable
+    private ByteBuffer prefix = null;
+
+    // direct buffer holding the copies of byte array prefixes
+    @Nullable
+    private ByteBuffer prefix_copy = null;
+
+    private int max_critical_size = Zstd.MAX_CRITICAL_SIZE;
+
+    // the byte arrays are not staged with a stable output buffer, the staging would break its guarantee
+    private boolean stable_out = false;
+
+    // direct buffers used to stage byte arrays larger than max_critical_size
+    @Nullable
+    private ByteBuffer staging_in = null;
+
+    @Nullable
+    private ByteBuffer staging_out = null;
+
     private static native long init();
 
     private static native void free(long nativePtr);
@@ -55,10 +89,62 @@ public class ZstdDecompressCtx extends AutoCloseBase {
         ensureOpen();
         acquireSharedLock();
         Zstd.setDecompressionMagicless(nativePtr, magiclessFlag);
+        magicless = magiclessFlag;
         releaseSharedLock();
         return this;
     }
 
+    /**
+     * Enable or disable the stable output buffer mode of the streaming decompression
+     *
+     * The caller guarantees that the destination buffer passed to each call of
+     * {@link #decompressDirectByteBufferStream} is the same, with the position and limit left
+     * by the previous call, until the end of the frame. The context then decompresses directly
+     * into the buffer, that is used as window, instead of copying the output through its internal
+     * window buffer, that is not allocated. The whole frame must fit in the buffer.
+     *
+     * Calls breaking the guarantee fail with a {@link ZstdException}. While the mode is
+     * enabled the byte arrays are not staged, they are decompressed in a critical region
+     * whatever their size, see {@link #setMaxCriticalSize(int)}.
+     *
+     * @param stable the output buffer is stable, default: false
+     */
+    @NotNull
+    public ZstdDecompressCtx setStableOutBuffer(boolean stable) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = Zstd.setDecompressionStableOutBuffer(nativePtr, stable);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+            stable_out = stable;
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    /**
+     * Set the max window log the frames may use, frames with larger windows are rejected
+     * to limit the memory used for decompression
+     * @param windowLogMax the max window log, 0 means default (27)
+     */
+    @NotNull
+    public ZstdDecompressCtx setLongMax(int windowLogMax) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = Zstd.setDecompressionLongMax(nativePtr, windowLogMax);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
     /**
      * Load decompression dictionary
      *
@@ -115,6 +201,196 @@ public class ZstdDecompressCtx extends AutoCloseBase {
 
     private static native long loadDDict0(long nativePtr, byte @Nullable [] dict);
 
+    /**
+     * Reference a prefix (a raw content dictionary) to decompress the next frame only.
+     *
+     * It must be the same prefix that was referenced for compressing the frame with
+     * {@link ZstdCompressCtx#refPrefix(ByteBuffer)}. It replaces any loaded dictionary.
+     *
+     * @param prefix direct buffer with the prefix between its position and limit. It's referenced,
+     *               not copied, so it must not be modified until the frame is decompressed.
+     *               `null` removes the referenced prefix.
+     */
+    @NotNull
+    public ZstdDecompressCtx refPrefix(@Nullable ByteBuffer prefix) {
+        if (prefix != null && !prefix.isDirect()) {
+            throw new IllegalArgumentException("prefix must be a direct buffer");
+        }
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long result = prefix == null
+                ? refPrefix0(nativePtr, null, 0, 0)
+                : refPrefix0(nativePtr, prefix, prefix.position(), prefix.limit() - prefix.position());
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+            if (decompression_dict != null) {
+                decompression_dict.releaseSharedLock();
+                decompression_dict = null;
+            }
+            this.prefix = prefix;
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    /**
+     * Reference a prefix (a raw content dictionary) to decompress the next frame only.
+     *
+     * The prefix is copied to a direct buffer owned by the context, that is reused by the next calls.
+     *
+     * @param prefix the prefix
+     * @see #refPrefix(ByteBuffer)
+     */
+    @NotNull
+    public ZstdDecompressCtx refPrefix(byte @NotNull [] prefix) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            // drop the current prefix first, as it may be the copy we are going to overwrite
+            long result = refPrefix0(nativePtr, null, 0, 0);
+            if (Zstd.isError(result)) {
+                throw new ZstdException(result);
+            }
+            this.prefix = null;
+            if (prefix_copy == null || prefix_copy.capacity() < prefix.length) {
+                prefix_copy = ByteBuffer.allocateDirect(prefix.length);
+            }
+            prefix_copy.clear();
+            prefix_copy.put(prefix);
+            prefix_copy.flip();
+        } finally {
+            releaseSharedLock();
+        }
+        return refPrefix(prefix_copy);
+    }
+
+    private static native long refPrefix0(long nativePtr, @Nullable ByteBuffer prefix, int offset, int length);
+
+    /**
+     * Select the dictionary of each frame automatically from a registry, based on the
+     * dictID in the frame header.
+     *
+     * The dictionaries are resolved by the methods decompressing byte arrays and
+     * ByteBuffers. The frames of a single call may use different dictionaries: the
+     * consecutive frames using the same one are decompressed together, and the loaded
+     * dictionary is switched between them. Magicless frames can't be told apart, so all
+     * the frames of a call must use the dictionary of the first one. The streaming
+     * {@link #decompressDirectByteBufferStream} resolves the dictionary at the start of
+     * each frame, keeping the start of a header split across calls until it is complete.
+     *
+     * Only the dictionary of the last frame stays loaded, the context doesn't keep the
+     * others, so the registry can evict and release them.
+     *
+     * @param registry the registry or `null` to stop resolving the dictionaries
+     */
+    @NotNull
+    public ZstdDecompressCtx setDictRegistry(@Nullable ZstdDictRegistry registry) {
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            dict_registry = registry;
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    private interface FrameDecompression {
+        long decompress(int dstOffset, int dstSize, int srcOffset, int srcSize);
+    }
+
+    /**
+     * Decompress the frames of the source, one of `srcArray` and `srcBuffer`, resolving their
+     * dictionaries from the registry. The one-shot decompression uses the loaded dictionary for
+     * all the frames, so the runs of consecutive frames using the same dictionary are decompressed
+     * separately, loading the dictionary of each run before it.
+     *
+     * @return the decompressed size or an error code
+     */
+    private long decompressFrames(byte @Nullable [] srcArray, @Nullable ByteBuffer srcBuffer, int srcOffset, int srcSize,
+                                  int dstOffset, int dstSize, @NotNull FrameDecompression decompression) {
+        int srcEnd = srcOffset + srcSize;
+        int dstPos = dstOffset;
+        int runStart = srcOffset;
+        long runDictId = 0;
+        int pos = srcOffset;
+        while (pos < srcEnd) {
+            long dictId = getFrameDictId(srcArray, srcBuffer, pos, srcEnd - pos);
+            long frameSize = magicless ? -1 : srcArray != null
+                ? Zstd.findFrameCompressedSize0(srcArray, pos, srcEnd - pos)
+                : Zstd.findDirectByteBufferFrameCompressedSize(srcBuffer, pos, srcEnd - pos);
+            if (dictId > 0 && runDictId > 0 && dictId != runDictId) {
+                resolveFrameDict(runDictId);
+                long size = decompression.decompress(dstPos, dstSize - (dstPos - dstOffset), runStart, pos - runStart);
+                if (Zstd.isError(size)) {
+                    return size;
+                }
+                dstPos += (int) size;
+                runStart = pos;
+            }
+            if (dictId > 0) {
+                runDictId = dictId;
+            }
+            if (dictId < 0 || frameSize <= 0 || Zstd.isError(frameSize)) {
+                // the rest can't be split, let zstd report the errors if any
+                break;
+            }
+            pos += (int) frameSize;
+        }
+        resolveFrameDict(runDictId);
+        long size = decompression.decompress(dstPos, dstSize - (dstPos - dstOffset), runStart, srcEnd - runStart);
+        if (Zstd.isError(size)) {
+            return size;
+        }
+        return dstPos - dstOffset + size;
+    }
+
+    /**
+     * @return the dictID of the frame at `offset` of the source, 0 without dictionary,
+     *         or -1 if the header is incomplete
+     */
+    private long getFrameDictId(byte @Nullable [] srcArray, @Nullable ByteBuffer srcBuffer, int offset, int size) {
+        if (srcArray != null) {
+            return ZstdDictRegistry.getDictIdFromFrameHeader(srcArray, offset, size, magicless);
+        }
+        return ZstdDictRegistry.getDictIdFromFrameHeader(srcBuffer, offset, size, magicless);
+    }
+
+    /**
+     * Load the dictionary of a frame from the registry, unless it's already the loaded one.
+     * The previously loaded dictionary is released, so the registry can evict it.
+     */
+    private void resolveFrameDict(long dictId) {
+        if (dictId <= 0 || dict_registry == null) {
+            // no dictionary or incomplete header, let zstd report it
+            return;
+        }
+        if (decompression_dict != null && decompression_dict.getDictId() == dictId) {
+            return;
+        }
+        ZstdDictDecompress dict = dict_registry.get(dictId);
+        if (dict == null) {
+            throw new ZstdException(Zstd.errDictionaryWrong(), "Unknown dictionary ID " + dictId);
+        }
+        dict.acquireSharedLock();
+        // the frame is not started, and referencing requires a reset session
+        long result = resetSession0(nativePtr);
+        if (!Zstd.isError(result)) {
+            result = loadDDictFast0(nativePtr, dict);
+        }
+        if (Zstd.isError(result)) {
+            dict.releaseSharedLock();
+            throw new ZstdException(result);
+        }
+        if (decompression_dict != null) {
+            decompression_dict.releaseSharedLock();
+        }
+        decompression_dict = dict;
+    }
+
     /**
      * Clear all state and parameters from the decompression context. This leaves the object in a
      * state identical to a newly created decompression context.
@@ -131,6 +407,17 @@ public class ZstdDecompressCtx extends AutoCloseBase {
                 decompression_dict.releaseSharedLock();
                 decompression_dict = null;
             }
+            dict_registry = null;
+            frame_start = true;
+            if (frame_header != null) {
+                frame_header.clear();
+            }
+            magicless = false;
+            prefix = null;
+            max_critical_size = Zstd.MAX_CRITICAL_SIZE;
+            stable_out = false;
+            staging_in = null;
+            staging_out = null;
         } finally {
             releaseSharedLock();
         }
@@ -139,7 +426,47 @@ public class ZstdDecompressCtx extends AutoCloseBase {
 
     private static native long reset0(long nativePtr);
 
-    private void ensureOpen() {
+    long getNativePtr() {
+        return nativePtr;
+    }
+
+    boolean allowsCriticalCall() {
+        return true;
+    }
+
+    /**
+     * Limit the size of the byte arrays that are accessed in a JNI critical region by
+     * {@link #decompressByteArray(byte[], int, int, byte[], int, int)} and the methods using it.
+     *
+     * While in a critical region the GC is blocked, so decompressing into a large array can
+     * cause long GC pauses in other threads. If the source or the destination array is larger
+     * than the limit, the data are copied through direct buffers of this size and decompressed
+     * with the streaming API instead, at the cost of the extra copies and of the memory for the
+     * buffers.
+     *
+     * @param maxCriticalSize the max size in bytes or 0 for no limit,
+     *                        default: {@link Zstd#MAX_CRITICAL_SIZE}
+     */
+    @NotNull
+    public ZstdDecompressCtx setMaxCriticalSize(int maxCriticalSize) {
+        if (maxCriticalSize < 0) {
+            throw new IllegalArgumentException("maxCriticalSize must not be negative");
+        }
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            if (max_critical_size != maxCriticalSize) {
+                staging_in = null;
+                staging_out = null;
+            }
+            max_critical_size = maxCriticalSize;
+        } finally {
+            releaseSharedLock();
+        }
+        return this;
+    }
+
+    void ensureOpen() {
         if (nativePtr == 0) {
             throw new IllegalStateException("Decompression context is closed");
         }
@@ -157,6 +484,13 @@ public class ZstdDecompressCtx extends AutoCloseBase {
         ensureOpen();
         acquireSharedLock();
         try {
+            if (frame_start && src.hasRemaining()) {
+                if (dict_registry != null && !resolveStreamFrameDict(dst, src)) {
+                    // the header is incomplete, it's kept until the next call
+                    return false;
+                }
+                frame_start = false;
+            }
             long result = decompressDirectByteBufferStream0(nativePtr, dst, dst.position(), dst.limit(), src, src.position(), src.limit());
             if ((result & 0x80000000L) != 0) {
                 long code = -(result & 0xFF);
@@ -164,12 +498,52 @@ public class ZstdDecompressCtx extends AutoCloseBase {
             }
             src.position((int) (result & 0x7FFFFFFF));
             dst.position((int) (result >>> 32) & 0x7FFFFFFF);
-            return (result >>> 63) == 1;
+            frame_start = (result >>> 63) == 1;
+            return frame_start;
         } finally {
             releaseSharedLock();
         }
     }
 
+    /**
+     * Resolve the dictionary of the frame starting at the position of `src`. The start of a
+     * header split across calls is moved to `frame_header` until the dictID can be parsed, then
+     * fed to zstd after loading the dictionary.
+     *
+     * @return false if the header is still incomplete, `src` is then consumed
+     */
+    private boolean resolveStreamFrameDict(@NotNull ByteBuffer dst, @NotNull ByteBuffer src) {
+        long dictId;
+        if (frame_header == null || frame_header.position() == 0) {
+            dictId = ZstdDictRegistry.getDictIdFromFrameHeader(src, src.position(), src.remaining(), magicless);
+            if (dictId >= 0) {
+                resolveFrameDict(dictId);
+                return true;
+            }
+            if (frame_header == null) {
+                frame_header = ByteBuffer.allocateDirect(FRAME_HEADER_SIZE_MAX);
+            }
+        }
+        // byte by byte, so only the bytes up to the dictID are kept
+        do {
+            if (!src.hasRemaining()) {
+                return false;
+            }
+            frame_header.put(src.get());
+            dictId = ZstdDictRegistry.getDictIdFromFrameHeader(frame_header, 0, frame_header.position(), magicless);
+        } while (dictId < 0);
+        resolveFrameDict(dictId);
+        // zstd buffers the incomplete header, so it consumes these bytes without any output
+        int size = frame_header.position();
+        frame_header.clear();
+        long result = decompressDirectByteBufferStream0(nativePtr, dst, dst.position(), dst.limit(), frame_header, 0, size);
+        if ((result & 0x80000000L) != 0) {
+            long code = -(result & 0xFF);
+            throw new ZstdException(code, Zstd.getErrorName(code));
+        }
+        return true;
+    }
+
     /**
      * 4 pieces of information are packed into the return value of this method, which must be
      * treated as an unsigned long. The highest bit is set if all data has been flushed from
@@ -208,7 +582,10 @@ public class ZstdDecompressCtx extends AutoCloseBase {
         acquireSharedLock();
 
         try {
-            long size = decompressDirectByteBuffer0(nativePtr, dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize);
+            long size = dict_registry == null
+                    ? decompressDirectByteBufferFrames(dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize)
+                    : decompressFrames(null, srcBuff, srcOffset, srcSize, dstOffset, dstSize, (dOffset, dSize, sOffset, sSize) ->
+                        decompressDirectByteBufferFrames(dstBuff, dOffset, dSize, srcBuff, sOffset, sSize));
             if (Zstd.isError(size)) {
                 throw new ZstdException(size);
             }
@@ -221,6 +598,13 @@ public class ZstdDecompressCtx extends AutoCloseBase {
         }
     }
 
+    private long decompressDirectByteBufferFrames(@NotNull ByteBuffer dst, int dstOffset, int dstSize, @NotNull ByteBuffer src, int srcOffset, int srcSize) {
+        ZstdForeign foreign = ZstdForeign.INSTANCE;
+        return foreign != null
+                ? foreign.decompressDirectByteBuffer(nativePtr, dst, dstOffset, dstSize, src, srcOffset, srcSize)
+                : decompressDirectByteBuffer0(nativePtr, dst, dstOffset, dstSize, src, srcOffset, srcSize);
+    }
+
     private static native long decompressDirectByteBuffer0(long nativePtr, @NotNull ByteBuffer dst, int dstOffset, int dstSize, @NotNull ByteBuffer src, int srcOffset, int srcSize);
 
     /**
@@ -244,7 +628,10 @@ public class ZstdDecompressCtx extends AutoCloseBase {
         acquireSharedLock();
 
         try {
-            long size = decompressByteArray0(nativePtr, dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize);
+            long size = dict_registry == null
+                    ? decompressByteArrayFrames(dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize)
+                    : decompressFrames(srcBuff, null, srcOffset, srcSize, dstOffset, dstSize, (dOffset, dSize, sOffset, sSize) ->
+                        decompressByteArrayFrames(dstBuff, dOffset, dSize, srcBuff, sOffset, sSize));
             if (Zstd.isError(size)) {
                 throw new ZstdException(size);
             }
@@ -257,8 +644,77 @@ public class ZstdDecompressCtx extends AutoCloseBase {
         }
     }
 
+    private long decompressByteArrayFrames(byte @NotNull [] dst, int dstOffset, int dstSize, byte @NotNull [] src, int srcOffset, int srcSize) {
+        if (max_critical_size > 0 && (srcSize > max_critical_size || dstSize > max_critical_size) && !stable_out) {
+            return decompressByteArrayStaged(dst, dstOffset, dstSize, src, srcOffset, srcSize);
+        } else if (ZstdForeign.INSTANCE != null) {
+            return ZstdForeign.INSTANCE.decompressByteArray(nativePtr, dst, dstOffset, dstSize, src, srcOffset, srcSize);
+        } else {
+            return decompressByteArray0(nativePtr, dst, dstOffset, dstSize, src, srcOffset, srcSize);
+        }
+    }
+
     private static native long decompressByteArray0(long nativePtr, byte @NotNull [] dst, int dstOffset, int dstSize, byte @NotNull [] src, int srcOffset, int srcSize);
 
+    /**
+     * Decompresses through the staging direct buffers, so the arrays are never accessed in a critical region.
+     * Like the one-shot decompression, all frames in the source are decompressed.
+     *
+     * @return the decompressed size or an error code
+     */
+    private long decompressByteArrayStaged(byte @NotNull [] dst, int dstOffset, int dstSize, byte @NotNull [] src, int srcOffset, int srcSize) {
+        if (staging_in == null || staging_out == null) {
+            staging_in = ByteBuffer.allocateDirect(max_critical_size);
+            staging_out = ByteBuffer.allocateDirect(max_critical_size);
+        }
+        ByteBuffer in = staging_in;
+        ByteBuffer out = staging_out;
+        long result = resetSession0(nativePtr);
+        if (Zstd.isError(result) || srcSize == 0) {
+            return result;
+        }
+        int srcPos = srcOffset;
+        int srcEnd = srcOffset + srcSize;
+        int dstPos = dstOffset;
+        int dstEnd = dstOffset + dstSize;
+        in.clear();
+        in.flip();
+        while (true) {
+            if (!in.hasRemaining() && srcPos < srcEnd) {
+                int chunk = Math.min(in.capacity(), srcEnd - srcPos);
+                in.clear();
+                in.put(src, srcPos, chunk);
+                in.flip();
+                srcPos += chunk;
+            }
+            int consumedFrom = in.position();
+            result = decompressDirectByteBufferStream0(nativePtr, out, 0, out.capacity(), in, in.position(), in.limit());
+            if ((result & 0x80000000L) != 0) {
+                return -(result & 0xFF);
+            }
+            in.position((int) (result & 0x7FFFFFFF));
+            int produced = (int) (result >>> 32) & 0x7FFFFFFF;
+            if (produced > dstEnd - dstPos) {
+                return -Zstd.errDstSizeTooSmall();
+            }
+            out.clear();
+            out.get(dst, dstPos, produced);
+            dstPos += produced;
+            boolean frameDone = (result >>> 63) == 1;
+            if (!in.hasRemaining() && srcPos == srcEnd) {
+                if (frameDone) {
+                    return dstPos - dstOffset;
+                }
+                if (produced == 0 && in.position() == consumedFrom) {
+                    // no more input and nothing left to flush
+                    return -Zstd.errSrcSizeWrong();
+                }
+            }
+        }
+    }
+
+    private static native long resetSession0(long nativePtr);
+
     public int decompressByteArrayToDirectByteBuffer(@NotNull ByteBuffer dstBuff, int dstOffset, int dstSize, byte @NotNull [] srcBuff, int srcOffset, int srcSize) {
         if (!dstBuff.isDirect()) {
             throw new IllegalArgumentException("dstBuff must be a direct buffer");
@@ -271,7 +727,10 @@ public class ZstdDecompressCtx extends AutoCloseBase {
         acquireSharedLock();
 
         try {
-            long size = decompressByteArrayToDirectByteBuffer0(nativePtr, dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize);
+            long size = dict_registry == null
+                    ? decompressByteArrayToDirectByteBuffer0(nativePtr, dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize)
+                    : decompressFrames(srcBuff, null, srcOffset, srcSize, dstOffset, dstSize, (dOffset, dSize, sOffset, sSize) ->
+                        decompressByteArrayToDirectByteBuffer0(nativePtr, dstBuff, dOffset, dSize, srcBuff, sOffset, sSize));
             if (Zstd.isError(size)) {
                 throw new ZstdException(size);
             }
@@ -298,7 +757,10 @@ public class ZstdDecompressCtx extends AutoCloseBase {
         acquireSharedLock();
 
         try {
-            long size = decompressDirectByteBufferToByteArray0(nativePtr, dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize);
+            long size = dict_registry == null
+                    ? decompressDirectByteBufferToByteArray0(nativePtr, dstBuff, dstOffset, dstSize, srcBuff, srcOffset, srcSize)
+                    : decompressFrames(null, srcBuff, srcOffset, srcSize, dstOffset, dstSize, (dOffset, dSize, sOffset, sSize) ->
+                        decompressDirectByteBufferToByteArray0(nativePtr, dstBuff, dOffset, dSize, srcBuff, sOffset, sSize));
             if (Zstd.isError(size)) {
                 throw new ZstdException(size);
             }
@@ -313,6 +775,170 @@ public class ZstdDecompressCtx extends AutoCloseBase {
 
     private static native long decompressDirectByteBufferToByteArray0(long nativePtr, byte @NotNull [] dst, int dstOffset, int dstSize, @NotNull ByteBuffer src, int srcOffset, int srcSize);
 
+    /**
+     * Decompresses the native memory region at 'src' into the native memory region at 'dst'
+     * using this ZstdDecompressCtx.
+     *
+     * Unlike the buffer and array methods, sizes are not limited to 2GB, so this method
+     * can be used with memory mapped files or other off-heap regions of any size. The
+     * caller is responsible for keeping both regions valid for the duration of the call.
+     *
+     * @param dst address of the destination region
+     * @param dstSize size of the destination region, should be larger or equal to the original size
+     * @param src address of the source region
+     * @param srcSize size of the source region
+     * @return the number of bytes decompressed into the destination region
+     */
+    public long decompressUnsafe(long dst, long dstSize, long src, long srcSize) {
+        if (dstSize < 0) {
+            throw new IllegalArgumentException("dstSize must not be negative");
+        }
+        if (srcSize < 0) {
+            throw new IllegalArgumentException("srcSize must not be negative");
+        }
+        if (dst == 0 && dstSize > 0) {
+            throw new IllegalArgumentException("dst must not be null");
+        }
+        if (src == 0 && srcSize > 0) {
+            throw new IllegalArgumentException("src must not be null");
+        }
+
+        ensureOpen();
+        acquireSharedLock();
+
+        try {
+            long size = decompressUnsafe0(nativePtr, dst, dstSize, src, srcSize);
+            if (Zstd.isError(size)) {
+                throw new ZstdException(size);
+            }
+            return size;
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    private static native long decompressUnsafe0(long nativePtr, long dst, long dstSize, long src, long srcSize);
+
+    /**
+     * Decompresses one frame read from the remaining bytes of the 'srcs' buffers, in order,
+     * into the 'dsts' buffers, in order. This is the counterpart of
+     * {@link ZstdCompressCtx#compressByteBuffers(ByteBuffer[], ByteBuffer[])} and allows
+     * to decompress frames larger than 2GB without a single contiguous destination.
+     *
+     * Buffers may be direct or array-backed heap buffers, heap buffers are copied through
+     * direct staging buffers. The `position()` of each buffer is advanced by the number of
+     * bytes consumed or written. A destination buffer is filled up before moving on to the
+     * next one. Bytes following the end of the frame are left in the source buffers.
+     *
+     * If the decompression fails, the session is reset and the context can be used again.
+     *
+     * @param dsts destination buffers
+     * @param srcs source buffers
+     * @return the total number of bytes written into 'dsts'
+     * @throws ZstdException if the frame is truncated or the destination buffers are too small
+     * @throws IllegalArgumentException if a buffer is neither direct nor array-backed, or a destination is read-only
+     */
+    public long decompressByteBuffers(@NotNull ByteBuffer[] dsts, @NotNull ByteBuffer[] srcs) {
+        if (dsts.length == 0) {
+            throw new ZstdException(Zstd.errDstSizeTooSmall(), "No destination buffers");
+        }
+        if (srcs.length == 0) {
+            throw new ZstdException(Zstd.errSrcSizeWrong(), "No source buffers");
+        }
+        for (ByteBuffer dst : dsts) {
+            if (dst.isReadOnly()) {
+                throw new IllegalArgumentException("dsts must be writable");
+            }
+            if (!dst.isDirect() && !dst.hasArray()) {
+                throw new IllegalArgumentException("dsts must be direct or array-backed buffers");
+            }
+        }
+        for (ByteBuffer src : srcs) {
+            if (!src.isDirect() && !src.hasArray()) {
+                throw new IllegalArgumentException("srcs must be direct or array-backed buffers");
+            }
+        }
+        ensureOpen();
+        ByteBuffer stagingDst = null;
+        ByteBuffer stagingSrc = null;
+        boolean done = false;
+        try {
+            long written = 0;
+            int di = 0;
+            int si = 0;
+            while (true) {
+                while (di < dsts.length - 1 && !dsts[di].hasRemaining()) {
+                    di++;
+                }
+                while (si < srcs.length - 1 && !srcs[si].hasRemaining()) {
+                    si++;
+                }
+                ByteBuffer dst = dsts[di];
+                ByteBuffer src = srcs[si];
+                int dstPos = dst.position();
+                int srcPos = src.position();
+                ByteBuffer in = src;
+                if (!src.isDirect()) {
+                    if (stagingSrc == null) {
+                        stagingSrc = ByteBuffer.allocateDirect(STAGING_SIZE);
+                    }
+                    ByteBuffer chunk = src.duplicate();
+                    chunk.limit(srcPos + Math.min(chunk.remaining(), STAGING_SIZE));
+                    stagingSrc.clear();
+                    stagingSrc.put(chunk);
+                    stagingSrc.flip();
+                    in = stagingSrc;
+                }
+                ByteBuffer out = dst;
+                if (!dst.isDirect()) {
+                    if (stagingDst == null) {
+                        stagingDst = ByteBuffer.allocateDirect(STAGING_SIZE);
+                    }
+                    stagingDst.clear();
+                    stagingDst.limit(Math.min(dst.remaining(), STAGING_SIZE));
+                    out = stagingDst;
+                }
+                boolean frameDone = decompressDirectByteBufferStream(out, in);
+                if (in != src) {
+                    src.position(srcPos + in.position());
+                }
+                if (out != dst) {
+                    out.flip();
+                    dst.put(out);
+                }
+                written += dst.position() - dstPos;
+                if (frameDone) {
+                    done = true;
+                    return written;
+                }
+                if (dstPos == dst.position() && srcPos == src.position()) {
+                    if (!dst.hasRemaining()) {
+                        throw new ZstdException(Zstd.errDstSizeTooSmall(), "Destination buffers are too small");
+                    }
+                    throw new ZstdException(Zstd.errSrcSizeWrong(), "Truncated frame");
+                }
+            }
+        } finally {
+            if (!done) {
+                // drop the failed frame, so the context can be used again
+                resetStreamSession();
+            }
+        }
+    }
+
+    private void resetStreamSession() {
+        acquireSharedLock();
+        try {
+            resetSession0(nativePtr);
+            frame_start = true;
+            if (frame_header != null) {
+                frame_header.clear();
+            }
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
     /* Covenience methods */
 
     /**
@@ -0,0 +1,278 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A thread-safe cache of digested dictionaries, so the modules loading the same
+ * dictionary bytes share one {@link ZstdDictCompress} per level and one
+ * {@link ZstdDictDecompress} instead of digesting the dictionary again.
+ *
+ * The dictionaries are keyed by the SHA-256 of their content and, for compression,
+ * by the level or by all the parameters of the {@link ZstdDictCompress.Builder}
+ * they are built with. Each `acquire` must be paired with a `release` of the returned
+ * dictionary, that must not be closed by the caller:
+ * <pre>
+ *     ZstdDictCompress dict = ZstdDictCache.getDefault().acquireCompress(bytes, level);
+ *     try {
+ *         ctx.loadDict(dict);
+ *         ...
+ *     } finally {
+ *         ctx.loadDict((ZstdDictCompress) null);
+ *         ZstdDictCache.getDefault().release(dict);
+ *     }
+ * </pre>
+ *
+ * Dictionaries in use are never evicted. Once released by all users, they stay in
+ * the cache until more than `maxUnused` dictionaries are unused, and then the least
+ * recently used ones are closed.
+ */
+public class ZstdDictCache {
+
+    private static final int DEFAULT_MAX_UNUSED = 16;
+
+    @NotNull
+    private static final ZstdDictCache DEFAULT = new ZstdDictCache(DEFAULT_MAX_UNUSED);
+
+    /**
+     * The process-wide cache, keeping up to 16 unused dictionaries
+     */
+    public static @NotNull ZstdDictCache getDefault() {
+        return DEFAULT;
+    }
+
+    private static final class Key {
+        private final byte @NotNull [] digest;
+        // the level of the compression dictionaries, or all the parameters of those built
+        // with a builder, null for the decompression ones
+        private final int @Nullable [] parameters;
+        private final int hash;
+
+        Key(byte @NotNull [] digest, int @Nullable [] parameters) {
+            this.digest = digest;
+            this.parameters = parameters;
+            this.hash = 31 * Arrays.hashCode(digest) + Arrays.hashCode(parameters);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Arrays.equals(digest, other.digest) && Arrays.equals(parameters, other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        @NotNull
+        private final Key key;
+        // created by the first user, under the lock of the entry
+        @Nullable
+        private AutoCloseBase dict = null;
+        // guarded by the cache
+        private int refs = 0;
+
+        Entry(@NotNull Key key) {
+            this.key = key;
+        }
+    }
+
+    private final int maxUnused;
+
+    @NotNull
+    private final HashMap<Key, Entry> entries = new HashMap<>();
+    // the unused entries, in LRU order
+    @NotNull
+    private final LinkedHashMap<Key, Entry> unused = new LinkedHashMap<>();
+    @NotNull
+    private final IdentityHashMap<AutoCloseBase, Entry> acquired = new IdentityHashMap<>();
+
+    /**
+     * @param maxUnused the max number of dictionaries to keep when they are not in use
+     */
+    public ZstdDictCache(int maxUnused) {
+        if (maxUnused < 0) {
+            throw new IllegalArgumentException("maxUnused must not be negative");
+        }
+        this.maxUnused = maxUnused;
+    }
+
+    /**
+     * Get the compression dictionary for the given content and level, creating it if it's not cached
+     *
+     * @param dict the dictionary content
+     * @param level the compression level
+     * @return the shared dictionary, to be released with {@link #release(ZstdDictCompress)}
+     */
+    public @NotNull ZstdDictCompress acquireCompress(byte @NotNull [] dict, int level) {
+        return (ZstdDictCompress) acquire(dict, new int[] {level}, null);
+    }
+
+    /**
+     * Get the compression dictionary for the given content built with the parameters of
+     * `builder`, creating it if it's not cached. The dictionaries built with different
+     * parameters are cached separately, also from those acquired with a level only.
+     *
+     * @param dict the dictionary content
+     * @param builder the parameters of the dictionary, copied by the call. Its buffer mode
+     *                is ignored, the content is always copied.
+     * @return the shared dictionary, to be released with {@link #release(ZstdDictCompress)}
+     */
+    public @NotNull ZstdDictCompress acquireCompress(byte @NotNull [] dict, ZstdDictCompress.@NotNull Builder builder) {
+        ZstdDictCompress.Builder copy = builder.copy();
+        return (ZstdDictCompress) acquire(dict, copy.parameters(), copy);
+    }
+
+    /**
+     * Get the decompression dictionary for the given content, creating it if it's not cached
+     *
+     * @param dict the dictionary content
+     * @return the shared dictionary, to be released with {@link #release(ZstdDictDecompress)}
+     */
+    public @NotNull ZstdDictDecompress acquireDecompress(byte @NotNull [] dict) {
+        return (ZstdDictDecompress) acquire(dict, null, null);
+    }
+
+    /**
+     * Release a dictionary returned by {@link #acquireCompress(byte[], int)} or
+     * {@link #acquireCompress(byte[], ZstdDictCompress.Builder)}
+     */
+    public void release(@NotNull ZstdDictCompress dict) {
+        releaseDict(dict);
+    }
+
+    /**
+     * Release a dictionary returned by {@link #acquireDecompress(byte[])}
+     */
+    public void release(@NotNull ZstdDictDecompress dict) {
+        releaseDict(dict);
+    }
+
+    /**
+     * @return the number of cached dictionaries, in use or not
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Close all unused dictionaries
+     */
+    public void clear() {
+        evict(0);
+    }
+
+    @NotNull
+    private AutoCloseBase acquire(byte @NotNull [] dict, int @Nullable [] parameters, ZstdDictCompress.@Nullable Builder builder) {
+        Key key = new Key(digest(dict), parameters);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                entries.put(key, entry);
+            }
+            entry.refs++;
+            unused.remove(key);
+        }
+        AutoCloseBase result;
+        try {
+            // digest outside the lock of the cache, only the users of the same dictionary wait for it
+            synchronized (entry) {
+                if (entry.dict == null) {
+                    if (builder != null) {
+                        entry.dict = builder.build(dict);
+                    } else if (parameters != null) {
+                        entry.dict = new ZstdDictCompress(dict, parameters[0]);
+                    } else {
+                        entry.dict = new ZstdDictDecompress(dict);
+                    }
+                }
+                result = entry.dict;
+            }
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                unreference(entry);
+            }
+            throw e;
+        }
+        synchronized (this) {
+            // prevents the users from closing the shared dictionary
+            result.acquireSharedLock();
+            acquired.put(result, entry);
+        }
+        return result;
+    }
+
+    private void releaseDict(@NotNull AutoCloseBase dict) {
+        synchronized (this) {
+            Entry entry = acquired.get(dict);
+            if (entry == null) {
+                throw new IllegalArgumentException("Dictionary not acquired from this cache");
+            }
+            dict.releaseSharedLock();
+            if (entry.refs == 1) {
+                acquired.remove(dict);
+            }
+            unreference(entry);
+        }
+        evict(maxUnused);
+    }
+
+    // guarded by the cache
+    private void unreference(@NotNull Entry entry) {
+        entry.refs--;
+        if (entry.refs == 0) {
+            if (entry.dict == null) {
+                // the creation failed
+                entries.remove(entry.key);
+            } else {
+                unused.put(entry.key, entry);
+            }
+        }
+    }
+
+    private void evict(int max) {
+        while (true) {
+            AutoCloseBase dict;
+            synchronized (this) {
+                if (unused.size() <= max) {
+                    return;
+                }
+                Iterator<Entry> eldest = unused.values().iterator();
+                Entry entry = eldest.next();
+                eldest.remove();
+                entries.remove(entry.key);
+                dict = entry.dict;
+            }
+            try {
+                dict.close();
+            } catch (IllegalStateException e) {
+                // still loaded in a context, it's released when it becomes unreachable
+            }
+        }
+    }
+
+    private static byte @NotNull [] digest(byte @NotNull [] dict) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(dict);
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
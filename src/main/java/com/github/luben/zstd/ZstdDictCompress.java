@@ -23,8 +23,146 @@ public class ZstdDictCompress extends SharedDictBase {
 
     private native void initDirect(@NotNull ByteBuffer dict, int dict_offset, int dict_size, int level, int byReference);
 
+    private native long initAdvanced(@NotNull ByteBuffer dict, int dict_offset, int dict_size, int byReference,
+                                     int level, int windowLog, int hashLog, int chainLog, int searchLog,
+                                     int minMatch, int targetLength, int strategy, boolean dedicatedDictSearch);
+
     private native void free();
 
+    /**
+     * Builder of dictionaries with explicit compression parameters, created with
+     * `ZSTD_createCDict_advanced2`. The parameters left at 0 are derived from the level.
+     *
+     * The parameters apply to the tables of the dictionary. The contexts using it should be
+     * configured with the same level and parameters, except with dedicated dictionary search
+     * where the parameters of the dictionary are always used.
+     * <pre>
+     *     ZstdDictCompress dict = new ZstdDictCompress.Builder().setLevel(7).setEnableDedicatedDictSearch(true).build(bytes);
+     * </pre>
+     */
+    public static class Builder {
+        private int level = Zstd.defaultCompressionLevel();
+        private int windowLog = 0;
+        private int hashLog = 0;
+        private int chainLog = 0;
+        private int searchLog = 0;
+        private int minMatch = 0;
+        private int targetLength = 0;
+        private int strategy = 0;
+        private boolean dedicatedDictSearch = false;
+        private boolean byReference = false;
+
+        public @NotNull Builder setLevel(int level) {
+            this.level = level;
+            return this;
+        }
+
+        public @NotNull Builder setWindowLog(int windowLog) {
+            this.windowLog = windowLog;
+            return this;
+        }
+
+        public @NotNull Builder setHashLog(int hashLog) {
+            this.hashLog = hashLog;
+            return this;
+        }
+
+        public @NotNull Builder setChainLog(int chainLog) {
+            this.chainLog = chainLog;
+            return this;
+        }
+
+        public @NotNull Builder setSearchLog(int searchLog) {
+            this.searchLog = searchLog;
+            return this;
+        }
+
+        public @NotNull Builder setMinMatch(int minMatch) {
+            this.minMatch = minMatch;
+            return this;
+        }
+
+        public @NotNull Builder setTargetLength(int targetLength) {
+            this.targetLength = targetLength;
+            return this;
+        }
+
+        /**
+         * @param strategy the strategy, from 1 (fast) to 9 (btultra2), 0 means default for the level
+         */
+        public @NotNull Builder setStrategy(int strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        /**
+         * Build a search structure dedicated to the dictionary, default: false.
+         *
+         * It's slower and takes more memory to build, but speeds up the compression of small inputs
+         * with the dictionary. It's supported only by the greedy, lazy and lazy2 strategies
+         * (levels 5 to 12 for large inputs), it's ignored with the other strategies.
+         */
+        public @NotNull Builder setEnableDedicatedDictSearch(boolean dedicatedDictSearch) {
+            this.dedicatedDictSearch = dedicatedDictSearch;
+            return this;
+        }
+
+        /**
+         * Reference the content of direct buffers instead of copying it, default: false.
+         * The buffer must not be modified before the dictionary is closed.
+         */
+        public @NotNull Builder setByReference(boolean byReference) {
+            this.byReference = byReference;
+            return this;
+        }
+
+        public @NotNull ZstdDictCompress build(byte @NotNull [] dict) {
+            return build(dict, 0, dict.length);
+        }
+
+        @NotNull
+        Builder copy() {
+            Builder copy = new Builder();
+            copy.level = level;
+            copy.windowLog = windowLog;
+            copy.hashLog = hashLog;
+            copy.chainLog = chainLog;
+            copy.searchLog = searchLog;
+            copy.minMatch = minMatch;
+            copy.targetLength = targetLength;
+            copy.strategy = strategy;
+            copy.dedicatedDictSearch = dedicatedDictSearch;
+            copy.byReference = byReference;
+            return copy;
+        }
+
+        /**
+         * The parameters of the digested dictionary, the buffer mode excluded
+         */
+        int @NotNull [] parameters() {
+            return new int[] {level, windowLog, hashLog, chainLog, searchLog, minMatch, targetLength, strategy,
+                dedicatedDictSearch ? 1 : 0};
+        }
+
+        public @NotNull ZstdDictCompress build(byte @NotNull [] dict, int offset, int length) {
+            Objects.checkFromIndexSize(offset, length, dict.length);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+            buffer.put(dict, offset, length);
+            buffer.flip();
+            return new ZstdDictCompress(this, buffer, false);
+        }
+
+        /**
+         * @param dict direct buffer containing the dictionary between its position and limit
+         */
+        public @NotNull ZstdDictCompress build(@NotNull ByteBuffer dict) {
+            if (!dict.isDirect()) {
+                throw new IllegalArgumentException("dict must be a direct buffer");
+            }
+            return new ZstdDictCompress(this, dict, byReference);
+        }
+    }
+
     /**
      * Get the byte buffer that backs this dict, if any, or null if not backed by a byte buffer.
      */
@@ -109,10 +247,41 @@ public class ZstdDictCompress extends SharedDictBase {
     }
 
 
+    private ZstdDictCompress(@NotNull Builder builder, @NotNull ByteBuffer dict, boolean byReference) {
+        this.level = builder.level;
+        long result = initAdvanced(dict, dict.position(), dict.limit() - dict.position(), byReference ? 1 : 0,
+            builder.level, builder.windowLog, builder.hashLog, builder.chainLog, builder.searchLog,
+            builder.minMatch, builder.targetLength, builder.strategy, builder.dedicatedDictSearch);
+        if (Zstd.isError(result)) {
+            throw new ZstdException(result);
+        }
+        if (nativePtr == 0L) {
+            throw new IllegalStateException("ZSTD_createCDict_advanced2 failed");
+        }
+        if (byReference) {
+            sharedDict = dict;
+        }
+        storeFence();
+    }
+
     int level() {
         return level;
     }
 
+    /**
+     * @return the memory used by the digested dictionary, including its tables
+     */
+    long sizeOf() {
+        acquireSharedLock();
+        try {
+            return sizeOf0(nativePtr);
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    private static native long sizeOf0(long ptr);
+
     @Override
     void  doClose() {
         if (nativePtr != 0) {
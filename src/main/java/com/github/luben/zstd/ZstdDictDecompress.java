@@ -23,6 +23,22 @@ public class ZstdDictDecompress extends SharedDictBase {
 
     private native void free();
 
+    private native long getDictId0();
+
+    /**
+     * Get the dictID of this dictionary
+     *
+     * @return the dictID or 0 if the dictionary is raw content
+     */
+    public long getDictId() {
+        acquireSharedLock();
+        try {
+            return getDictId0();
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
     /**
      * Get the byte buffer that backs this dict, if any, or null if not backed by a byte buffer.
      */
@@ -0,0 +1,315 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures how well candidate dictionaries compress a holdout set of samples,
+ * e.g. to decide whether a newly trained dictionary should replace the current one.
+ *
+ * For each dictionary and level it reports the compression ratio, the compression
+ * and decompression speed and the time to load the dictionary. A `null` dictionary
+ * measures the compression without dictionary, as a baseline.
+ */
+public class ZstdDictEvaluator {
+
+    /**
+     * The result of the evaluation of one dictionary at one level.
+     */
+    public static class Result {
+        private final long dictId;
+        private final int dictSize;
+        private final int level;
+        private final long originalSize;
+        private final long compressedSize;
+        private final int iterations;
+        private final long compressNanos;
+        private final long decompressNanos;
+        private final long compressDictLoadNanos;
+        private final long decompressDictLoadNanos;
+
+        Result(long dictId, int dictSize, int level, long originalSize, long compressedSize, int iterations,
+               long compressNanos, long decompressNanos, long compressDictLoadNanos, long decompressDictLoadNanos) {
+            this.dictId = dictId;
+            this.dictSize = dictSize;
+            this.level = level;
+            this.originalSize = originalSize;
+            this.compressedSize = compressedSize;
+            this.iterations = iterations;
+            this.compressNanos = compressNanos;
+            this.decompressNanos = decompressNanos;
+            this.compressDictLoadNanos = compressDictLoadNanos;
+            this.decompressDictLoadNanos = decompressDictLoadNanos;
+        }
+
+        /**
+         * The dictID of the dictionary, 0 for raw content or no dictionary.
+         */
+        public long getDictId() {
+            return dictId;
+        }
+
+        /**
+         * The size of the dictionary, 0 for no dictionary.
+         */
+        public int getDictSize() {
+            return dictSize;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        /**
+         * The total size of the samples, counted once whatever the number of iterations.
+         */
+        public long getOriginalSize() {
+            return originalSize;
+        }
+
+        /**
+         * The total size of the compressed samples, each compressed in its own frame,
+         * counted once whatever the number of iterations.
+         */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public double getRatio() {
+            return compressedSize == 0 ? 0 : (double) originalSize / compressedSize;
+        }
+
+        /**
+         * Compression speed in MB/s of original data, averaged over all iterations.
+         */
+        public double getCompressionSpeed() {
+            return speed(compressNanos);
+        }
+
+        /**
+         * Decompression speed in MB/s of original data, averaged over all iterations.
+         */
+        public double getDecompressionSpeed() {
+            return speed(decompressNanos);
+        }
+
+        /**
+         * Time to create the compression dictionary (ZSTD_createCDict) in nanoseconds.
+         */
+        public long getCompressDictLoadNanos() {
+            return compressDictLoadNanos;
+        }
+
+        /**
+         * Time to create the decompression dictionary (ZSTD_createDDict) in nanoseconds.
+         */
+        public long getDecompressDictLoadNanos() {
+            return decompressDictLoadNanos;
+        }
+
+        private double speed(long nanos) {
+            // the time is summed over all iterations
+            return nanos == 0 ? 0 : originalSize * iterations * 1000.0 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("dictId=%d dictSize=%d level=%d ratio=%.3f compression=%.1f MB/s decompression=%.1f MB/s " +
+                    "cdict load=%d us ddict load=%d us", dictId, dictSize, level, getRatio(), getCompressionSpeed(),
+                getDecompressionSpeed(), compressDictLoadNanos / 1000, decompressDictLoadNanos / 1000);
+        }
+    }
+
+    @NotNull
+    private final byte[][] samples;
+    private final long samplesSize;
+    private final int maxSampleSize;
+    private int iterations = 1;
+    private int parallelism = 1;
+
+    /**
+     * @param samples the holdout samples, they should not be part of the training samples
+     */
+    public ZstdDictEvaluator(@NotNull List<byte[]> samples) {
+        this(samples.toArray(new byte[0][]));
+    }
+
+    /**
+     * @param samples the holdout samples, they should not be part of the training samples
+     */
+    public ZstdDictEvaluator(byte @NotNull [][] samples) {
+        if (samples.length == 0) {
+            throw new IllegalArgumentException("No samples");
+        }
+        this.samples = samples.clone();
+        long size = 0;
+        int maxSize = 0;
+        for (byte[] sample : this.samples) {
+            Objects.requireNonNull(sample, "sample");
+            size += sample.length;
+            maxSize = Math.max(maxSize, sample.length);
+        }
+        this.samplesSize = size;
+        this.maxSampleSize = maxSize;
+    }
+
+    /**
+     * Number of times all samples are compressed and decompressed to measure the speed, default: 1
+     */
+    public synchronized @NotNull ZstdDictEvaluator setIterations(int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("iterations must be positive");
+        }
+        this.iterations = iterations;
+        return this;
+    }
+
+    /**
+     * Number of evaluations to run in parallel, default: 1
+     *
+     * Parallel evaluations compete for the CPU and memory bandwidth, so the measured
+     * speeds are comparable only between results of evaluations with the same parallelism.
+     */
+    public synchronized @NotNull ZstdDictEvaluator setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Evaluate one dictionary at one level
+     *
+     * @param dict the dictionary or `null` to evaluate the compression without dictionary
+     * @param level the compression level
+     */
+    public @NotNull Result evaluate(byte @Nullable [] dict, int level) {
+        int iterations;
+        synchronized (this) {
+            iterations = this.iterations;
+        }
+        long dictId = 0;
+        long cdictLoad = 0;
+        long ddictLoad = 0;
+        ZstdDictCompress cdict = null;
+        ZstdDictDecompress ddict = null;
+        if (dict != null) {
+            dictId = Zstd.getDictIdFromDict(dict);
+            long start = System.nanoTime();
+            cdict = new ZstdDictCompress(dict, level);
+            cdictLoad = System.nanoTime() - start;
+            start = System.nanoTime();
+            ddict = new ZstdDictDecompress(dict);
+            ddictLoad = System.nanoTime() - start;
+        }
+        try (ZstdCompressCtx cctx = new ZstdCompressCtx(); ZstdDecompressCtx dctx = new ZstdDecompressCtx()) {
+            cctx.setLevel(level);
+            cctx.loadDict(cdict);
+            dctx.loadDict(ddict);
+            byte[] dst = new byte[(int) Zstd.compressBound(maxSampleSize)];
+            byte[] decompressed = new byte[maxSampleSize];
+            byte[][] compressed = new byte[samples.length][];
+            long compressedSize = 0;
+            long compressNanos = 0;
+            long decompressNanos = 0;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                for (int s = 0; s < samples.length; s++) {
+                    int size = cctx.compressByteArray(dst, 0, dst.length, samples[s], 0, samples[s].length);
+                    if (i == 0) {
+                        compressed[s] = Arrays.copyOf(dst, size);
+                        compressedSize += size;
+                    }
+                }
+                compressNanos += System.nanoTime() - start;
+            }
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                for (int s = 0; s < samples.length; s++) {
+                    int size = dctx.decompressByteArray(decompressed, 0, samples[s].length, compressed[s], 0, compressed[s].length);
+                    if (size != samples[s].length) {
+                        throw new ZstdException(Zstd.errCorruptionDetected(), "Round trip failed for sample " + s);
+                    }
+                }
+                decompressNanos += System.nanoTime() - start;
+            }
+            return new Result(dictId, dict != null ? dict.length : 0, level, samplesSize,
+                compressedSize, iterations, compressNanos, decompressNanos, cdictLoad, ddictLoad);
+        } finally {
+            if (cdict != null) {
+                cdict.close();
+            }
+            if (ddict != null) {
+                ddict.close();
+            }
+        }
+    }
+
+    /**
+     * Evaluate all combinations of dictionaries and levels, running up to
+     * {@link #setParallelism(int)} evaluations in parallel
+     *
+     * @param dicts the dictionaries, `null` elements evaluate the compression without dictionary
+     * @param levels the compression levels
+     * @return the results, ordered by dictionary and then by level
+     */
+    public @NotNull List<Result> evaluate(@NotNull List<byte[]> dicts, int @NotNull ... levels) {
+        int parallelism;
+        synchronized (this) {
+            parallelism = this.parallelism;
+        }
+        List<Result> results = new ArrayList<>(dicts.size() * levels.length);
+        if (parallelism == 1) {
+            for (byte[] dict : dicts) {
+                for (int level : levels) {
+                    results.add(evaluate(dict, level));
+                }
+            }
+            return results;
+        }
+        List<Callable<Result>> tasks = new ArrayList<>();
+        for (final byte[] dict : dicts) {
+            for (final int level : levels) {
+                tasks.add(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return evaluate(dict, level);
+                    }
+                });
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, tasks.size())));
+        try {
+            List<Future<Result>> futures = executor.invokeAll(tasks);
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
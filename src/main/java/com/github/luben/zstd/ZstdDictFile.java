@@ -0,0 +1,236 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A dictionary file: the dictionary content with a header holding its dictID,
+ * the compression level it's meant for and free-form metadata, e.g. the training
+ * parameters.
+ *
+ * The files are memory-mapped and the dictionaries are created by reference to
+ * the mapped content, so loading many large dictionaries doesn't copy them to
+ * the heap nor keep a second copy in native memory.
+ *
+ * The format, all integers are little-endian:
+ * <pre>
+ *     magic        4 bytes  "ZDCT"
+ *     version      u32      1
+ *     dictID       u32      as in the dictionary content, 0 for raw content
+ *     level        i32
+ *     metadata     u32 count, then for each entry:
+ *                           u16 key length, key UTF-8, u32 value length, value UTF-8
+ *     content size u32
+ *     checksum     u32      CRC32 of the content
+ *     content
+ * </pre>
+ */
+public class ZstdDictFile {
+
+    private static final int MAGIC = 0x5443445A; // "ZDCT"
+    private static final int VERSION = 1;
+
+    private final long dictId;
+    private final int level;
+    @NotNull
+    private final Map<String, String> metadata;
+    @NotNull
+    private final ByteBuffer content;
+
+    private ZstdDictFile(long dictId, int level, @NotNull Map<String, String> metadata, @NotNull ByteBuffer content) {
+        this.dictId = dictId;
+        this.level = level;
+        this.metadata = metadata;
+        this.content = content;
+    }
+
+    /**
+     * Write a dictionary file
+     *
+     * @param path the file to write, overwritten if it exists
+     * @param dict the dictionary content
+     * @param level the compression level the dictionary is meant for
+     * @param metadata free-form metadata, e.g. the training parameters
+     */
+    public static void write(@NotNull Path path, byte @NotNull [] dict, int level,
+                             @Nullable Map<String, String> metadata) throws IOException {
+        int metadataSize = 4;
+        if (metadata != null) {
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                metadataSize += 6 + utf8(entry.getKey()).length + utf8(entry.getValue()).length;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(dict, 0, dict.length);
+        ByteBuffer header = ByteBuffer.allocate(16 + metadataSize + 8).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt((int) Zstd.getDictIdFromDict(dict));
+        header.putInt(level);
+        header.putInt(metadata == null ? 0 : metadata.size());
+        if (metadata != null) {
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                byte[] key = utf8(entry.getKey());
+                byte[] value = utf8(entry.getValue());
+                if (key.length > 0xFFFF) {
+                    throw new IllegalArgumentException("Metadata key too long");
+                }
+                header.putShort((short) key.length);
+                header.put(key);
+                header.putInt(value.length);
+                header.put(value);
+            }
+        }
+        header.putInt(dict.length);
+        header.putInt((int) crc.getValue());
+        header.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer content = ByteBuffer.wrap(dict);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+    }
+
+    /**
+     * Map a dictionary file and verify the checksum of its content
+     */
+    public static @NotNull ZstdDictFile read(@NotNull Path path) throws IOException {
+        return read(path, true);
+    }
+
+    /**
+     * Map a dictionary file
+     *
+     * @param path the file
+     * @param verifyChecksum verify the checksum of the content, it reads the whole file
+     */
+    public static @NotNull ZstdDictFile read(@NotNull Path path, boolean verifyChecksum) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw corrupted(path, "too large");
+            }
+            // the mapping stays valid after closing the channel
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw corrupted(path, "bad magic number");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new ZstdIOException(Zstd.errVersionUnsupported(),
+                    "Unsupported dictionary file version " + version + ": " + path);
+            }
+            long dictId = buffer.getInt() & 0xFFFFFFFFL;
+            int level = buffer.getInt();
+            int count = buffer.getInt();
+            Map<String, String> metadata = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = string(buffer, buffer.getShort() & 0xFFFF);
+                String value = string(buffer, buffer.getInt());
+                metadata.put(key, value);
+            }
+            int contentSize = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (contentSize < 0 || contentSize != buffer.remaining()) {
+                throw corrupted(path, "bad content size");
+            }
+            ByteBuffer content = buffer.slice();
+            if (verifyChecksum) {
+                CRC32 crc = new CRC32();
+                crc.update(content.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    throw new ZstdIOException(Zstd.errChecksumWrong(), "Dictionary file checksum mismatch: " + path);
+                }
+            }
+            return new ZstdDictFile(dictId, level, Collections.unmodifiableMap(metadata), content);
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw corrupted(path, "truncated header");
+        }
+    }
+
+    /**
+     * @return the dictID of the dictionary, 0 for raw content
+     */
+    public long getDictId() {
+        return dictId;
+    }
+
+    /**
+     * @return the compression level the dictionary is meant for
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public @NotNull Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @return a read-only view of the mapped dictionary content
+     */
+    public @NotNull ByteBuffer getContent() {
+        return content.asReadOnlyBuffer();
+    }
+
+    /**
+     * Create a decompression dictionary referencing the mapped content
+     */
+    public @NotNull ZstdDictDecompress loadDecompress() {
+        return new ZstdDictDecompress(content.duplicate(), true);
+    }
+
+    /**
+     * Create a compression dictionary for the level of the file, referencing the mapped content
+     */
+    public @NotNull ZstdDictCompress loadCompress() {
+        return loadCompress(level);
+    }
+
+    /**
+     * Create a compression dictionary referencing the mapped content
+     *
+     * @param level the compression level
+     */
+    public @NotNull ZstdDictCompress loadCompress(int level) {
+        return new ZstdDictCompress(content.duplicate(), level, true);
+    }
+
+    private static byte @NotNull [] utf8(@NotNull String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    private static String string(@NotNull ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    private static ZstdIOException corrupted(@NotNull Path path, @NotNull String reason) {
+        return new ZstdIOException(Zstd.errDictionaryCorrupted(), "Invalid dictionary file, " + reason + ": " + path);
+    }
+}
@@ -0,0 +1,246 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Decides per payload whether to compress it with a dictionary, with a raw prefix
+ * or without dictionary, for traffic mixing small messages, that benefit from a
+ * dictionary, with large ones, where it mostly costs time.
+ *
+ * By default payloads up to {@link #setDictMaxSize(int) dictMaxSize} bytes use the
+ * dictionary (or the prefix, if there is no dictionary) and larger ones don't.
+ * With sampling enabled, every n-th payload is compressed with all the candidates,
+ * and the smallest result decides for the following payloads of the same size
+ * class (same highest bit of the size).
+ *
+ * The dictID of the dictionary is written in the frames using it and frames without
+ * dictionary have no dictID, so they can be decompressed with a {@link ZstdDictRegistry}.
+ * The prefix leaves no trace in the frame: a frame compressed with the prefix has no
+ * dictID either, and can't be told apart from a frame without dictionary. The
+ * decompressors must know when to use the prefix, from {@link #getDecision(int)} or
+ * out of band - it's meant for payloads that are deltas of a known previous version.
+ *
+ * The policy configures the context per payload: it replaces the loaded dictionary
+ * or prefix, and enables the dictID for the payloads compressed with the dictionary.
+ *
+ * It's not thread-safe, like the context it uses.
+ */
+public class ZstdDictPolicy {
+
+    public enum Decision {
+        /** compress without dictionary */
+        NONE,
+        /** compress with the dictionary */
+        DICT,
+        /** compress with the raw prefix */
+        PREFIX
+    }
+
+    private static final int SIZE_CLASSES = 33;
+
+    @NotNull
+    private final ZstdCompressCtx ctx;
+    @Nullable
+    private final ZstdDictCompress dict;
+    @Nullable
+    private ByteBuffer prefix = null;
+    private int dictMaxSize = 32 * 1024;
+    private int samplingInterval = 0;
+    private long payloads = 0;
+    // the winner of the last sample of each size class, null until sampled
+    private final Decision @NotNull [] sampled = new Decision[SIZE_CLASSES];
+    @NotNull
+    private final long[] decisions = new long[Decision.values().length];
+
+    /**
+     * @param ctx the context with the compression parameters. It's not modified until the first
+     *            payload, then its loaded dictionary is replaced on each payload.
+     * @param dict the dictionary or `null` to choose only between the prefix and no dictionary
+     */
+    public ZstdDictPolicy(@NotNull ZstdCompressCtx ctx, @Nullable ZstdDictCompress dict) {
+        this.ctx = ctx;
+        this.dict = dict;
+    }
+
+    /**
+     * Set a raw prefix as candidate
+     *
+     * @param prefix direct buffer with the prefix between its position and limit, `null` removes it.
+     *               It's referenced, it must not be modified while it's set.
+     */
+    public @NotNull ZstdDictPolicy setPrefix(@Nullable ByteBuffer prefix) {
+        if (prefix != null && !prefix.isDirect()) {
+            throw new IllegalArgumentException("prefix must be a direct buffer");
+        }
+        this.prefix = prefix;
+        Arrays.fill(sampled, null);
+        return this;
+    }
+
+    /**
+     * The max size of the payloads compressed with the dictionary or the prefix when the
+     * size class wasn't sampled, default: 32KB
+     */
+    public @NotNull ZstdDictPolicy setDictMaxSize(int dictMaxSize) {
+        if (dictMaxSize < 0) {
+            throw new IllegalArgumentException("dictMaxSize must not be negative");
+        }
+        this.dictMaxSize = dictMaxSize;
+        return this;
+    }
+
+    /**
+     * Compress every n-th payload with all candidates to learn the best decision for its
+     * size class, at the cost of compressing it multiple times
+     *
+     * @param samplingInterval the interval, 0 disables sampling (default)
+     */
+    public @NotNull ZstdDictPolicy setSamplingInterval(int samplingInterval) {
+        if (samplingInterval < 0) {
+            throw new IllegalArgumentException("samplingInterval must not be negative");
+        }
+        this.samplingInterval = samplingInterval;
+        return this;
+    }
+
+    /**
+     * The decision for a payload of the given size, without sampling
+     */
+    public @NotNull Decision getDecision(int size) {
+        Decision decision = sampled[sizeClass(size)];
+        if (decision != null) {
+            return decision;
+        }
+        if (size <= dictMaxSize) {
+            if (dict != null) {
+                return Decision.DICT;
+            }
+            if (prefix != null) {
+                return Decision.PREFIX;
+            }
+        }
+        return Decision.NONE;
+    }
+
+    /**
+     * @return the number of payloads compressed with the given decision
+     */
+    public long getDecisionCount(@NotNull Decision decision) {
+        return decisions[decision.ordinal()];
+    }
+
+    /**
+     * Compress a payload
+     *
+     * @param src the payload
+     * @return the compressed frame
+     */
+    public byte @NotNull [] compress(byte @NotNull [] src) {
+        if (sample()) {
+            byte[] best = null;
+            Decision bestDecision = null;
+            for (Decision candidate : candidates()) {
+                prepare(candidate);
+                byte[] result = ctx.compress(src);
+                if (best == null || result.length < best.length) {
+                    best = result;
+                    bestDecision = candidate;
+                }
+            }
+            sampled[sizeClass(src.length)] = bestDecision;
+            count(bestDecision);
+            return best;
+        }
+        Decision decision = getDecision(src.length);
+        prepare(decision);
+        count(decision);
+        return ctx.compress(src);
+    }
+
+    /**
+     * Compress a payload between the position and limit of `src` into `dst`, like
+     * {@link ZstdCompressCtx#compress(ByteBuffer, ByteBuffer)}
+     *
+     * @param dst direct buffer for the compressed frame
+     * @param src direct buffer with the payload
+     * @return the size of the compressed frame
+     */
+    public int compress(@NotNull ByteBuffer dst, @NotNull ByteBuffer src) {
+        int size = src.remaining();
+        Decision decision = getDecision(size);
+        if (sample()) {
+            int srcPosition = src.position();
+            int dstPosition = dst.position();
+            int best = Integer.MAX_VALUE;
+            Decision last = null;
+            for (Decision candidate : candidates()) {
+                prepare(candidate);
+                int compressed = ctx.compress(dst, src);
+                if (compressed < best) {
+                    best = compressed;
+                    decision = candidate;
+                }
+                last = candidate;
+                src.position(srcPosition);
+                dst.position(dstPosition);
+            }
+            sampled[sizeClass(size)] = decision;
+            if (decision == last) {
+                // the best one is already in dst
+                src.position(src.limit());
+                dst.position(dstPosition + best);
+                count(decision);
+                return best;
+            }
+        }
+        prepare(decision);
+        count(decision);
+        return ctx.compress(dst, src);
+    }
+
+    private boolean sample() {
+        return samplingInterval > 0 && payloads++ % samplingInterval == 0;
+    }
+
+    private Decision @NotNull [] candidates() {
+        if (dict != null && prefix != null) {
+            return new Decision[] {Decision.NONE, Decision.DICT, Decision.PREFIX};
+        }
+        if (dict != null) {
+            return new Decision[] {Decision.NONE, Decision.DICT};
+        }
+        if (prefix != null) {
+            return new Decision[] {Decision.NONE, Decision.PREFIX};
+        }
+        return new Decision[] {Decision.NONE};
+    }
+
+    private void prepare(@NotNull Decision decision) {
+        switch (decision) {
+            case DICT:
+                // the decompressors find the dictionary by its dictID
+                ctx.setDictID(true).loadDict(dict);
+                break;
+            case PREFIX:
+                // the prefix replaces the dictionary, for the next frame only
+                ctx.refPrefix(prefix.duplicate());
+                break;
+            default:
+                ctx.loadDict((ZstdDictCompress) null);
+                ctx.refPrefix((ByteBuffer) null);
+                break;
+        }
+    }
+
+    private void count(@NotNull Decision decision) {
+        decisions[decision.ordinal()]++;
+    }
+
+    private static int sizeClass(int size) {
+        return 32 - Integer.numberOfLeadingZeros(size);
+    }
+}
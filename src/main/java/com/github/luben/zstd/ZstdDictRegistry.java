@@ -0,0 +1,222 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe registry of decompression dictionaries keyed by their dictID.
+ *
+ * {@link ZstdDecompressCtx} and {@link ZstdInputStreamNoFinalizer} can use a
+ * registry to pick the dictionary of each frame automatically, based on the
+ * dictID written in the frame header.
+ *
+ * The registry keeps at most `maxSize` dictionaries and evicts the least recently
+ * used ones. Missing dictionaries are loaded lazily from the optional {@link Loader}.
+ * Evicted dictionaries are not closed, as they can still be in use by contexts
+ * or streams - they are released when they become unreachable.
+ */
+public class ZstdDictRegistry {
+
+    /**
+     * The source of the dictionaries that are not in the registry.
+     */
+    public interface Loader {
+
+        /**
+         * Load the dictionary with the given dictID.
+         *
+         * It may be called concurrently from multiple threads, also for the same dictID.
+         *
+         * @param dictId the dictID requested by a frame
+         * @return the dictionary or `null` if it is not known
+         */
+        @Nullable
+        ZstdDictDecompress load(long dictId);
+    }
+
+    private final int maxSize;
+
+    @Nullable
+    private final Loader loader;
+
+    @NotNull
+    private final LinkedHashMap<Long, ZstdDictDecompress> dicts;
+
+    /**
+     * Create a registry without a loader, dictionaries should be registered upfront
+     *
+     * @param maxSize the max number of dictionaries to keep
+     */
+    public ZstdDictRegistry(int maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * Create a registry that loads the missing dictionaries on demand
+     *
+     * @param maxSize the max number of dictionaries to keep
+     * @param loader the source of the missing dictionaries
+     */
+    public ZstdDictRegistry(int maxSize, @Nullable Loader loader) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.loader = loader;
+        this.dicts = new LinkedHashMap<Long, ZstdDictDecompress>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ZstdDictDecompress> eldest) {
+                return size() > ZstdDictRegistry.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Add a dictionary to the registry, replacing the one with the same dictID if any
+     *
+     * @param dict the dictionary, it should not be a raw content dictionary
+     * @return the dictID of the dictionary
+     */
+    public long register(@NotNull ZstdDictDecompress dict) {
+        long dictId = dict.getDictId();
+        if (dictId == 0) {
+            throw new IllegalArgumentException("Dictionary has no dictID");
+        }
+        synchronized (dicts) {
+            dicts.put(dictId, dict);
+        }
+        return dictId;
+    }
+
+    /**
+     * Create a dictionary and add it to the registry
+     *
+     * @param dict buffer containing the dictionary
+     * @return the dictID of the dictionary
+     */
+    public long register(byte @NotNull [] dict) {
+        return register(new ZstdDictDecompress(dict));
+    }
+
+    /**
+     * Get the dictionary with the given dictID, loading it if it's not in the registry
+     *
+     * @param dictId the dictID
+     * @return the dictionary or `null` if it is not registered and cannot be loaded
+     */
+    @Nullable
+    public ZstdDictDecompress get(long dictId) {
+        synchronized (dicts) {
+            ZstdDictDecompress dict = dicts.get(dictId);
+            if (dict != null || loader == null) {
+                return dict;
+            }
+        }
+        // don't hold the lock while loading, so the other dictionaries are accessible
+        ZstdDictDecompress loaded = loader.load(dictId);
+        if (loaded == null) {
+            return null;
+        }
+        if (loaded.getDictId() != dictId) {
+            throw new ZstdException(Zstd.errDictionaryWrong(),
+                "Loader returned dictionary " + loaded.getDictId() + " instead of " + dictId);
+        }
+        synchronized (dicts) {
+            // another thread may have loaded it in the meantime
+            ZstdDictDecompress dict = dicts.get(dictId);
+            if (dict != null) {
+                return dict;
+            }
+            dicts.put(dictId, loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * Remove the dictionary with the given dictID from the registry
+     *
+     * @param dictId the dictID
+     * @return the removed dictionary or `null` if it was not in the registry
+     */
+    @Nullable
+    public ZstdDictDecompress remove(long dictId) {
+        synchronized (dicts) {
+            return dicts.remove(dictId);
+        }
+    }
+
+    /**
+     * @return the number of dictionaries in the registry
+     */
+    public int size() {
+        synchronized (dicts) {
+            return dicts.size();
+        }
+    }
+
+    /**
+     * Remove all dictionaries from the registry
+     */
+    public void clear() {
+        synchronized (dicts) {
+            dicts.clear();
+        }
+    }
+
+    /**
+     * Parse the dictID from the header of the frame starting at 'offset'.
+     *
+     * @return the dictID, 0 if the frame has no dictID or it's not a zstd frame,
+     * or -1 if more bytes are needed to parse the header
+     */
+    static long getDictIdFromFrameHeader(byte @NotNull [] src, int offset, int size, boolean magicless) {
+        return getDictIdFromFrameHeader(ByteBuffer.wrap(src), offset, size, magicless);
+    }
+
+    /**
+     * Parse the dictID from the header of the frame starting at 'offset' of the buffer,
+     * ignoring its position and limit.
+     *
+     * @return the dictID, 0 if the frame has no dictID or it's not a zstd frame,
+     * or -1 if more bytes are needed to parse the header
+     */
+    static long getDictIdFromFrameHeader(@NotNull ByteBuffer src, int offset, int size, boolean magicless) {
+        int pos = offset;
+        int end = offset + size;
+        if (!magicless) {
+            if (size < 4) {
+                return -1;
+            }
+            int magic = (src.get(pos) & 0xFF) | (src.get(pos + 1) & 0xFF) << 8 | (src.get(pos + 2) & 0xFF) << 16
+                    | (src.get(pos + 3) & 0xFF) << 24;
+            if (magic != 0xFD2FB528) {
+                // skippable frames and garbage
+                return 0;
+            }
+            pos += 4;
+        }
+        if (pos >= end) {
+            return -1;
+        }
+        int descriptor = src.get(pos++) & 0xFF;
+        int dictIdSizeCode = descriptor & 3;
+        boolean singleSegment = (descriptor & 0x20) != 0;
+        if (!singleSegment) {
+            // window descriptor
+            pos++;
+        }
+        int dictIdSize = dictIdSizeCode == 3 ? 4 : dictIdSizeCode;
+        if (pos + dictIdSize > end) {
+            return -1;
+        }
+        long dictId = 0;
+        for (int i = 0; i < dictIdSize; i++) {
+            dictId |= (long) (src.get(pos + i) & 0xFF) << (8 * i);
+        }
+        return dictId;
+    }
+}
@@ -0,0 +1,202 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Parameters of the COVER and fastCover dictionary training algorithms.
+ *
+ * With optimization enabled the trainer tries multiple parameter combinations
+ * (all `k` and `d` values left at 0, up to `steps` of them) in parallel on
+ * `nbThreads` threads and picks the one compressing best the test part of the
+ * samples. After training, this object holds the selected parameters, so they
+ * can be reused without optimization for the next training on similar data.
+ *
+ * The setters return this object, e.g.:
+ * <pre>
+ *     new ZstdDictTrainParams().setD(8).setSteps(4).setNbThreads(8).setOptimize(true)
+ * </pre>
+ */
+public class ZstdDictTrainParams {
+
+    // Note: the fields are accessed by name from the native code
+    private boolean fastCover = true;
+    private boolean optimize = false;
+    private int k = 0;
+    private int d = 0;
+    private int f = 0;
+    private int steps = 0;
+    private int nbThreads = 1;
+    private double splitPoint = 0;
+    private int accel = 0;
+    private int compressionLevel = Zstd.defaultCompressionLevel();
+    private int dictId = 0;
+
+    /**
+     * Use the fastCover algorithm (default) or the slower COVER algorithm
+     */
+    public @NotNull ZstdDictTrainParams setFastCover(boolean fastCover) {
+        this.fastCover = fastCover;
+        return this;
+    }
+
+    public boolean getFastCover() {
+        return fastCover;
+    }
+
+    /**
+     * Search for the best `k` and `d` instead of using the provided ones, default: false
+     */
+    public @NotNull ZstdDictTrainParams setOptimize(boolean optimize) {
+        this.optimize = optimize;
+        return this;
+    }
+
+    public boolean getOptimize() {
+        return optimize;
+    }
+
+    /**
+     * Segment size, reasonable range [16, 2048+]. Required without optimization,
+     * 0 means to search in [50, 2000] when optimizing.
+     */
+    public @NotNull ZstdDictTrainParams setK(int k) {
+        this.k = checkNotNegative(k, "k");
+        return this;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Dmer size, 0 &lt; d &lt;= k, reasonable range [6, 16]. Required without optimization,
+     * 0 means to try 6 and 8 when optimizing.
+     */
+    public @NotNull ZstdDictTrainParams setD(int d) {
+        this.d = checkNotNegative(d, "d");
+        return this;
+    }
+
+    public int getD() {
+        return d;
+    }
+
+    /**
+     * Log of the size of the frequency array (fastCover only), 0 means default (20)
+     */
+    public @NotNull ZstdDictTrainParams setF(int f) {
+        this.f = checkNotNegative(f, "f");
+        return this;
+    }
+
+    public int getF() {
+        return f;
+    }
+
+    /**
+     * Number of `k` values tried when optimizing, 0 means default (40)
+     */
+    public @NotNull ZstdDictTrainParams setSteps(int steps) {
+        this.steps = checkNotNegative(steps, "steps");
+        return this;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Number of threads used when optimizing, default: 1
+     */
+    public @NotNull ZstdDictTrainParams setNbThreads(int nbThreads) {
+        if (nbThreads <= 0) {
+            throw new IllegalArgumentException("nbThreads must be positive");
+        }
+        this.nbThreads = nbThreads;
+        return this;
+    }
+
+    public int getNbThreads() {
+        return nbThreads;
+    }
+
+    /**
+     * Fraction of the samples used for training when optimizing, the rest are used for
+     * testing. 1.0 uses all samples for both. 0 means default (1.0 for COVER, 0.75 for fastCover).
+     */
+    public @NotNull ZstdDictTrainParams setSplitPoint(double splitPoint) {
+        if (splitPoint < 0 || splitPoint > 1) {
+            throw new IllegalArgumentException("splitPoint must be between 0 and 1");
+        }
+        this.splitPoint = splitPoint;
+        return this;
+    }
+
+    public double getSplitPoint() {
+        return splitPoint;
+    }
+
+    /**
+     * Acceleration level (fastCover only), 0 &lt; accel &lt;= 10, higher is faster and
+     * less accurate, 0 means default (1)
+     */
+    public @NotNull ZstdDictTrainParams setAccel(int accel) {
+        if (accel < 0 || accel > 10) {
+            throw new IllegalArgumentException("accel must be between 0 and 10");
+        }
+        this.accel = accel;
+        return this;
+    }
+
+    public int getAccel() {
+        return accel;
+    }
+
+    /**
+     * The compression level the dictionary will be used with, default: {@link Zstd#defaultCompressionLevel()}
+     */
+    public @NotNull ZstdDictTrainParams setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * The dictID of the dictionary, 0 means a random one
+     */
+    public @NotNull ZstdDictTrainParams setDictId(int dictId) {
+        this.dictId = dictId;
+        return this;
+    }
+
+    public int getDictId() {
+        return dictId;
+    }
+
+    private static int checkNotNegative(int value, @NotNull String name) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " must not be negative");
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "ZstdDictTrainParams{" +
+            "fastCover=" + fastCover +
+            ", optimize=" + optimize +
+            ", k=" + k +
+            ", d=" + d +
+            ", f=" + f +
+            ", steps=" + steps +
+            ", nbThreads=" + nbThreads +
+            ", splitPoint=" + splitPoint +
+            ", accel=" + accel +
+            ", compressionLevel=" + compressionLevel +
+            ", dictId=" + dictId +
+            '}';
+    }
+}
@@ -51,6 +51,22 @@ public class ZstdDictTrainer {
         return dictBuffer;
     }
 
+    /**
+     * Train a dictionary with the COVER or fastCover algorithm
+     *
+     * @param params the training parameters, updated with the selected ones when optimizing
+     */
+    public synchronized @NotNull ByteBuffer trainSamplesDirect(@NotNull ZstdDictTrainParams params) throws ZstdException {
+        ByteBuffer dictBuffer = ByteBuffer.allocateDirect(dictSize);
+        long l = Zstd.trainFromBufferDirect(trainingSamples, copyToIntArray(sampleSizes), dictBuffer, params);
+        if (Zstd.isError(l)) {
+            dictBuffer.limit(0);
+            throw new ZstdException(l);
+        }
+        dictBuffer.limit(Long.valueOf(l).intValue());
+        return dictBuffer;
+    }
+
     public byte @NotNull [] trainSamples() throws ZstdException {
         return trainSamples(false);
     }
@@ -62,6 +78,18 @@ public class ZstdDictTrainer {
         return bytes;
     }
 
+    /**
+     * Train a dictionary with the COVER or fastCover algorithm
+     *
+     * @param params the training parameters, updated with the selected ones when optimizing
+     */
+    public byte @NotNull [] trainSamples(@NotNull ZstdDictTrainParams params) throws ZstdException {
+        ByteBuffer byteBuffer = trainSamplesDirect(params);
+        byte[] bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.get(bytes);
+        return bytes;
+    }
+
     private int @NotNull [] copyToIntArray(@NotNull List<Integer> list) {
         int[] ints = new int[list.size()];
         int idx = 0;
@@ -48,6 +48,16 @@ public class ZstdDirectBufferCompressingStream implements Closeable, Flushable {
         return this;
     }
 
+    public synchronized @NotNull ZstdDirectBufferCompressingStream setTargetCBlockSize(int targetCBlockSize) throws IOException {
+        inner.setTargetCBlockSize(targetCBlockSize);
+        return this;
+    }
+
+    public synchronized @NotNull ZstdDirectBufferCompressingStream setFlushPolicy(int maxPendingBytes, long maxPendingMillis) {
+        inner.setFlushPolicy(maxPendingBytes, maxPendingMillis);
+        return this;
+    }
+
     /**
      * Enable or disable class finalizers
      *
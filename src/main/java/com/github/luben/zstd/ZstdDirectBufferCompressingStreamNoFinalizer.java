@@ -47,6 +47,11 @@ public class ZstdDirectBufferCompressingStreamNoFinalizer implements Closeable,
     private int level = Zstd.defaultCompressionLevel();
     private byte @Nullable [] dict = null;
     private @Nullable ZstdDictCompress fastDict = null;
+    private int flushAfterBytes = 0;
+    private long flushAfterNanos = 0;
+    // input compressed since the last flush
+    private long pendingBytes = 0;
+    private long pendingSince = 0;
 
     /* JNI methods */
     private static native long recommendedCOutSize();
@@ -81,6 +86,41 @@ public class ZstdDirectBufferCompressingStreamNoFinalizer implements Closeable,
         return this;
     }
 
+    /**
+     * Set the target size of the compressed blocks, so the decompressor can decode them
+     * as soon as they are received. 0 disables it (default).
+     */
+    public @NotNull ZstdDirectBufferCompressingStreamNoFinalizer setTargetCBlockSize(int targetCBlockSize) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (initialized) {
+            throw new IllegalStateException("Change of parameter on initialized stream");
+        }
+        int result = Zstd.setCompressionTargetCBlockSize(stream, targetCBlockSize);
+        if (Zstd.isError(result)) {
+            throw new ZstdIOException(result);
+        }
+        return this;
+    }
+
+    /**
+     * Flush automatically after compressing, when at least `maxPendingBytes` were compressed
+     * since the last flush, or when the first of them was compressed more than
+     * `maxPendingMillis` ago. The time is checked only when compressing.
+     *
+     * @param maxPendingBytes the max bytes compressed before flushing, 0 disables it (default)
+     * @param maxPendingMillis the max time of compressed data before flushing, 0 disables it (default)
+     */
+    public @NotNull ZstdDirectBufferCompressingStreamNoFinalizer setFlushPolicy(int maxPendingBytes, long maxPendingMillis) {
+        if (maxPendingBytes < 0 || maxPendingMillis < 0) {
+            throw new IllegalArgumentException("The limits must not be negative");
+        }
+        this.flushAfterBytes = maxPendingBytes;
+        this.flushAfterNanos = maxPendingMillis * 1000000L;
+        return this;
+    }
+
     public void compress(@NotNull ByteBuffer source) throws IOException {
         if (!source.isDirect()) {
             throw new IllegalArgumentException("Source buffer should be a direct buffer");
@@ -88,6 +128,7 @@ public class ZstdDirectBufferCompressingStreamNoFinalizer implements Closeable,
         if (closed) {
             throw new IOException("Stream closed");
         }
+        int length = source.remaining();
         if (!initialized) {
             long result = 0;
             ZstdDictCompress fastDict = this.fastDict;
@@ -125,6 +166,17 @@ public class ZstdDirectBufferCompressingStreamNoFinalizer implements Closeable,
             target.position(target.position() + produced);
             source.position(source.position() + consumed);
         }
+        if (flushAfterBytes > 0 || flushAfterNanos > 0) {
+            long now = System.nanoTime();
+            if (pendingBytes == 0) {
+                pendingSince = now;
+            }
+            pendingBytes += length;
+            if ((flushAfterBytes > 0 && pendingBytes >= flushAfterBytes)
+                    || (flushAfterNanos > 0 && now - pendingSince >= flushAfterNanos)) {
+                flush();
+            }
+        }
     }
 
     @Override
@@ -156,6 +208,7 @@ public class ZstdDirectBufferCompressingStreamNoFinalizer implements Closeable,
             }
             while (needed > 0);
         }
+        pendingBytes = 0;
     }
 
     @Override
@@ -0,0 +1,37 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Calls into the bundled libzstd through the Foreign Function &amp; Memory API,
+ * bypassing the JNI wrappers.
+ *
+ * The implementation, ZstdForeignBackend, exists only in the Java 22 layer of the
+ * multi-release jar (src/main/java22). {@link #INSTANCE} is null on JVMs older than 22,
+ * or when the downcalls can't be used, and the contexts then call JNI instead.
+ */
+abstract class ZstdForeign {
+
+    @Nullable
+    static final ZstdForeign INSTANCE = load();
+
+    @Nullable
+    private static ZstdForeign load() {
+        try {
+            Class<?> backend = Class.forName("com.github.luben.zstd.ZstdForeignBackend");
+            return (ZstdForeign) backend.getDeclaredMethod("create").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    abstract long compressByteArray(long ctx, byte[] dst, int dstOffset, int dstSize, byte[] src, int srcOffset, int srcSize);
+
+    abstract long compressDirectByteBuffer(long ctx, ByteBuffer dst, int dstOffset, int dstSize, ByteBuffer src, int srcOffset, int srcSize);
+
+    abstract long decompressByteArray(long ctx, byte[] dst, int dstOffset, int dstSize, byte[] src, int srcOffset, int srcSize);
+
+    abstract long decompressDirectByteBuffer(long ctx, ByteBuffer dst, int dstOffset, int dstSize, ByteBuffer src, int srcOffset, int srcSize);
+}
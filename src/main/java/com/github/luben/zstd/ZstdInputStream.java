@@ -1,6 +1,7 @@
 package com.github.luben.zstd;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.FilterInputStream;
 import java.io.IOException;
@@ -90,6 +91,16 @@ public class ZstdInputStream extends FilterInputStream {
         return this;
     }
 
+    /**
+     * Enable or disable magicless frames
+     *
+     * @param magiclessFlag the frames don't start with the 32-bits magic number, default: false
+     */
+    public @NotNull ZstdInputStream setMagicless(boolean magiclessFlag) throws IOException {
+        inner.setMagicless(magiclessFlag);
+        return this;
+    }
+
     /**
      * Enable or disable support for multiple dictionary references
      *
@@ -101,6 +112,16 @@ public class ZstdInputStream extends FilterInputStream {
         return this;
     }
 
+    /**
+     * Select the dictionary of each frame automatically from a registry
+     *
+     * @param registry the registry or `null` to stop resolving the dictionaries
+     */
+    public @NotNull ZstdInputStream setDictRegistry(@Nullable ZstdDictRegistry registry) throws IOException {
+        inner.setDictRegistry(registry);
+        return this;
+    }
+
     public int read(byte @NotNull [] dst, int offset, int len) throws IOException {
         return inner.read(dst, offset, len);
     }
@@ -9,6 +9,7 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 
 /**
  * InputStream filter that decompresses the data provided
@@ -41,6 +42,12 @@ public class ZstdInputStreamNoFinalizer extends FilterInputStream {
     private boolean isClosed = false;
     // keep the active dict alive
     private @Nullable ZstdDictDecompress active_dict;
+    private @Nullable ZstdDictRegistry dict_registry;
+    private boolean frameStart = true;
+    private boolean magicless = false;
+    // the dstream keeps pointers to all dicts referenced with multiple dicts enabled
+    private boolean multipleDicts = false;
+    private @Nullable ArrayList<ZstdDictDecompress> referencedDicts;
 
     /* JNI methods */
     public static native long recommendedDInSize();
@@ -89,6 +96,23 @@ public class ZstdInputStreamNoFinalizer extends FilterInputStream {
         return this.isContinuous;
     }
 
+    /**
+     * Enable or disable magicless frames
+     *
+     * @param magiclessFlag the frames don't start with the 32-bits magic number, default: false
+     */
+    public synchronized @NotNull ZstdInputStreamNoFinalizer setMagicless(boolean magiclessFlag) throws IOException {
+        if (isClosed) {
+            throw new IOException("Stream closed");
+        }
+        int size = Zstd.setDecompressionMagicless(stream, magiclessFlag);
+        if (Zstd.isError(size)) {
+            throw new ZstdIOException(size);
+        }
+        magicless = magiclessFlag;
+        return this;
+    }
+
     public synchronized @NotNull ZstdInputStreamNoFinalizer setDict(byte @NotNull [] dict) throws IOException {
         if (isClosed) {
             throw new IOException("Stream closed");
@@ -116,13 +140,76 @@ public class ZstdInputStreamNoFinalizer extends FilterInputStream {
         }
         // release the shared lock on the previously used dict (if any)
         if (active_dict != null) {
-            active_dict.releaseSharedLock();
+            releaseDict(active_dict);
         }
         // keep the dict alive so it's not garbage collected
         active_dict = dict;
         return this;
     }
 
+    /**
+     * Select the dictionary of each frame automatically from a registry, based on
+     * the dictID in the frame header.
+     *
+     * The dictionary is loaded at the start of each frame, replacing the previous one, so
+     * the stream keeps only the dictionary of the current frame and the registry can evict
+     * and release the others, unless ZSTD_d_refMultipleDDicts is enabled with
+     * {@link #setRefMultipleDDicts(boolean)}.
+     *
+     * @param registry the registry or `null` to stop resolving the dictionaries
+     */
+    public synchronized @NotNull ZstdInputStreamNoFinalizer setDictRegistry(@Nullable ZstdDictRegistry registry) throws IOException {
+        if (isClosed) {
+            throw new IOException("Stream closed");
+        }
+        dict_registry = registry;
+        return this;
+    }
+
+    private void releaseDict(@NotNull ZstdDictDecompress dict) {
+        if (multipleDicts) {
+            if (referencedDicts == null) {
+                referencedDicts = new ArrayList<>();
+            }
+            referencedDicts.add(dict);
+        } else {
+            dict.releaseSharedLock();
+        }
+    }
+
+    /**
+     * Load the dictionary requested by the frame at the current source position, reading
+     * more from the upstream if the frame header is not complete
+     */
+    private void resolveFrameDict() throws IOException {
+        long dictId = ZstdDictRegistry.getDictIdFromFrameHeader(src, (int) srcPos, (int) (srcSize - srcPos), magicless);
+        while (dictId < 0) {
+            // move the partial header to the start of the buffer and read the rest
+            int remaining = (int) (srcSize - srcPos);
+            System.arraycopy(src, (int) srcPos, src, 0, remaining);
+            srcPos = 0;
+            srcSize = remaining;
+            int read = in.read(src, remaining, srcBuffSize - remaining);
+            if (read < 0) {
+                // truncated frame, it will be reported by the decompression
+                return;
+            }
+            srcSize += read;
+            dictId = ZstdDictRegistry.getDictIdFromFrameHeader(src, 0, (int) srcSize, magicless);
+        }
+        if (dictId == 0 || dict_registry == null) {
+            return;
+        }
+        if (active_dict != null && active_dict.getDictId() == dictId) {
+            return;
+        }
+        ZstdDictDecompress dict = dict_registry.get(dictId);
+        if (dict == null) {
+            throw new ZstdIOException(Zstd.errDictionaryWrong(), "Unknown dictionary ID " + dictId);
+        }
+        setDict(dict);
+    }
+
     public synchronized @NotNull ZstdInputStreamNoFinalizer setLongMax(int windowLogMax) throws IOException {
         if (isClosed) {
             throw new IOException("Stream closed");
@@ -142,6 +229,8 @@ public class ZstdInputStreamNoFinalizer extends FilterInputStream {
         if (Zstd.isError(size)) {
             throw new ZstdIOException(size);
         }
+        // the dicts referenced while enabled stay in use until the stream is closed
+        multipleDicts |= useMultiple;
         return this;
     }
 
@@ -202,6 +291,13 @@ public class ZstdInputStreamNoFinalizer extends FilterInputStream {
                 }
             }
 
+            if (frameStart && srcPos < srcSize) {
+                frameStart = false;
+                if (dict_registry != null) {
+                    resolveFrameDict();
+                }
+            }
+
             lastDstPos = dstPos;
             int size = decompressStream(stream, dst, dstSize, src, (int) srcSize);
 
@@ -212,6 +308,7 @@ public class ZstdInputStreamNoFinalizer extends FilterInputStream {
             // we have completed a frame
             if (size == 0) {
                 frameFinished = true;
+                frameStart = true;
                 // we need to read from the upstream only if we have not consumed
                 // fully the source buffer
                 needRead = srcPos == srcSize;
@@ -291,6 +388,12 @@ public class ZstdInputStreamNoFinalizer extends FilterInputStream {
             active_dict.releaseSharedLock();
             active_dict = null;
         }
+        if (referencedDicts != null) {
+            for (ZstdDictDecompress dict : referencedDicts) {
+                dict.releaseSharedLock();
+            }
+            referencedDicts = null;
+        }
         isClosed = true;
         bufferPool.release(srcByteBuffer);
         freeDStream(stream);
@@ -1,6 +1,7 @@
 package com.github.luben.zstd;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.FilterOutputStream;
 import java.io.IOException;
@@ -137,6 +138,16 @@ public class ZstdOutputStream extends FilterOutputStream{
         return this;
     }
 
+    /**
+     * Use a shared pool of native threads for the workers of this stream.
+     *
+     * See {@link ZstdOutputStreamNoFinalizer#setThreadPool(ZstdThreadPool)}.
+     */
+    public @NotNull ZstdOutputStream setThreadPool(@NotNull ZstdThreadPool pool) throws IOException {
+        inner.setThreadPool(pool);
+        return this;
+    }
+
     /**
      * Advanced Compression Option: Set the amount of data reloaded from the
      * previous job.
@@ -159,6 +170,37 @@ public class ZstdOutputStream extends FilterOutputStream{
         return this;
     }
 
+    /**
+     * Advanced Compression Option: Make the output rsyncable. Only applies when multi
+     * threaded compression is enabled.
+     *
+     * @see ZstdOutputStreamNoFinalizer#setRsyncable(boolean)
+     */
+    public @NotNull ZstdOutputStream setRsyncable(boolean rsyncable) throws IOException {
+        inner.setRsyncable(rsyncable);
+        return this;
+    }
+
+    /**
+     * Advanced Compression Option: Set the target size of the compressed blocks.
+     *
+     * @see ZstdOutputStreamNoFinalizer#setTargetCBlockSize(int)
+     */
+    public @NotNull ZstdOutputStream setTargetCBlockSize(int targetCBlockSize) throws IOException {
+        inner.setTargetCBlockSize(targetCBlockSize);
+        return this;
+    }
+
+    /**
+     * Flush automatically after writes
+     *
+     * @see ZstdOutputStreamNoFinalizer#setFlushPolicy(int, long)
+     */
+    public @NotNull ZstdOutputStream setFlushPolicy(int maxPendingBytes, long maxPendingMillis) {
+        inner.setFlushPolicy(maxPendingBytes, maxPendingMillis);
+        return this;
+    }
+
     /**
      * Advanced Compression Option: Set the target match length.
      *
@@ -231,6 +273,36 @@ public class ZstdOutputStream extends FilterOutputStream{
         return this;
     }
 
+    /**
+     * Advanced Compression Option: Set the expected size of the input.
+     *
+     * @see ZstdOutputStreamNoFinalizer#setSrcSizeHint(int)
+     */
+    public @NotNull ZstdOutputStream setSrcSizeHint(int srcSizeHint) throws IOException {
+        inner.setSrcSizeHint(srcSizeHint);
+        return this;
+    }
+
+    /**
+     * Promise to write exactly `srcSize` bytes in the next frame.
+     *
+     * @see ZstdOutputStreamNoFinalizer#setPledgedSrcSize(long)
+     */
+    public @NotNull ZstdOutputStream setPledgedSrcSize(long srcSize) throws IOException {
+        inner.setPledgedSrcSize(srcSize);
+        return this;
+    }
+
+    /**
+     * Probe the compressibility of the first write of each frame.
+     *
+     * @see ZstdOutputStreamNoFinalizer#setCompressibilityProbe(ZstdCompressibilityProbe)
+     */
+    public @NotNull ZstdOutputStream setCompressibilityProbe(@Nullable ZstdCompressibilityProbe probe) throws IOException {
+        inner.setCompressibilityProbe(probe);
+        return this;
+    }
+
 
     /**
      * Enable closing the frame on flush.
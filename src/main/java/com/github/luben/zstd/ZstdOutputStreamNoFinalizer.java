@@ -34,8 +34,21 @@ public class ZstdOutputStreamNoFinalizer extends FilterOutputStream {
     private boolean closeFrameOnFlush = false;
     private boolean frameClosed = true;
     private boolean frameStarted = false;
+    private @Nullable ZstdCompressibilityProbe probe = null;
+    // the level of the current frame was chosen by the probe, the configured one is restored on the next
+    private boolean probedFrame = false;
+    private int levelBeforeProbe = 0;
+    // pledged size of the next frame, -1 if unknown
+    private long pledgedSrcSize = -1;
+    private int flushAfterBytes = 0;
+    private long flushAfterNanos = 0;
+    // input written since the last flush
+    private long pendingBytes = 0;
+    private long pendingSince = 0;
     // keep the active dict from GC
     private @Nullable ZstdDictCompress active_dict;
+    // keep the thread pool from being closed while in use
+    private @Nullable ZstdThreadPool thread_pool;
 
     /* JNI methods */
     public static native long recommendedCOutSize();
@@ -120,6 +133,8 @@ public class ZstdOutputStreamNoFinalizer extends FilterOutputStream {
         if (!frameClosed) {
             throw new IllegalStateException("Change of parameter on initialized stream");
         }
+        // replaces the level the probe would restore
+        probedFrame = false;
         int size = Zstd.setCompressionLevel(stream, level);
         if (Zstd.isError(size)) {
             throw new ZstdIOException(size);
@@ -165,6 +180,37 @@ public class ZstdOutputStreamNoFinalizer extends FilterOutputStream {
         return this;
     }
 
+    /**
+     * Use a shared pool of native threads for the workers of this stream instead of
+     * creating dedicated threads. Has effect only if workers are enabled with
+     * {@link #setWorkers(int)}.
+     *
+     * The stream keeps a reference to the pool until it is closed, so the pool
+     * cannot be changed once set.
+     */
+    public synchronized @NotNull ZstdOutputStreamNoFinalizer setThreadPool(@NotNull ZstdThreadPool pool) throws IOException {
+        if (isClosed) {
+            throw new IOException("StreamClosed");
+        }
+        if (!frameClosed) {
+            throw new IllegalStateException("Change of parameter on initialized stream");
+        }
+        if (thread_pool == pool) {
+            return this;
+        }
+        if (thread_pool != null) {
+            throw new IllegalStateException("Thread pool cannot be changed once set");
+        }
+        pool.acquireSharedLock();
+        int size = Zstd.setCompressionThreadPool(stream, pool.getNativePtr());
+        if (Zstd.isError(size)) {
+            pool.releaseSharedLock();
+            throw new ZstdIOException(size);
+        }
+        thread_pool = pool;
+        return this;
+    }
+
     /**
      * Advanced Compression Option: Set the amount of data reloaded from the
      * previous job.
@@ -205,6 +251,27 @@ public class ZstdOutputStreamNoFinalizer extends FilterOutputStream {
         return this;
     }
 
+    /**
+     * Advanced Compression Option: Make the output rsyncable, so local changes of the input
+     * change only the compressed data around them. Only applies when multi threaded compression
+     * is enabled, the frame is cut on average every job size.
+     *
+     * See https://facebook.github.io/zstd/zstd_manual.html#Chapter5 for more information.
+     */
+    public synchronized @NotNull ZstdOutputStreamNoFinalizer setRsyncable(boolean rsyncable) throws IOException {
+        if (isClosed) {
+            throw new IOException("StreamClosed");
+        }
+        if (!frameClosed) {
+            throw new IllegalStateException("Change of parameter on initialized stream");
+        }
+        int size = Zstd.setCompressionRsyncable(stream, rsyncable);
+        if (Zstd.isError(size)) {
+            throw new ZstdIOException(size);
+        }
+        return this;
+    }
+
     /**
      * Advanced Compression Option: Set the target match length.
      *
@@ -340,6 +407,110 @@ public class ZstdOutputStreamNoFinalizer extends FilterOutputStream {
         return this;
     }
 
+    /**
+     * Advanced Compression Option: Set the expected size of the input, to choose the compression
+     * parameters when the exact size is unknown. The input may be of any size.
+     *
+     * See https://facebook.github.io/zstd/zstd_manual.html#Chapter5 for more information.
+     *
+     * @param srcSizeHint the expected size in bytes, 0 means unknown (default)
+     */
+    public synchronized @NotNull ZstdOutputStreamNoFinalizer setSrcSizeHint(int srcSizeHint) throws IOException {
+        if (isClosed) {
+            throw new IOException("StreamClosed");
+        }
+        if (!frameClosed) {
+            throw new IllegalStateException("Change of parameter on initialized stream");
+        }
+        int size = Zstd.setCompressionSrcSizeHint(stream, srcSizeHint);
+        if (Zstd.isError(size)) {
+            throw new ZstdIOException(size);
+        }
+        return this;
+    }
+
+    /**
+     * Promise to write exactly `srcSize` bytes in the next frame. The compression parameters are
+     * chosen for that size and it's written in the frame header, so the decompressors can
+     * allocate the exact output.
+     *
+     * The pledge applies only to the next frame: closing it, on close or on flush with
+     * {@link #setCloseFrameOnFlush(boolean)}, after writing a different number of bytes fails.
+     *
+     * @param srcSize the size of the next frame
+     */
+    public synchronized @NotNull ZstdOutputStreamNoFinalizer setPledgedSrcSize(long srcSize) throws IOException {
+        if (isClosed) {
+            throw new IOException("StreamClosed");
+        }
+        if (!frameClosed) {
+            throw new IllegalStateException("Change of parameter on initialized stream");
+        }
+        if (srcSize < 0) {
+            throw new IllegalArgumentException("srcSize must not be negative");
+        }
+        pledgedSrcSize = srcSize;
+        return this;
+    }
+
+    /**
+     * Probe the compressibility of the first write of each frame and compress the frames
+     * that are predicted to compress poorly at a lower level, see {@link ZstdCompressibilityProbe}.
+     *
+     * @param probe the probe or `null` to disable it (default)
+     */
+    public synchronized @NotNull ZstdOutputStreamNoFinalizer setCompressibilityProbe(@Nullable ZstdCompressibilityProbe probe) throws IOException {
+        if (isClosed) {
+            throw new IOException("StreamClosed");
+        }
+        if (!frameClosed) {
+            throw new IllegalStateException("Change of parameter on initialized stream");
+        }
+        this.probe = probe;
+        return this;
+    }
+
+    /**
+     * Advanced Compression Option: Set the target size of the compressed blocks, so the
+     * decompressor can decode them as soon as they are received. 0 disables it (default).
+     *
+     * See https://facebook.github.io/zstd/zstd_manual.html#Chapter5 for more information.
+     */
+    public synchronized @NotNull ZstdOutputStreamNoFinalizer setTargetCBlockSize(int targetCBlockSize) throws IOException {
+        if (isClosed) {
+            throw new IOException("StreamClosed");
+        }
+        if (!frameClosed) {
+            throw new IllegalStateException("Change of parameter on initialized stream");
+        }
+        int size = Zstd.setCompressionTargetCBlockSize(stream, targetCBlockSize);
+        if (Zstd.isError(size)) {
+            throw new ZstdIOException(size);
+        }
+        return this;
+    }
+
+    /**
+     * Flush automatically after writes, to bound the latency of the decompressor on
+     * interactive streams.
+     *
+     * The output is flushed when at least `maxPendingBytes` were written since the last
+     * flush, or when the first of them was written more than `maxPendingMillis` ago.
+     * The time is checked only on writes, so an idle stream must still be flushed
+     * explicitly.
+     *
+     * @param maxPendingBytes the max bytes written before flushing, 0 disables it (default)
+     * @param maxPendingMillis the max time of written data before flushing, 0 disables it (default)
+     */
+    public synchronized @NotNull ZstdOutputStreamNoFinalizer setFlushPolicy(int maxPendingBytes, long maxPendingMillis) {
+        if (maxPendingBytes < 0 || maxPendingMillis < 0) {
+            throw new IllegalArgumentException("The limits must not be negative");
+        }
+        this.flushAfterBytes = maxPendingBytes;
+        this.flushAfterNanos = maxPendingMillis * 1000000L;
+        return this;
+    }
+
     /**
      * Enable closing the frame on flush.
      *
@@ -406,12 +577,17 @@ public class ZstdOutputStreamNoFinalizer extends FilterOutputStream {
             throw new IOException("StreamClosed");
         }
         if (frameClosed) {
-            int size = resetCStream(this.stream);
-            if (Zstd.isError(size)) {
-                throw new ZstdIOException(size);
-            }
-            frameClosed = false;
+            startFrame();
             frameStarted = true;
+            if (probe != null) {
+                // the first write of the frame decides for the whole frame
+                ZstdCompressibilityProbe.Action action = probe.decide(src, offset, len);
+                if (action != ZstdCompressibilityProbe.Action.COMPRESS) {
+                    levelBeforeProbe = Zstd.getCompressionLevel(stream);
+                    probedFrame = true;
+                    Zstd.setCompressionLevel(stream, ZstdCompressibilityProbe.level(action));
+                }
+            }
         }
         int srcSize = offset + len;
         srcPos = offset;
@@ -424,6 +600,37 @@ public class ZstdOutputStreamNoFinalizer extends FilterOutputStream {
                 out.write(dst, 0, (int) dstPos);
             }
         }
+        if (flushAfterBytes > 0 || flushAfterNanos > 0) {
+            long now = System.nanoTime();
+            if (pendingBytes == 0) {
+                pendingSince = now;
+            }
+            pendingBytes += len;
+            if ((flushAfterBytes > 0 && pendingBytes >= flushAfterBytes)
+                    || (flushAfterNanos > 0 && now - pendingSince >= flushAfterNanos)) {
+                flush();
+            }
+        }
+    }
+
+    private void startFrame() throws IOException {
+        if (probedFrame) {
+            Zstd.setCompressionLevel(this.stream, levelBeforeProbe);
+            probedFrame = false;
+        }
+        int size = resetCStream(this.stream);
+        if (Zstd.isError(size)) {
+            throw new ZstdIOException(size);
+        }
+        if (pledgedSrcSize >= 0) {
+            // the reset forgets the pledged size, it's set for the new frame
+            size = Zstd.setCompressionPledgedSrcSize(this.stream, pledgedSrcSize);
+            pledgedSrcSize = -1;
+            if (Zstd.isError(size)) {
+                throw new ZstdIOException(size);
+            }
+        }
+        frameClosed = false;
     }
 
     public void write(int i) throws IOException {
@@ -464,6 +671,7 @@ public class ZstdOutputStreamNoFinalizer extends FilterOutputStream {
             }
             out.flush();
         }
+        pendingBytes = 0;
     }
 
 
@@ -486,11 +694,7 @@ public class ZstdOutputStreamNoFinalizer extends FilterOutputStream {
             // should still produce valid zstd frame. So reset the
             // stream to start a frame if no frame was ever started.
             if (!frameStarted) {
-                size = resetCStream(this.stream);
-                if (Zstd.isError(size)) {
-                    throw new ZstdIOException(size);
-                }
-                frameClosed = false;
+                startFrame();
             }
             // compress the remaining input and close the frame
             if (!frameClosed) {
@@ -514,6 +718,11 @@ public class ZstdOutputStreamNoFinalizer extends FilterOutputStream {
             isClosed = true;
             bufferPool.release(dstByteBuffer);
             freeCStream(stream);
+            // the pool can be released only after the native stream is freed
+            if (thread_pool != null) {
+                thread_pool.releaseSharedLock();
+                thread_pool = null;
+            }
         }
     }
 }
@@ -0,0 +1,206 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary diff of large files, the equivalent of `zstd --patch-from`.
+ *
+ * The patch is a regular zstd frame of the new content compressed with the old content
+ * as prefix, so it contains only what changed. The window covers both the old and the
+ * new content and long distance matching is enabled when needed, see
+ * {@link ZstdCompressCtx#refPatchFrom(ByteBuffer, long)}. Applying the patch requires the
+ * same old content and a window log limit large enough for it, i.e. more memory than the
+ * default limit when the files are larger than 128MB.
+ *
+ * The file based methods map the files in memory, so they are limited to files up to 2GB.
+ */
+public class ZstdPatch {
+
+    // ZSTD_BLOCKSIZE_MAX
+    private static final int BLOCK_SIZE = 1 << 17;
+
+    private ZstdPatch() {}
+
+    /**
+     * Create a patch from the `reference` file to the `target` file
+     *
+     * @param reference the old file
+     * @param target the new file
+     * @param patch the patch file to write, overwritten if it exists
+     * @param level the compression level
+     */
+    public static void create(@NotNull Path reference, @NotNull Path target, @NotNull Path patch, int level) throws IOException {
+        try (FileChannel referenceChannel = FileChannel.open(reference, StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.READ);
+             FileChannel patchChannel = FileChannel.open(patch, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             ZstdCompressCtx ctx = new ZstdCompressCtx()) {
+            ctx.setLevel(level);
+            ctx.setChecksum(true);
+            create(ctx, map(referenceChannel), map(targetChannel), patchChannel);
+        }
+    }
+
+    /**
+     * Apply the patch created from `reference` with {@link #create(Path, Path, Path, int)}
+     *
+     * @param reference the old file
+     * @param patch the patch
+     * @param target the new file to write, overwritten if it exists
+     */
+    public static void apply(@NotNull Path reference, @NotNull Path patch, @NotNull Path target) throws IOException {
+        try (FileChannel referenceChannel = FileChannel.open(reference, StandardOpenOption.READ);
+             FileChannel patchChannel = FileChannel.open(patch, StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             ZstdDecompressCtx ctx = new ZstdDecompressCtx()) {
+            apply(ctx, map(referenceChannel), map(patchChannel), targetChannel);
+        }
+    }
+
+    /**
+     * Create a patch from `reference` to the content of `src` between its position and limit,
+     * streaming it to `out`. The position of `src` is advanced to its limit.
+     *
+     * The new content is fed in blocks, see {@link #create(ZstdCompressCtx, ByteBuffer, ByteBuffer, ByteBuffer)}.
+     *
+     * @param ctx the context with the compression parameters, e.g. the level
+     * @param reference direct buffer with the old content between its position and limit
+     * @param src the new content
+     * @param out where to write the patch
+     */
+    public static void create(@NotNull ZstdCompressCtx ctx, @NotNull ByteBuffer reference, @NotNull ByteBuffer src,
+                              @NotNull WritableByteChannel out) throws IOException {
+        ctx.refPatchFrom(reference, src.remaining());
+        ctx.setPledgedSrcSize(src.remaining());
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) ZstdOutputStreamNoFinalizer.recommendedCOutSize());
+        int limit = src.limit();
+        try {
+            boolean done;
+            do {
+                int end = (int) Math.min(limit, (long) src.position() + BLOCK_SIZE);
+                src.limit(end);
+                boolean last = end == limit;
+                buffer.clear();
+                done = ctx.compressByteBufferStream(buffer, src, last ? EndDirective.END : EndDirective.CONTINUE) && last;
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            } while (!done);
+        } finally {
+            src.limit(limit);
+        }
+    }
+
+    /**
+     * Create a patch from `reference` to the content of `src` into `dst`, like
+     * {@link ZstdCompressCtx#compress(ByteBuffer, ByteBuffer)}
+     *
+     * The new content is fed in blocks to the streaming API, like `zstd --patch-from` does,
+     * as the one-shot compression of the whole content finds fewer of the long matches.
+     * If `dst` is too small, the frame is left unfinished and the context must be reset
+     * before compressing other streams with it.
+     *
+     * @param ctx the context with the compression parameters, e.g. the level
+     * @param reference direct buffer with the old content between its position and limit
+     * @param src the new content between its position and limit
+     * @param dst buffer for the patch
+     * @return the size of the patch
+     */
+    public static int create(@NotNull ZstdCompressCtx ctx, @NotNull ByteBuffer reference, @NotNull ByteBuffer src,
+                             @NotNull ByteBuffer dst) {
+        ctx.refPatchFrom(reference, src.remaining());
+        ctx.setPledgedSrcSize(src.remaining());
+        int start = dst.position();
+        int limit = src.limit();
+        try {
+            while (true) {
+                int end = (int) Math.min(limit, (long) src.position() + BLOCK_SIZE);
+                src.limit(end);
+                boolean last = end == limit;
+                boolean done = ctx.compressByteBufferStream(dst, src, last ? EndDirective.END : EndDirective.CONTINUE);
+                if (last && done) {
+                    return dst.position() - start;
+                }
+                if (!dst.hasRemaining()) {
+                    throw new ZstdException(Zstd.errDstSizeTooSmall(), "Destination buffer too small");
+                }
+            }
+        } finally {
+            src.limit(limit);
+        }
+    }
+
+    /**
+     * Apply the patch between the position and limit of `patch`, streaming the new content
+     * to `out`. The position of `patch` is advanced to the end of the patch.
+     *
+     * @param ctx the context
+     * @param reference direct buffer with the old content between its position and limit
+     * @param patch direct buffer with the patch
+     * @param out where to write the new content
+     */
+    public static void apply(@NotNull ZstdDecompressCtx ctx, @NotNull ByteBuffer reference, @NotNull ByteBuffer patch,
+                             @NotNull WritableByteChannel out) throws IOException {
+        long contentSize = Zstd.getFrameContentSize(patch);
+        ctx.setLongMax(contentSize > 0
+            ? windowLog(reference.remaining(), contentSize)
+            : Zstd.windowLogMax());
+        ctx.refPrefix(reference);
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) ZstdInputStreamNoFinalizer.recommendedDOutSize());
+        boolean done;
+        do {
+            buffer.clear();
+            done = ctx.decompressDirectByteBufferStream(buffer, patch);
+            buffer.flip();
+            if (!done && !patch.hasRemaining() && !buffer.hasRemaining()) {
+                throw new ZstdException(Zstd.errSrcSizeWrong(), "Truncated patch");
+            }
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } while (!done);
+    }
+
+    /**
+     * Apply the patch between the position and limit of `patch` into `dst`, like
+     * {@link ZstdDecompressCtx#decompress(ByteBuffer, ByteBuffer)}
+     *
+     * @param ctx the context
+     * @param reference direct buffer with the old content between its position and limit
+     * @param patch direct buffer with the patch
+     * @param dst direct buffer for the new content
+     * @return the size of the new content
+     */
+    public static int apply(@NotNull ZstdDecompressCtx ctx, @NotNull ByteBuffer reference, @NotNull ByteBuffer patch,
+                            @NotNull ByteBuffer dst) {
+        ctx.setLongMax(windowLog(reference.remaining(), dst.remaining()));
+        ctx.refPrefix(reference);
+        return ctx.decompress(dst, patch);
+    }
+
+    /**
+     * The window log of a patch from `referenceSize` bytes to `size` bytes
+     */
+    static int windowLog(long referenceSize, long size) {
+        int windowLog = 64 - Long.numberOfLeadingZeros(Math.max(referenceSize, size));
+        return Math.max(Zstd.windowLogMin(), Math.min(Zstd.windowLogMax(), windowLog));
+    }
+
+    @NotNull
+    private static ByteBuffer map(@NotNull FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Files larger than 2GB are not supported");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+}
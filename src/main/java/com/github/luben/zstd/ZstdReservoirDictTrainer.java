@@ -0,0 +1,230 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Dictionary trainer for unbounded streams of samples, e.g. live traffic.
+ *
+ * Unlike {@link ZstdDictTrainer}, which keeps only the first samples that fit in its
+ * buffer, it keeps a reservoir sample of all samples seen so far within a memory
+ * budget, so every sample has the same chance to be used for training.
+ * Samples can be added concurrently with training, so the dictionary can be retrained
+ * periodically from the same trainer.
+ */
+public class ZstdReservoirDictTrainer {
+
+    private final int maxSamplesSize;
+    private final int dictSize;
+    private final int level;
+    @NotNull
+    private final Random random = new Random();
+
+    // the kept samples, the one with the lowest priority first
+    @NotNull
+    private final PriorityQueue<Sample> samples = new PriorityQueue<>();
+    private long samplesSize = 0;
+    private long samplesSeen = 0;
+    // the highest priority of the evicted samples, the samples with lower ones can't be kept
+    private double threshold = -1;
+
+    private static final class Sample implements Comparable<Sample> {
+        final byte @NotNull [] data;
+        final long index;
+        final double priority;
+
+        Sample(byte @NotNull [] data, long index, double priority) {
+            this.data = data;
+            this.index = index;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(@NotNull Sample other) {
+            return Double.compare(priority, other.priority);
+        }
+    }
+
+    /**
+     * @param maxSamplesSize the memory budget for the kept samples
+     * @param dictSize the max size of the trained dictionaries
+     */
+    public ZstdReservoirDictTrainer(int maxSamplesSize, int dictSize) {
+        this(maxSamplesSize, dictSize, Zstd.defaultCompressionLevel());
+    }
+
+    /**
+     * @param maxSamplesSize the memory budget for the kept samples
+     * @param dictSize the max size of the trained dictionaries
+     * @param level the compression level the dictionaries will be used with
+     */
+    public ZstdReservoirDictTrainer(int maxSamplesSize, int dictSize, int level) {
+        if (maxSamplesSize <= 0) {
+            throw new IllegalArgumentException("maxSamplesSize must be positive");
+        }
+        if (dictSize <= 0) {
+            throw new IllegalArgumentException("dictSize must be positive");
+        }
+        this.maxSamplesSize = maxSamplesSize;
+        this.dictSize = dictSize;
+        this.level = level;
+    }
+
+    /**
+     * Offer a sample to the trainer. The sample is copied if it is kept.
+     *
+     * Each sample gets a random priority, and the trainer keeps the samples with the
+     * highest priorities that fit in the memory budget: until the budget is reached all
+     * samples are kept, after that a sample is kept if its priority is higher than those
+     * of all evicted samples, evicting the kept samples with the lowest priorities while
+     * the budget is exceeded. The chance of a sample to be kept doesn't depend on its
+     * position in the stream, nor on the number of samples kept at the moment, so the
+     * budget freed by the eviction of a large sample is filled again by the next ones.
+     *
+     * @param sample the sample
+     * @return true if the sample was kept, its index is the number of samples seen
+     *         before it, see {@link #getSampleIndexes()}
+     */
+    public synchronized boolean addSample(byte @NotNull [] sample) {
+        long index = samplesSeen++;
+        if (sample.length > maxSamplesSize) {
+            return false;
+        }
+        double priority = random.nextDouble();
+        if (priority <= threshold) {
+            return false;
+        }
+        Sample kept = new Sample(Arrays.copyOf(sample, sample.length), index, priority);
+        samples.add(kept);
+        samplesSize += sample.length;
+        while (samplesSize > maxSamplesSize) {
+            Sample evicted = samples.poll();
+            samplesSize -= evicted.data.length;
+            threshold = Math.max(threshold, evicted.priority);
+            if (evicted == kept) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of samples offered to the trainer
+     */
+    public synchronized long getSamplesSeen() {
+        return samplesSeen;
+    }
+
+    /**
+     * @return the number of samples kept
+     */
+    public synchronized int getSamplesKept() {
+        return samples.size();
+    }
+
+    /**
+     * @return the total size of the samples kept
+     */
+    public synchronized long getSamplesSize() {
+        return samplesSize;
+    }
+
+    /**
+     * Get the indexes of the kept samples in the stream of samples, i.e. the first
+     * offered sample has index 0
+     *
+     * @return the sorted indexes of the kept samples
+     */
+    public synchronized long @NotNull [] getSampleIndexes() {
+        long[] result = new long[samples.size()];
+        int i = 0;
+        for (Sample sample : samples) {
+            result[i++] = sample.index;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Drop all kept samples and start sampling anew
+     */
+    public synchronized void clear() {
+        samples.clear();
+        samplesSize = 0;
+        samplesSeen = 0;
+        threshold = -1;
+    }
+
+    public @NotNull ByteBuffer trainSamplesDirect() throws ZstdException {
+        return trainSamplesDirect(false);
+    }
+
+    /**
+     * Train a dictionary from the samples kept so far. Samples can be added
+     * concurrently, they are not used by the ongoing training.
+     *
+     * @param legacy use the legacy training algorithm; otherwise cover
+     */
+    public @NotNull ByteBuffer trainSamplesDirect(boolean legacy) throws ZstdException {
+        return train(legacy, null);
+    }
+
+    /**
+     * Train a dictionary from the samples kept so far with the COVER or fastCover algorithm.
+     * Samples can be added concurrently, they are not used by the ongoing training.
+     *
+     * @param params the training parameters, updated with the selected ones when optimizing
+     */
+    public @NotNull ByteBuffer trainSamplesDirect(@NotNull ZstdDictTrainParams params) throws ZstdException {
+        return train(false, params);
+    }
+
+    public byte @NotNull [] trainSamples() throws ZstdException {
+        return trainSamples(false);
+    }
+
+    public byte @NotNull [] trainSamples(boolean legacy) throws ZstdException {
+        return toArray(trainSamplesDirect(legacy));
+    }
+
+    public byte @NotNull [] trainSamples(@NotNull ZstdDictTrainParams params) throws ZstdException {
+        return toArray(trainSamplesDirect(params));
+    }
+
+    @NotNull
+    private ByteBuffer train(boolean legacy, @Nullable ZstdDictTrainParams params) {
+        ByteBuffer trainingSamples;
+        int[] sampleSizes;
+        // copy the samples, so the lock is not held during the training
+        synchronized (this) {
+            trainingSamples = ByteBuffer.allocateDirect((int) samplesSize);
+            sampleSizes = new int[samples.size()];
+            int i = 0;
+            for (Sample sample : samples) {
+                trainingSamples.put(sample.data);
+                sampleSizes[i++] = sample.data.length;
+            }
+        }
+        ByteBuffer dictBuffer = ByteBuffer.allocateDirect(dictSize);
+        long l = params != null
+            ? Zstd.trainFromBufferDirect(trainingSamples, sampleSizes, dictBuffer, params)
+            : Zstd.trainFromBufferDirect(trainingSamples, sampleSizes, dictBuffer, legacy, level);
+        if (Zstd.isError(l)) {
+            dictBuffer.limit(0);
+            throw new ZstdException(l);
+        }
+        dictBuffer.limit(Long.valueOf(l).intValue());
+        return dictBuffer;
+    }
+
+    private static byte @NotNull [] toArray(@NotNull ByteBuffer byteBuffer) {
+        byte[] bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.luben.zstd;
+
+import com.github.luben.zstd.util.Native;
+
+/**
+ * A pool of native worker threads that can be shared by multiple compression
+ * contexts and streams using multithreaded compression (see
+ * {@link ZstdCompressCtx#setWorkers(int)}).
+ *
+ * Without a shared pool each context with workers creates its own threads, so N
+ * concurrent contexts with W workers each use N*W threads. Contexts referencing one
+ * pool share its threads instead, and queue their jobs when all of them are busy.
+ *
+ * The pool doesn't bound the number of workers: when a context starts a compression
+ * with a number of workers different from that of its previous compression, zstd
+ * resizes the pool to it, growing or shrinking the number of threads used by all the
+ * contexts referencing the pool. Contexts with different numbers of workers resize
+ * each other's pool, so they should all use the same number of workers, that of the pool.
+ *
+ * The pool can be closed only after all contexts and streams referencing it
+ * are closed.
+ */
+public class ZstdThreadPool extends AutoCloseBase {
+
+    static {
+        Native.load();
+    }
+
+    private long nativePtr = 0;
+
+    private final int numThreads;
+
+    private static native long init(int numThreads);
+
+    private static native void free(long ptr);
+
+    /**
+     * Create a new pool of native worker threads
+     *
+     * @param numThreads number of threads in the pool. Contexts referencing the pool
+     *                   should use this number of workers, as zstd resizes the pool
+     *                   when they change their number of workers.
+     */
+    public ZstdThreadPool(int numThreads) {
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("numThreads must be positive");
+        }
+        this.numThreads = numThreads;
+        nativePtr = init(numThreads);
+        if (0 == nativePtr) {
+            throw new IllegalStateException("ZSTD_createThreadPool failed");
+        }
+        storeFence();
+    }
+
+    /**
+     * The number of threads the pool was created with
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    long getNativePtr() {
+        return nativePtr;
+    }
+
+    @Override
+    void doClose() {
+        if (nativePtr != 0) {
+            free(nativePtr);
+            nativePtr = 0;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Base class of {@link ZstdCompressCtx} adding methods working on MemorySegments.
+ */
+abstract class BaseZstdCompressCtx extends AutoCloseBase {
+
+    abstract void ensureOpen();
+
+    abstract long getNativePtr();
+
+    /**
+     * Whether the native calls may run in a critical region, false if they call back into Java
+     */
+    abstract boolean allowsCriticalCall();
+
+    /**
+     * Compresses the 'src' segment into the 'dst' segment reusing this ZstdCompressCtx.
+     *
+     * Both segments may be native or heap segments of any size, large heap segments are
+     * copied to native memory so the call doesn't hold off the safepoints. The arenas of the
+     * segments are kept alive for the duration of the call. If the FFM backend is
+     * disabled, the segments that are not confined to the current thread are copied.
+     *
+     * Destination segment should be sized to handle worst cases situations (input
+     * data not compressible). Worst case size evaluation is provided by function
+     * ZSTD_compressBound().
+     *
+     * @param dst the destination segment
+     * @param src the source segment
+     * @return the number of bytes written into 'dst'
+     */
+    public long compress(@NotNull MemorySegment dst, @NotNull MemorySegment src) {
+        if (dst.isReadOnly()) {
+            throw new IllegalArgumentException("dst must be writable");
+        }
+        if (!ZstdForeignDowncalls.AVAILABLE) {
+            return compressNative(dst, src);
+        }
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long size;
+            boolean critical = allowsCriticalCall() && src.byteSize() <= ZstdForeignDowncalls.CRITICAL_SIZE;
+            if (critical || (dst.isNative() && src.isNative())) {
+                size = ZstdForeignDowncalls.compress(getNativePtr(), dst, src, critical);
+            } else {
+                size = compressStaged(dst, src);
+            }
+            if (Zstd.isError(size)) {
+                throw new ZstdException(size);
+            }
+            return size;
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    /**
+     * Compresses through the regular downcall, copying heap segments to native memory
+     */
+    private long compressStaged(@NotNull MemorySegment dst, @NotNull MemorySegment src) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment nativeDst = dst.isNative() ? dst : arena.allocate(Math.min(dst.byteSize(), Zstd.compressBound(src.byteSize())));
+            MemorySegment nativeSrc = src.isNative() ? src : arena.allocate(src.byteSize()).copyFrom(src);
+            long size = ZstdForeignDowncalls.compress(getNativePtr(), nativeDst, nativeSrc, false);
+            if (nativeDst != dst && !Zstd.isError(size)) {
+                MemorySegment.copy(nativeDst, 0, dst, 0, size);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Compresses through JNI when the FFM backend is not available. Unlike the downcalls, JNI
+     * doesn't keep the arenas alive, so only the native segments confined to this thread are
+     * passed in place, the others are copied to native memory.
+     */
+    long compressNative(@NotNull MemorySegment dst, @NotNull MemorySegment src) {
+        ZstdForeignDowncalls.checkAccess(dst);
+        ZstdForeignDowncalls.checkAccess(src);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment nativeDst = ZstdForeignDowncalls.isConfined(dst) ? dst : arena.allocate(Math.min(dst.byteSize(), Zstd.compressBound(src.byteSize())));
+            MemorySegment nativeSrc = ZstdForeignDowncalls.isConfined(src) ? src : arena.allocate(src.byteSize()).copyFrom(src);
+            long size = ((ZstdCompressCtx) this).compressUnsafe(nativeDst.address(), nativeDst.byteSize(),
+                    nativeSrc.address(), nativeSrc.byteSize());
+            if (nativeDst != dst) {
+                MemorySegment.copy(nativeDst, 0, dst, 0, size);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Compresses the 'src' segment into a new segment allocated from 'arena'.
+     *
+     * @param src the source segment
+     * @param arena the arena used to allocate the destination segment
+     * @return the segment containing the compressed data, sized to fit them
+     */
+    @NotNull
+    public MemorySegment compress(@NotNull MemorySegment src, @NotNull Arena arena) {
+        MemorySegment dst = arena.allocate(Zstd.compressBound(src.byteSize()));
+        long size = compress(dst, src);
+        return dst.asSlice(0, size);
+    }
+}
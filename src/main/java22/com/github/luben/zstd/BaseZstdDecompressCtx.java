@@ -0,0 +1,112 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Base class of {@link ZstdDecompressCtx} adding methods working on MemorySegments.
+ */
+abstract class BaseZstdDecompressCtx extends AutoCloseBase {
+
+    abstract void ensureOpen();
+
+    abstract long getNativePtr();
+
+    /**
+     * Whether the native calls may run in a critical region, false if they call back into Java
+     */
+    abstract boolean allowsCriticalCall();
+
+    /**
+     * Decompresses the 'src' segment into the 'dst' segment using this ZstdDecompressCtx.
+     *
+     * Both segments may be native or heap segments of any size, large heap segments are
+     * copied to native memory so the call doesn't hold off the safepoints. The arenas of the
+     * segments are kept alive for the duration of the call. If the FFM backend is
+     * disabled, the segments that are not confined to the current thread are copied.
+     *
+     * @param dst the destination segment, should be larger or equal to the original size
+     * @param src the source segment
+     * @return the number of bytes decompressed into 'dst'
+     */
+    public long decompress(@NotNull MemorySegment dst, @NotNull MemorySegment src) {
+        if (dst.isReadOnly()) {
+            throw new IllegalArgumentException("dst must be writable");
+        }
+        if (!ZstdForeignDowncalls.AVAILABLE) {
+            return decompressNative(dst, src);
+        }
+        ensureOpen();
+        acquireSharedLock();
+        try {
+            long size;
+            boolean critical = allowsCriticalCall() && dst.byteSize() <= ZstdForeignDowncalls.CRITICAL_SIZE;
+            if (critical || (dst.isNative() && src.isNative())) {
+                size = ZstdForeignDowncalls.decompress(getNativePtr(), dst, src, critical);
+            } else {
+                size = decompressStaged(dst, src);
+            }
+            if (Zstd.isError(size)) {
+                throw new ZstdException(size);
+            }
+            return size;
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    /**
+     * Decompresses through the regular downcall, copying heap segments to native memory
+     */
+    private long decompressStaged(@NotNull MemorySegment dst, @NotNull MemorySegment src) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment nativeDst = dst.isNative() ? dst : arena.allocate(dst.byteSize());
+            MemorySegment nativeSrc = src.isNative() ? src : arena.allocate(src.byteSize()).copyFrom(src);
+            long size = ZstdForeignDowncalls.decompress(getNativePtr(), nativeDst, nativeSrc, false);
+            if (nativeDst != dst && !Zstd.isError(size)) {
+                MemorySegment.copy(nativeDst, 0, dst, 0, size);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Decompresses through JNI when the FFM backend is not available. Unlike the downcalls, JNI
+     * doesn't keep the arenas alive, so only the native segments confined to this thread are
+     * passed in place, the others are copied to native memory.
+     */
+    long decompressNative(@NotNull MemorySegment dst, @NotNull MemorySegment src) {
+        ZstdForeignDowncalls.checkAccess(dst);
+        ZstdForeignDowncalls.checkAccess(src);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment nativeDst = ZstdForeignDowncalls.isConfined(dst) ? dst : arena.allocate(dst.byteSize());
+            MemorySegment nativeSrc = ZstdForeignDowncalls.isConfined(src) ? src : arena.allocate(src.byteSize()).copyFrom(src);
+            long size = ((ZstdDecompressCtx) this).decompressUnsafe(nativeDst.address(), nativeDst.byteSize(),
+                    nativeSrc.address(), nativeSrc.byteSize());
+            if (nativeDst != dst) {
+                MemorySegment.copy(nativeDst, 0, dst, 0, size);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Decompresses the 'src' segment into a new segment allocated from 'arena'.
+     *
+     * @param src the source segment
+     * @param originalSize the maximum size of the uncompressed data
+     * @param arena the arena used to allocate the destination segment
+     * @return the segment containing the decompressed data, sized to fit them
+     */
+    @NotNull
+    public MemorySegment decompress(@NotNull MemorySegment src, long originalSize, @NotNull Arena arena) {
+        if (originalSize < 0) {
+            throw new ZstdException(Zstd.errGeneric(), "Original size should not be negative");
+        }
+        MemorySegment dst = arena.allocate(originalSize);
+        long size = decompress(dst, src);
+        return dst.asSlice(0, size);
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.luben.zstd;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+
+import static com.github.luben.zstd.ZstdForeignDowncalls.CRITICAL_SIZE;
+import static com.github.luben.zstd.ZstdForeignDowncalls.compress;
+import static com.github.luben.zstd.ZstdForeignDowncalls.decompress;
+import static com.github.luben.zstd.ZstdForeignDowncalls.segment;
+
+/**
+ * The implementation of {@link ZstdForeign} in the Java 22 layer, calling the FFM downcalls.
+ */
+final class ZstdForeignBackend extends ZstdForeign {
+
+    private ZstdForeignBackend() {
+    }
+
+    /**
+     * Called by {@link ZstdForeign} to create {@link ZstdForeign#INSTANCE}
+     *
+     * @return the backend or null if the downcalls are not available
+     */
+    @Nullable
+    static ZstdForeign create() {
+        return ZstdForeignDowncalls.AVAILABLE ? new ZstdForeignBackend() : null;
+    }
+
+    @Override
+    long compressByteArray(long ctx, byte[] dst, int dstOffset, int dstSize, byte[] src, int srcOffset, int srcSize) {
+        return compress(ctx, MemorySegment.ofArray(dst).asSlice(dstOffset, dstSize),
+                MemorySegment.ofArray(src).asSlice(srcOffset, srcSize), true);
+    }
+
+    @Override
+    long compressDirectByteBuffer(long ctx, ByteBuffer dst, int dstOffset, int dstSize, ByteBuffer src, int srcOffset, int srcSize) {
+        return compress(ctx, segment(dst, dstOffset, dstSize), segment(src, srcOffset, srcSize), srcSize <= CRITICAL_SIZE);
+    }
+
+    @Override
+    long decompressByteArray(long ctx, byte[] dst, int dstOffset, int dstSize, byte[] src, int srcOffset, int srcSize) {
+        return decompress(ctx, MemorySegment.ofArray(dst).asSlice(dstOffset, dstSize),
+                MemorySegment.ofArray(src).asSlice(srcOffset, srcSize), true);
+    }
+
+    @Override
+    long decompressDirectByteBuffer(long ctx, ByteBuffer dst, int dstOffset, int dstSize, ByteBuffer src, int srcOffset, int srcSize) {
+        return decompress(ctx, segment(dst, dstOffset, dstSize), segment(src, srcOffset, srcSize), dstSize <= CRITICAL_SIZE);
+    }
+}
@@ -0,0 +1,185 @@
+package com.github.luben.zstd;
+
+import com.github.luben.zstd.util.Native;
+
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * The FFM downcalls into the bundled libzstd, used by {@link ZstdForeignBackend} and
+ * the MemorySegment methods of the contexts.
+ *
+ * ZSTD_compress2 and ZSTD_decompressDCtx are linked twice. The critical downcalls
+ * don't pay for the thread state transitions and get direct access to heap arrays,
+ * but similar to GetPrimitiveArrayCritical they hold off the safepoints for the
+ * duration of the call. They are used only for byte arrays, that the contexts pass
+ * here only below their max critical size, and for native memory below
+ * {@link #CRITICAL_SIZE}. Larger native memory goes through the regular downcalls.
+ * Only the session resets are always critical.
+ *
+ * The addresses of the functions are provided by the JNI library, so the libzstd
+ * symbols don't have to be exported. The backend is not used on 32-bit platforms,
+ * if native access is denied, or if the ZstdForeign system property is set to
+ * "false". In these cases all calls go through JNI.
+ */
+final class ZstdForeignDowncalls {
+
+    private static final String foreignOverride = "ZstdForeign";
+
+    private static final int ZSTD_reset_session_only = 1;
+
+    /**
+     * Native memory is processed with a critical downcall below this size: the
+     * input for compression and the output for decompression
+     */
+    static final long CRITICAL_SIZE = 16 * 1024;
+
+    static final boolean AVAILABLE;
+
+    // a thread that never runs, so it doesn't own any arena
+    private static final Thread NO_OWNER = new Thread(() -> { });
+
+    private static final MethodHandle cctxReset;
+    private static final MethodHandle compress2;
+    private static final MethodHandle compress2Critical;
+    private static final MethodHandle dctxReset;
+    private static final MethodHandle decompressDCtx;
+    private static final MethodHandle decompressDCtxCritical;
+
+    static {
+        Native.load();
+        MethodHandle cctxResetHandle = null;
+        MethodHandle compress2Handle = null;
+        MethodHandle compress2CriticalHandle = null;
+        MethodHandle dctxResetHandle = null;
+        MethodHandle decompressDCtxHandle = null;
+        MethodHandle decompressDCtxCriticalHandle = null;
+        boolean available = false;
+        // size_t is mapped to long, so only 64-bit platforms are supported
+        if (!"false".equals(System.getProperty(foreignOverride)) && ADDRESS.byteSize() == 8) {
+            try {
+                long[] addresses = new long[4];
+                functionAddresses0(addresses);
+                Linker linker = Linker.nativeLinker();
+                Linker.Option critical = Linker.Option.critical(true);
+                FunctionDescriptor reset = FunctionDescriptor.of(JAVA_LONG, ADDRESS, JAVA_INT);
+                FunctionDescriptor process = FunctionDescriptor.of(JAVA_LONG, ADDRESS, ADDRESS, JAVA_LONG, ADDRESS, JAVA_LONG);
+                cctxResetHandle = linker.downcallHandle(function(addresses[0]), reset, critical);
+                compress2Handle = linker.downcallHandle(function(addresses[1]), process);
+                compress2CriticalHandle = linker.downcallHandle(function(addresses[1]), process, critical);
+                dctxResetHandle = linker.downcallHandle(function(addresses[2]), reset, critical);
+                decompressDCtxHandle = linker.downcallHandle(function(addresses[3]), process);
+                decompressDCtxCriticalHandle = linker.downcallHandle(function(addresses[3]), process, critical);
+                available = true;
+            } catch (Throwable e) {
+                // the library is older than the classes or native access is denied - fall back to JNI
+            }
+        }
+        cctxReset = cctxResetHandle;
+        compress2 = compress2Handle;
+        compress2Critical = compress2CriticalHandle;
+        dctxReset = dctxResetHandle;
+        decompressDCtx = decompressDCtxHandle;
+        decompressDCtxCritical = decompressDCtxCriticalHandle;
+        AVAILABLE = available;
+    }
+
+    private ZstdForeignDowncalls() {
+    }
+
+    private static MemorySegment function(long address) {
+        if (address == 0) {
+            throw new IllegalStateException("Function not found");
+        }
+        return MemorySegment.ofAddress(address);
+    }
+
+    /**
+     * Compresses 'src' into 'dst' with the parameters of the ZSTD_CCtx at address 'ctx'
+     *
+     * @param critical use the critical downcall, required for heap segments
+     * @return the compressed size or an error code
+     */
+    static long compress(long ctx, MemorySegment dst, MemorySegment src, boolean critical) {
+        MemorySegment cctx = MemorySegment.ofAddress(ctx);
+        try {
+            long result = (long) cctxReset.invokeExact(cctx, ZSTD_reset_session_only);
+            if (Zstd.isError(result)) {
+                return result;
+            }
+            return critical
+                    ? (long) compress2Critical.invokeExact(cctx, dst, dst.byteSize(), src, src.byteSize())
+                    : (long) compress2.invokeExact(cctx, dst, dst.byteSize(), src, src.byteSize());
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Decompresses 'src' into 'dst' with the parameters of the ZSTD_DCtx at address 'ctx'
+     *
+     * @param critical use the critical downcall, required for heap segments
+     * @return the decompressed size or an error code
+     */
+    static long decompress(long ctx, MemorySegment dst, MemorySegment src, boolean critical) {
+        MemorySegment dctx = MemorySegment.ofAddress(ctx);
+        try {
+            long result = (long) dctxReset.invokeExact(dctx, ZSTD_reset_session_only);
+            if (Zstd.isError(result)) {
+                return result;
+            }
+            return critical
+                    ? (long) decompressDCtxCritical.invokeExact(dctx, dst, dst.byteSize(), src, src.byteSize())
+                    : (long) decompressDCtx.invokeExact(dctx, dst, dst.byteSize(), src, src.byteSize());
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Checks that the segment can be accessed from the current thread, for the calls that
+     * pass its address through JNI and thus bypass the checks of the downcalls
+     */
+    static void checkAccess(MemorySegment segment) {
+        if (!segment.scope().isAlive()) {
+            throw new IllegalStateException("Already closed");
+        }
+        if (!segment.isAccessibleBy(Thread.currentThread())) {
+            throw new WrongThreadException("Attempted access outside owning thread");
+        }
+    }
+
+    /**
+     * Whether the segment is native memory that only the current thread can access, so
+     * its arena can't be closed during a call, provided that {@link #checkAccess} passed
+     */
+    static boolean isConfined(MemorySegment segment) {
+        return segment.isNative() && !segment.isAccessibleBy(NO_OWNER);
+    }
+
+    /**
+     * The offsets are relative to the start of the buffer, not its position
+     */
+    static MemorySegment segment(ByteBuffer buffer, int offset, int size) {
+        return MemorySegment.ofBuffer(buffer.duplicate().position(0)).asSlice(offset, size);
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException(e);
+    }
+
+    private static native void functionAddresses0(long[] addresses);
+}
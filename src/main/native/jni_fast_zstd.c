@@ -1,6 +1,8 @@
 #ifndef ZSTD_STATIC_LINKING_ONLY
 #define ZSTD_STATIC_LINKING_ONLY
 #endif
+// ZSTD_generateSequences is deprecated, but there is no replacement yet
+#define ZSTD_DISABLE_DEPRECATE_WARNINGS
 #include <jni.h>
 #include <zstd.h>
 #include <zstd_errors.h>
@@ -52,6 +54,43 @@ JNIEXPORT void JNICALL Java_com_github_luben_zstd_ZstdDictCompress_initDirect
     (*env)->SetLongField(env, obj, compress_dict, (jlong)(intptr_t) cdict);
 }
 
+/*
+ * Class:     com_github_luben_zstd_ZstdDictCompress
+ * Method:    initAdvanced
+ * Signature: (Ljava/nio/ByteBuffer;IIIIIIIIIIIZ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdDictCompress_initAdvanced
+  (JNIEnv *env, jobject obj, jobject dict, jint dict_offset, jint dict_size, jint byReference,
+   jint level, jint window_log, jint hash_log, jint chain_log, jint search_log,
+   jint min_match, jint target_length, jint strategy, jboolean dedicated_dict_search)
+{
+    jclass clazz = (*env)->GetObjectClass(env, obj);
+    compress_dict = (*env)->GetFieldID(env, clazz, "nativePtr", "J");
+    void *dict_buff = (*env)->GetDirectBufferAddress(env, dict);
+    if (NULL == dict_buff) return -ZSTD_error_dictionary_wrong;
+    ZSTD_CCtx_params* params = ZSTD_createCCtxParams();
+    if (NULL == params) return -ZSTD_error_memory_allocation;
+    size_t result = ZSTD_CCtxParams_init(params, level);
+    if (!ZSTD_isError(result)) result = ZSTD_CCtxParams_setParameter(params, ZSTD_c_windowLog, window_log);
+    if (!ZSTD_isError(result)) result = ZSTD_CCtxParams_setParameter(params, ZSTD_c_hashLog, hash_log);
+    if (!ZSTD_isError(result)) result = ZSTD_CCtxParams_setParameter(params, ZSTD_c_chainLog, chain_log);
+    if (!ZSTD_isError(result)) result = ZSTD_CCtxParams_setParameter(params, ZSTD_c_searchLog, search_log);
+    if (!ZSTD_isError(result)) result = ZSTD_CCtxParams_setParameter(params, ZSTD_c_minMatch, min_match);
+    if (!ZSTD_isError(result)) result = ZSTD_CCtxParams_setParameter(params, ZSTD_c_targetLength, target_length);
+    if (!ZSTD_isError(result)) result = ZSTD_CCtxParams_setParameter(params, ZSTD_c_strategy, strategy);
+    if (!ZSTD_isError(result)) result = ZSTD_CCtxParams_setParameter(params, ZSTD_c_enableDedicatedDictSearch, dedicated_dict_search);
+    if (ZSTD_isError(result)) {
+        ZSTD_freeCCtxParams(params);
+        return result;
+    }
+    ZSTD_CDict* cdict = ZSTD_createCDict_advanced2(((char *)dict_buff) + dict_offset, dict_size,
+        byReference ? ZSTD_dlm_byRef : ZSTD_dlm_byCopy, ZSTD_dct_auto, params, ZSTD_defaultCMem);
+    ZSTD_freeCCtxParams(params);
+    if (NULL == cdict) return -ZSTD_error_memory_allocation;
+    (*env)->SetLongField(env, obj, compress_dict, (jlong)(intptr_t) cdict);
+    return 0;
+}
+
 /*
  * Class:     com_github_luben_zstd_ZstdDictCompress
  * Method:    free
@@ -66,6 +105,17 @@ JNIEXPORT void JNICALL Java_com_github_luben_zstd_ZstdDictCompress_free
     ZSTD_freeCDict(cdict);
 }
 
+/*
+ * Class:     com_github_luben_zstd_ZstdDictCompress
+ * Method:    sizeOf0
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdDictCompress_sizeOf0
+  (JNIEnv *env, jclass clazz, jlong ptr)
+{
+    return ZSTD_sizeof_CDict((ZSTD_CDict*)(intptr_t) ptr);
+}
+
 /*
  * Class:     com_github_luben_zstd_ZstdDictDecompress
  * Method:    init
@@ -125,6 +175,20 @@ JNIEXPORT void JNICALL Java_com_github_luben_zstd_ZstdDictDecompress_free
     ZSTD_freeDDict(ddict);
 }
 
+/*
+ * Class:     com_github_luben_zstd_ZstdDictDecompress
+ * Method:    getDictId0
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdDictDecompress_getDictId0
+  (JNIEnv *env, jobject obj)
+{
+    if (decompress_dict == 0) return 0;
+    ZSTD_DDict* ddict = (ZSTD_DDict*)(intptr_t)(*env)->GetLongField(env, obj, decompress_dict);
+    if (NULL == ddict) return 0;
+    return (jlong) ZSTD_getDictID_fromDDict(ddict);
+}
+
 /*
  * Class:     com_github_luben_zstd_Zstd
  * Method:    decompressFastDict0
@@ -367,6 +431,17 @@ JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_reset0
     return ZSTD_CCtx_reset(cctx, ZSTD_reset_session_and_parameters);
 }
 
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressCtx
+ * Method:    resetSession0
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_resetSession0
+  (JNIEnv *env, jclass jctx, jlong ptr) {
+    ZSTD_CCtx* cctx = (ZSTD_CCtx*)(intptr_t) ptr;
+    return ZSTD_CCtx_reset(cctx, ZSTD_reset_session_only);
+}
+
 JNIEXPORT jobject JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_getFrameProgression0
   (JNIEnv *env, jclass jctx, jlong ptr) {
     ZSTD_CCtx* cctx = (ZSTD_CCtx*)(intptr_t) ptr;
@@ -380,6 +455,72 @@ JNIEXPORT jobject JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_getFramePro
             native_progression.currentJobID, native_progression.nbActiveWorkers);
 }
 
+static jobject new_compression_parameters(JNIEnv *env, ZSTD_compressionParameters cparams) {
+    jclass params_class = (*env)->FindClass(env, "com/github/luben/zstd/ZstdCompressionParameters");
+    if (params_class == NULL) return NULL;
+    jmethodID params_constructor = (*env)->GetMethodID(env, params_class, "<init>", "(IIIIIII)V");
+    if (params_constructor == NULL) return NULL;
+    return (*env)->NewObject(
+            env, params_class, params_constructor, cparams.windowLog, cparams.chainLog, cparams.hashLog,
+            cparams.searchLog, cparams.minMatch, cparams.targetLength, cparams.strategy);
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressCtx
+ * Method:    getParameter0
+ * Signature: (JI)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_getParameter0
+  (JNIEnv *env, jclass jctx, jlong ptr, jint param) {
+    ZSTD_CCtx* cctx = (ZSTD_CCtx*)(intptr_t) ptr;
+    int value = 0;
+    size_t result = ZSTD_CCtx_getParameter(cctx, (ZSTD_cParameter) param, &value);
+    if (ZSTD_isError(result)) return result;
+    return value;
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressCtx
+ * Method:    setParameters0
+ * Signature: (JIIIIIII)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_setParameters0
+  (JNIEnv *env, jclass jctx, jlong ptr, jint window_log, jint chain_log, jint hash_log, jint search_log,
+   jint min_match, jint target_length, jint strategy) {
+    ZSTD_CCtx* cctx = (ZSTD_CCtx*)(intptr_t) ptr;
+    ZSTD_compressionParameters cparams;
+    cparams.windowLog = window_log;
+    cparams.chainLog = chain_log;
+    cparams.hashLog = hash_log;
+    cparams.searchLog = search_log;
+    cparams.minMatch = min_match;
+    cparams.targetLength = target_length;
+    cparams.strategy = (ZSTD_strategy) strategy;
+    /* validates all the parameters before setting any */
+    return ZSTD_CCtx_setCParams(cctx, cparams);
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressionParameters
+ * Method:    getCParams0
+ * Signature: (IJJ)Lcom/github/luben/zstd/ZstdCompressionParameters;
+ */
+JNIEXPORT jobject JNICALL Java_com_github_luben_zstd_ZstdCompressionParameters_getCParams0
+  (JNIEnv *env, jclass jclazz, jint level, jlong src_size, jlong dict_size) {
+    return new_compression_parameters(env, ZSTD_getCParams(level, (unsigned long long) src_size, (size_t) dict_size));
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressionParameters
+ * Method:    getBounds0
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressionParameters_getBounds0
+  (JNIEnv *env, jclass jclazz, jint param) {
+    ZSTD_bounds bounds = ZSTD_cParam_getBounds((ZSTD_cParameter) param);
+    return ((jlong) bounds.upperBound << 32) | ((jlong) bounds.lowerBound & 0xFFFFFFFFL);
+}
+
 JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_setPledgedSrcSize0
   (JNIEnv *env, jclass jctx, jlong ptr, jlong src_size) {
     if (src_size < 0) {
@@ -607,6 +748,81 @@ JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_compressDirec
     return ZSTD_compress2(cctx, dst_buff + dst_offset, (size_t) dst_size, src_buff + src_offset, (size_t) src_size);
 }
 
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressCtx
+ * Method:    compressUnsafe0
+ * Signature: (JJJJJ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_compressUnsafe0
+  (JNIEnv *env, jclass jctx, jlong ptr, jlong dst_buf_ptr, jlong dst_size, jlong src_buf_ptr, jlong src_size) {
+    ZSTD_CCtx* cctx = (ZSTD_CCtx*)(intptr_t) ptr;
+    ZSTD_CCtx_reset(cctx, ZSTD_reset_session_only);
+    return ZSTD_compress2(cctx, (void *)(intptr_t) dst_buf_ptr, (size_t) dst_size, (void *)(intptr_t) src_buf_ptr, (size_t) src_size);
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressCtx
+ * Method:    refPrefix0
+ * Signature: (JLjava/nio/ByteBuffer;II)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_refPrefix0
+  (JNIEnv *env, jclass clazz, jlong ptr, jobject prefix, jint offset, jint length)
+{
+    ZSTD_CCtx* cctx = (ZSTD_CCtx*)(intptr_t)ptr;
+    if (prefix == NULL) {
+        // remove prefix
+        return ZSTD_CCtx_refPrefix(cctx, NULL, 0);
+    }
+    char *prefix_buff = (char*)(*env)->GetDirectBufferAddress(env, prefix);
+    if (prefix_buff == NULL) return -ZSTD_error_prefix_unknown;
+    return ZSTD_CCtx_refPrefix_advanced(cctx, prefix_buff + offset, (size_t) length, ZSTD_dct_rawContent);
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressCtx
+ * Method:    setPatchFromParameters0
+ * Signature: (JJJ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_setPatchFromParameters0
+  (JNIEnv *env, jclass clazz, jlong ptr, jlong ref_size, jlong src_size)
+{
+    ZSTD_CCtx* cctx = (ZSTD_CCtx*)(intptr_t)ptr;
+    int level;
+    size_t result = ZSTD_CCtx_getParameter(cctx, ZSTD_c_compressionLevel, &level);
+    if (ZSTD_isError(result)) return result;
+    // same as `zstd --patch-from`: the window must cover the whole reference and the new content
+    unsigned long long max_size = (unsigned long long) (ref_size > src_size ? ref_size : src_size);
+    unsigned file_window_log = 1;
+    while (max_size >>= 1) file_window_log++;
+    int window_log = file_window_log;
+    if (window_log < ZSTD_WINDOWLOG_MIN) window_log = ZSTD_WINDOWLOG_MIN;
+    if (window_log > ZSTD_WINDOWLOG_MAX) window_log = ZSTD_WINDOWLOG_MAX;
+    result = ZSTD_CCtx_setParameter(cctx, ZSTD_c_windowLog, window_log);
+    if (ZSTD_isError(result)) return result;
+    // enable LDM when the match finder can't see the whole window
+    ZSTD_compressionParameters cParams = ZSTD_getCParams(level,
+        (unsigned long long) (ref_size > src_size ? ref_size : src_size), (size_t) ref_size);
+    int strategy, chain_log;
+    result = ZSTD_CCtx_getParameter(cctx, ZSTD_c_strategy, &strategy);
+    if (ZSTD_isError(result)) return result;
+    result = ZSTD_CCtx_getParameter(cctx, ZSTD_c_chainLog, &chain_log);
+    if (ZSTD_isError(result)) return result;
+    // the parameters set explicitly override those of the level
+    if (strategy == 0) strategy = cParams.strategy;
+    if (chain_log == 0) chain_log = cParams.chainLog;
+    unsigned cycle_log = chain_log - (strategy >= ZSTD_btlazy2 ? 1 : 0);
+    if (file_window_log > cycle_log) {
+        result = ZSTD_CCtx_setParameter(cctx, ZSTD_c_enableLongDistanceMatching, ZSTD_ps_enable);
+        if (ZSTD_isError(result)) return result;
+    }
+    // the optimal parsers find the long matches of the reference only with the max target length
+    if (strategy >= ZSTD_btopt) {
+        result = ZSTD_CCtx_setParameter(cctx, ZSTD_c_targetLength, ZSTD_TARGETLENGTH_MAX);
+        if (ZSTD_isError(result)) return result;
+    }
+    return window_log;
+}
+
 /*
  * Class:     com_github_luben_zstd_ZstdCompressCtx
  * Method:    compressByteArray0
@@ -638,6 +854,180 @@ E2: (*env)->ReleasePrimitiveArrayCritical(env, dst, dst_buff, 0);
 E1: return size;
 }
 
+#if ZSTD_VERSION_NUMBER <= 10507
+#include <compress/zstd_compress_internal.h>
+#endif
+
+/*
+ * Workaround for zstd <= 1.5.7: ZSTD_generateSequences() installs its sequence collector
+ * in the context and never removes it, so every following compression of the context
+ * keeps copying sequences into the caller's (by then released) output. No public call
+ * clears it, not even ZSTD_CCtx_reset(). Check the guard when updating zstd.
+ */
+static size_t generate_sequences(ZSTD_CCtx* cctx, ZSTD_Sequence *seqs, size_t seqs_capacity, const void *src, size_t src_size) {
+    ZSTD_CCtx_reset(cctx, ZSTD_reset_session_only);
+    size_t size = ZSTD_generateSequences(cctx, seqs, seqs_capacity, src, src_size);
+#if ZSTD_VERSION_NUMBER <= 10507
+    cctx->seqCollector.collectSequences = 0;
+    cctx->seqCollector.seqStart = NULL;
+#endif
+    return size;
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressCtx
+ * Method:    generateSequences0
+ * Signature: (J[I[BII)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_generateSequences0
+  (JNIEnv *env, jclass jctx, jlong ptr, jintArray seqs, jbyteArray src, jint src_offset, jint src_size) {
+    size_t size = -ZSTD_error_memory_allocation;
+
+    if (0 > src_offset) return -ZSTD_error_srcSize_wrong;
+    if (0 > src_size) return -ZSTD_error_srcSize_wrong;
+    if (src_offset + src_size > (*env)->GetArrayLength(env, src)) return -ZSTD_error_srcSize_wrong;
+    size_t seqs_capacity = (size_t) ((*env)->GetArrayLength(env, seqs) / 4);
+
+    ZSTD_CCtx* cctx = (ZSTD_CCtx*)(intptr_t) ptr;
+
+    ZSTD_Sequence *seqs_buff = (*env)->GetPrimitiveArrayCritical(env, seqs, NULL);
+    if (seqs_buff == NULL) goto E1;
+    void *src_buff = (*env)->GetPrimitiveArrayCritical(env, src, NULL);
+    if (src_buff == NULL) goto E2;
+
+    size = generate_sequences(cctx, seqs_buff, seqs_capacity, ((char *)src_buff) + src_offset, (size_t) src_size);
+    (*env)->ReleasePrimitiveArrayCritical(env, src, src_buff, JNI_ABORT);
+E2: (*env)->ReleasePrimitiveArrayCritical(env, seqs, seqs_buff, 0);
+E1: return size;
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressCtx
+ * Method:    generateSequencesDirect0
+ * Signature: (JLjava/nio/ByteBuffer;IILjava/nio/ByteBuffer;II)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_generateSequencesDirect0
+  (JNIEnv *env, jclass jctx, jlong ptr, jobject seqs, jint seqs_offset, jint seqs_capacity, jobject src, jint src_offset, jint src_size) {
+    if (NULL == seqs) return -ZSTD_error_dstSize_tooSmall;
+    if (NULL == src) return -ZSTD_error_srcSize_wrong;
+    if (0 > seqs_offset || 0 > seqs_capacity) return -ZSTD_error_dstSize_tooSmall;
+    if (0 > src_offset) return -ZSTD_error_srcSize_wrong;
+    if (0 > src_size) return -ZSTD_error_srcSize_wrong;
+
+    jlong seqs_cap = (*env)->GetDirectBufferCapacity(env, seqs);
+    if (0 > seqs_cap) return -ZSTD_error_dstSize_tooSmall;
+    jlong src_cap = (*env)->GetDirectBufferCapacity(env, src);
+    if (0 > src_cap) return -ZSTD_error_srcSize_wrong;
+
+    if (seqs_offset + (jlong) (seqs_capacity * sizeof(ZSTD_Sequence)) > seqs_cap) return -ZSTD_error_dstSize_tooSmall;
+    if ((jlong) src_offset + src_size > src_cap) return -ZSTD_error_srcSize_wrong;
+
+    ZSTD_CCtx* cctx = (ZSTD_CCtx*)(intptr_t) ptr;
+
+    char *seqs_buff = (char*)(*env)->GetDirectBufferAddress(env, seqs);
+    if (seqs_buff == NULL) return -ZSTD_error_memory_allocation;
+    if (((uintptr_t) (seqs_buff + seqs_offset)) % sizeof(unsigned) != 0) return -ZSTD_error_parameter_unsupported;
+    char *src_buff = (char*)(*env)->GetDirectBufferAddress(env, src);
+    if (src_buff == NULL) return -ZSTD_error_memory_allocation;
+
+    return generate_sequences(cctx, (ZSTD_Sequence *) (seqs_buff + seqs_offset), (size_t) seqs_capacity,
+                              src_buff + src_offset, (size_t) src_size);
+}
+
+/* Compresses the sequences, validating them for the call when requested and restoring the setting after */
+static size_t compress_sequences(ZSTD_CCtx* cctx, void *dst, size_t dst_size, const ZSTD_Sequence *seqs, size_t nb_seqs,
+                                 const void *src, size_t src_size, jboolean validate) {
+    int previous = 0;
+    ZSTD_CCtx_reset(cctx, ZSTD_reset_session_only);
+    if (validate == JNI_TRUE) {
+        size_t result = ZSTD_CCtx_getParameter(cctx, ZSTD_c_validateSequences, &previous);
+        if (ZSTD_isError(result)) return result;
+        result = ZSTD_CCtx_setParameter(cctx, ZSTD_c_validateSequences, 1);
+        if (ZSTD_isError(result)) return result;
+    }
+    size_t size = ZSTD_compressSequences(cctx, dst, dst_size, seqs, nb_seqs, src, src_size);
+    if (validate == JNI_TRUE) {
+        ZSTD_CCtx_reset(cctx, ZSTD_reset_session_only);
+        ZSTD_CCtx_setParameter(cctx, ZSTD_c_validateSequences, previous);
+    }
+    return size;
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressCtx
+ * Method:    compressSequences0
+ * Signature: (J[BII[II[BIIZ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_compressSequences0
+  (JNIEnv *env, jclass jctx, jlong ptr, jbyteArray dst, jint dst_offset, jint dst_size, jintArray seqs, jint nb_seqs,
+   jbyteArray src, jint src_offset, jint src_size, jboolean validate) {
+    size_t size = -ZSTD_error_memory_allocation;
+
+    if (0 > dst_offset) return -ZSTD_error_dstSize_tooSmall;
+    if (0 > src_offset) return -ZSTD_error_srcSize_wrong;
+    if (0 > src_size) return -ZSTD_error_srcSize_wrong;
+    if (0 > nb_seqs) return -ZSTD_error_srcSize_wrong;
+
+    if (src_offset + src_size > (*env)->GetArrayLength(env, src)) return -ZSTD_error_srcSize_wrong;
+    if (dst_offset + dst_size > (*env)->GetArrayLength(env, dst)) return -ZSTD_error_dstSize_tooSmall;
+    if (nb_seqs > (*env)->GetArrayLength(env, seqs) / 4) return -ZSTD_error_srcSize_wrong;
+
+    ZSTD_CCtx* cctx = (ZSTD_CCtx*)(intptr_t) ptr;
+
+    void *dst_buff = (*env)->GetPrimitiveArrayCritical(env, dst, NULL);
+    if (dst_buff == NULL) goto E1;
+    void *seqs_buff = (*env)->GetPrimitiveArrayCritical(env, seqs, NULL);
+    if (seqs_buff == NULL) goto E2;
+    void *src_buff = (*env)->GetPrimitiveArrayCritical(env, src, NULL);
+    if (src_buff == NULL) goto E3;
+
+    size = compress_sequences(cctx, ((char *)dst_buff) + dst_offset, (size_t) dst_size, (ZSTD_Sequence *) seqs_buff,
+                              (size_t) nb_seqs, ((char *)src_buff) + src_offset, (size_t) src_size, validate);
+    (*env)->ReleasePrimitiveArrayCritical(env, src, src_buff, JNI_ABORT);
+E3: (*env)->ReleasePrimitiveArrayCritical(env, seqs, seqs_buff, JNI_ABORT);
+E2: (*env)->ReleasePrimitiveArrayCritical(env, dst, dst_buff, 0);
+E1: return size;
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressCtx
+ * Method:    compressSequencesDirect0
+ * Signature: (JLjava/nio/ByteBuffer;IILjava/nio/ByteBuffer;IILjava/nio/ByteBuffer;IIZ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdCompressCtx_compressSequencesDirect0
+  (JNIEnv *env, jclass jctx, jlong ptr, jobject dst, jint dst_offset, jint dst_size, jobject seqs, jint seqs_offset,
+   jint nb_seqs, jobject src, jint src_offset, jint src_size, jboolean validate) {
+    if (NULL == dst) return -ZSTD_error_dstSize_tooSmall;
+    if (NULL == seqs || NULL == src) return -ZSTD_error_srcSize_wrong;
+    if (0 > dst_offset || 0 > dst_size) return -ZSTD_error_dstSize_tooSmall;
+    if (0 > src_offset || 0 > src_size) return -ZSTD_error_srcSize_wrong;
+    if (0 > seqs_offset || 0 > nb_seqs) return -ZSTD_error_srcSize_wrong;
+
+    jlong dst_cap = (*env)->GetDirectBufferCapacity(env, dst);
+    if (0 > dst_cap) return -ZSTD_error_dstSize_tooSmall;
+    jlong src_cap = (*env)->GetDirectBufferCapacity(env, src);
+    if (0 > src_cap) return -ZSTD_error_srcSize_wrong;
+    jlong seqs_cap = (*env)->GetDirectBufferCapacity(env, seqs);
+    if (0 > seqs_cap) return -ZSTD_error_srcSize_wrong;
+
+    if ((jlong) dst_offset + dst_size > dst_cap) return -ZSTD_error_dstSize_tooSmall;
+    if ((jlong) src_offset + src_size > src_cap) return -ZSTD_error_srcSize_wrong;
+    if (seqs_offset + (jlong) (nb_seqs * sizeof(ZSTD_Sequence)) > seqs_cap) return -ZSTD_error_srcSize_wrong;
+
+    ZSTD_CCtx* cctx = (ZSTD_CCtx*)(intptr_t) ptr;
+
+    char *dst_buff = (char*)(*env)->GetDirectBufferAddress(env, dst);
+    if (dst_buff == NULL) return -ZSTD_error_memory_allocation;
+    char *seqs_buff = (char*)(*env)->GetDirectBufferAddress(env, seqs);
+    if (seqs_buff == NULL) return -ZSTD_error_memory_allocation;
+    if (((uintptr_t) (seqs_buff + seqs_offset)) % sizeof(unsigned) != 0) return -ZSTD_error_parameter_unsupported;
+    char *src_buff = (char*)(*env)->GetDirectBufferAddress(env, src);
+    if (src_buff == NULL) return -ZSTD_error_memory_allocation;
+
+    return compress_sequences(cctx, dst_buff + dst_offset, (size_t) dst_size, (ZSTD_Sequence *) (seqs_buff + seqs_offset),
+                              (size_t) nb_seqs, src_buff + src_offset, (size_t) src_size, validate);
+}
+
 /* ================ ZstdDecompressCtx ============================ */
 
 /*
@@ -683,6 +1073,24 @@ JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdDecompressCtx_loadDDictFa
     return ZSTD_DCtx_refDDict(dctx, ddict);
 }
 
+/*
+ * Class:     com_github_luben_zstd_ZstdDecompressCtx
+ * Method:    refPrefix0
+ * Signature: (JLjava/nio/ByteBuffer;II)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdDecompressCtx_refPrefix0
+  (JNIEnv *env, jclass clazz, jlong ptr, jobject prefix, jint offset, jint length)
+{
+    ZSTD_DCtx* dctx = (ZSTD_DCtx*)(intptr_t)ptr;
+    if (prefix == NULL) {
+        // remove prefix
+        return ZSTD_DCtx_refPrefix(dctx, NULL, 0);
+    }
+    char *prefix_buff = (char*)(*env)->GetDirectBufferAddress(env, prefix);
+    if (prefix_buff == NULL) return -ZSTD_error_prefix_unknown;
+    return ZSTD_DCtx_refPrefix_advanced(dctx, prefix_buff + offset, (size_t) length, ZSTD_dct_rawContent);
+}
+
 /*
  * Class:     com_github_luben_zstd_ZstdDecompressCtx
  * Method:    loadDDict0
@@ -715,6 +1123,17 @@ JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdDecompressCtx_reset0
     return ZSTD_DCtx_reset(dctx, ZSTD_reset_session_and_parameters);
 }
 
+/*
+ * Class:     com_github_luben_zstd_ZstdDecompressCtx
+ * Method:    resetSession0
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdDecompressCtx_resetSession0
+  (JNIEnv *env, jclass clazz, jlong ptr) {
+    ZSTD_DCtx* dctx = (ZSTD_DCtx*)(intptr_t) ptr;
+    return ZSTD_DCtx_reset(dctx, ZSTD_reset_session_only);
+}
+
 static size_t decompress_direct_buffer_stream
   (JNIEnv *env, jlong ptr, jobject dst, jint *dst_offset, jint dst_size, jobject src, jint *src_offset, jint src_size)
 {
@@ -799,6 +1218,18 @@ JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdDecompressCtx_decompressD
     return ZSTD_decompressDCtx(dctx, dst_buff + dst_offset, (size_t) dst_size, src_buff + src_offset, (size_t) src_size);
 }
 
+/*
+ * Class:     com_github_luben_zstd_ZstdDecompressCtx
+ * Method:    decompressUnsafe0
+ * Signature: (JJJJJ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdDecompressCtx_decompressUnsafe0
+  (JNIEnv *env, jclass jctx, jlong ptr, jlong dst_buf_ptr, jlong dst_size, jlong src_buf_ptr, jlong src_size) {
+    ZSTD_DCtx* dctx = (ZSTD_DCtx*)(intptr_t) ptr;
+    ZSTD_DCtx_reset(dctx, ZSTD_reset_session_only);
+    return ZSTD_decompressDCtx(dctx, (void *)(intptr_t) dst_buf_ptr, (size_t) dst_size, (void *)(intptr_t) src_buf_ptr, (size_t) src_size);
+}
+
 /*
  * Class:     com_github_luben_zstd_ZstdDecompressCtx
  * Method:    decompressByteArray0
@@ -897,3 +1328,27 @@ JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdDecompressCtx_decompressD
     (*env)->ReleasePrimitiveArrayCritical(env, dst, dst_buff, 0);
 E1: return size;
 }
+
+/* ================ ZstdForeignDowncalls ============================ */
+
+/*
+ * Class:     com_github_luben_zstd_ZstdForeignDowncalls
+ * Method:    functionAddresses0
+ * Signature: ([J)V
+ *
+ * Fills the addresses of the functions called through FFM downcalls, so only the
+ * JNI entry points have to be exported from the library.
+ */
+JNIEXPORT void JNICALL Java_com_github_luben_zstd_ZstdForeignDowncalls_functionAddresses0
+  (JNIEnv *env, jclass clazz, jlongArray addresses)
+{
+    jlong functions[] = {
+        (jlong)(intptr_t) &ZSTD_CCtx_reset,
+        (jlong)(intptr_t) &ZSTD_compress2,
+        (jlong)(intptr_t) &ZSTD_DCtx_reset,
+        (jlong)(intptr_t) &ZSTD_decompressDCtx
+    };
+    jsize count = (jsize) (sizeof(functions) / sizeof(functions[0]));
+    if ((*env)->GetArrayLength(env, addresses) != count) return;
+    (*env)->SetLongArrayRegion(env, addresses, 0, count, functions);
+}
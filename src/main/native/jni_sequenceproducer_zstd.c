@@ -0,0 +1,96 @@
+#ifndef ZSTD_STATIC_LINKING_ONLY
+#define ZSTD_STATIC_LINKING_ONLY
+#endif
+#include <jni.h>
+#include <zstd.h>
+#include <stdint.h>
+#include <stdlib.h>
+
+typedef struct {
+    JavaVM *vm;
+    jobject producer;
+    jmethodID produce;
+} java_sequence_producer_state;
+
+/*
+ * The ZSTD_sequenceProducer_F calling JavaSequenceProducer.produce() over direct
+ * buffers wrapping the arguments. It runs in the Java thread calling the compression,
+ * zstd doesn't support the external producers with workers. An exception thrown by
+ * the producer stays pending and is rethrown when the compression returns.
+ */
+static size_t java_sequence_producer(void *state, ZSTD_Sequence *out_seqs, size_t out_seqs_capacity,
+                                     const void *src, size_t src_size, const void *dict, size_t dict_size,
+                                     int compression_level, size_t window_size) {
+    java_sequence_producer_state *producer_state = (java_sequence_producer_state *) state;
+    JavaVM *vm = producer_state->vm;
+    JNIEnv *env;
+    size_t result = ZSTD_SEQUENCE_PRODUCER_ERROR;
+
+    if ((*vm)->GetEnv(vm, (void **) &env, JNI_VERSION_1_6) != JNI_OK) return result;
+    // a previous block failed, the exception is rethrown at the end of the compression
+    if ((*env)->ExceptionCheck(env)) return result;
+    if ((*env)->PushLocalFrame(env, 3) != 0) return result;
+
+    jobject seqs_buffer = (*env)->NewDirectByteBuffer(env, out_seqs, (jlong) (out_seqs_capacity * sizeof(ZSTD_Sequence)));
+    if (seqs_buffer == NULL) goto E1;
+    jobject src_buffer = (*env)->NewDirectByteBuffer(env, (void *) src, (jlong) src_size);
+    if (src_buffer == NULL) goto E1;
+    // there is no history yet, zstd always passes an empty dict
+    jobject dict_buffer = (*env)->NewDirectByteBuffer(env, (void *) (dict == NULL ? src : dict), (jlong) dict_size);
+    if (dict_buffer == NULL) goto E1;
+
+    jlong count = (*env)->CallLongMethod(env, producer_state->producer, producer_state->produce, seqs_buffer,
+                                         src_buffer, dict_buffer, (jint) compression_level, (jlong) window_size);
+    if (!(*env)->ExceptionCheck(env) && count >= 0 && (size_t) count <= out_seqs_capacity) {
+        result = (size_t) count;
+    }
+E1: (*env)->PopLocalFrame(env, NULL);
+    return result;
+}
+
+/*
+ * Class:     com_github_luben_zstd_JavaSequenceProducer
+ * Method:    functionPointer0
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_JavaSequenceProducer_functionPointer0
+  (JNIEnv *env, jclass clazz)
+{
+    return (jlong)(intptr_t) &java_sequence_producer;
+}
+
+/*
+ * Class:     com_github_luben_zstd_JavaSequenceProducer
+ * Method:    createState0
+ * Signature: (Lcom/github/luben/zstd/JavaSequenceProducer;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_JavaSequenceProducer_createState0
+  (JNIEnv *env, jclass clazz, jobject producer)
+{
+    jmethodID produce = (*env)->GetMethodID(env, clazz, "produce",
+        "(Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;IJ)J");
+    if (produce == NULL) return 0;
+    java_sequence_producer_state *state = malloc(sizeof(java_sequence_producer_state));
+    if (state == NULL) return 0;
+    if ((*env)->GetJavaVM(env, &state->vm) != 0) goto E1;
+    state->producer = (*env)->NewGlobalRef(env, producer);
+    if (state->producer == NULL) goto E1;
+    state->produce = produce;
+    return (jlong)(intptr_t) state;
+E1: free(state);
+    return 0;
+}
+
+/*
+ * Class:     com_github_luben_zstd_JavaSequenceProducer
+ * Method:    freeState0
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_github_luben_zstd_JavaSequenceProducer_freeState0
+  (JNIEnv *env, jclass clazz, jlong ptr)
+{
+    java_sequence_producer_state *state = (java_sequence_producer_state *)(intptr_t) ptr;
+    if (state == NULL) return;
+    (*env)->DeleteGlobalRef(env, state->producer);
+    free(state);
+}
@@ -0,0 +1,31 @@
+#ifndef ZSTD_STATIC_LINKING_ONLY
+#define ZSTD_STATIC_LINKING_ONLY
+#endif
+#include <jni.h>
+#include <zstd.h>
+#include <stdint.h>
+
+/*
+ * Class:     com_github_luben_zstd_ZstdThreadPool
+ * Method:    init
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_ZstdThreadPool_init
+  (JNIEnv *env, jclass clazz, jint num_threads)
+{
+    if (num_threads <= 0) return 0;
+    ZSTD_threadPool* pool = ZSTD_createThreadPool((size_t) num_threads);
+    return (jlong)(intptr_t) pool;
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdThreadPool
+ * Method:    free
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_github_luben_zstd_ZstdThreadPool_free
+  (JNIEnv *env, jclass clazz, jlong ptr)
+{
+    ZSTD_threadPool* pool = (ZSTD_threadPool*)(intptr_t) ptr;
+    ZSTD_freeThreadPool(pool);
+}
@@ -7,10 +7,80 @@
 #include <stdlib.h>
 #include <string.h>
 
+/* Reads the ZstdDictTrainParams fields, as COVER uses a subset of the fastCover params */
+static void JNI_ZDICT_getParams(JNIEnv *env, jobject params, ZDICT_fastCover_params_t *p, jboolean *fastCover, jboolean *optimize) {
+    jclass clazz = (*env)->GetObjectClass(env, params);
+    memset(p, 0, sizeof(*p));
+    p->k = (*env)->GetIntField(env, params, (*env)->GetFieldID(env, clazz, "k", "I"));
+    p->d = (*env)->GetIntField(env, params, (*env)->GetFieldID(env, clazz, "d", "I"));
+    p->f = (*env)->GetIntField(env, params, (*env)->GetFieldID(env, clazz, "f", "I"));
+    p->steps = (*env)->GetIntField(env, params, (*env)->GetFieldID(env, clazz, "steps", "I"));
+    p->nbThreads = (*env)->GetIntField(env, params, (*env)->GetFieldID(env, clazz, "nbThreads", "I"));
+    p->splitPoint = (*env)->GetDoubleField(env, params, (*env)->GetFieldID(env, clazz, "splitPoint", "D"));
+    p->accel = (*env)->GetIntField(env, params, (*env)->GetFieldID(env, clazz, "accel", "I"));
+    p->zParams.compressionLevel = (*env)->GetIntField(env, params, (*env)->GetFieldID(env, clazz, "compressionLevel", "I"));
+    p->zParams.dictID = (*env)->GetIntField(env, params, (*env)->GetFieldID(env, clazz, "dictId", "I"));
+    *fastCover = (*env)->GetBooleanField(env, params, (*env)->GetFieldID(env, clazz, "fastCover", "Z"));
+    *optimize = (*env)->GetBooleanField(env, params, (*env)->GetFieldID(env, clazz, "optimize", "Z"));
+}
+
+/* Writes back the parameters selected by the optimization */
+static void JNI_ZDICT_setParams(JNIEnv *env, jobject params, ZDICT_fastCover_params_t *p) {
+    jclass clazz = (*env)->GetObjectClass(env, params);
+    (*env)->SetIntField(env, params, (*env)->GetFieldID(env, clazz, "k", "I"), p->k);
+    (*env)->SetIntField(env, params, (*env)->GetFieldID(env, clazz, "d", "I"), p->d);
+    (*env)->SetIntField(env, params, (*env)->GetFieldID(env, clazz, "f", "I"), p->f);
+    (*env)->SetIntField(env, params, (*env)->GetFieldID(env, clazz, "steps", "I"), p->steps);
+    (*env)->SetDoubleField(env, params, (*env)->GetFieldID(env, clazz, "splitPoint", "D"), p->splitPoint);
+    (*env)->SetIntField(env, params, (*env)->GetFieldID(env, clazz, "accel", "I"), p->accel);
+}
+
+static size_t JNI_ZDICT_train(void *dict_buff, size_t dict_capacity, const void *samples_buffer, const size_t *samples_sizes, unsigned num_samples,
+        jboolean legacy, jint compressionLevel, ZDICT_fastCover_params_t *p, jboolean fastCover, jboolean optimize) {
+    if (p == NULL) {
+        if (legacy == JNI_TRUE) {
+            ZDICT_legacy_params_t params;
+            memset(&params, 0, sizeof(params));
+            params.zParams.compressionLevel = compressionLevel;
+            return ZDICT_trainFromBuffer_legacy(dict_buff, dict_capacity, samples_buffer, samples_sizes, num_samples, params);
+        }
+        return ZDICT_trainFromBuffer(dict_buff, dict_capacity, samples_buffer, samples_sizes, num_samples, compressionLevel);
+    }
+    if (fastCover == JNI_TRUE) {
+        if (optimize == JNI_TRUE) {
+            return ZDICT_optimizeTrainFromBuffer_fastCover(dict_buff, dict_capacity, samples_buffer, samples_sizes, num_samples, p);
+        }
+        return ZDICT_trainFromBuffer_fastCover(dict_buff, dict_capacity, samples_buffer, samples_sizes, num_samples, *p);
+    } else {
+        size_t size;
+        ZDICT_cover_params_t cover;
+        memset(&cover, 0, sizeof(cover));
+        cover.k = p->k;
+        cover.d = p->d;
+        cover.steps = p->steps;
+        cover.nbThreads = p->nbThreads;
+        cover.splitPoint = p->splitPoint;
+        cover.zParams = p->zParams;
+        if (optimize == JNI_TRUE) {
+            size = ZDICT_optimizeTrainFromBuffer_cover(dict_buff, dict_capacity, samples_buffer, samples_sizes, num_samples, &cover);
+        } else {
+            size = ZDICT_trainFromBuffer_cover(dict_buff, dict_capacity, samples_buffer, samples_sizes, num_samples, cover);
+        }
+        p->k = cover.k;
+        p->d = cover.d;
+        p->steps = cover.steps;
+        p->splitPoint = cover.splitPoint;
+        return size;
+    }
+}
+
 JNIEXPORT jlong Java_com_github_luben_zstd_Zstd_trainFromBuffer0
-  (JNIEnv *env, jclass obj, jobjectArray samples, jbyteArray dictBuffer, jboolean legacy, jint compressionLevel) {
+  (JNIEnv *env, jclass obj, jobjectArray samples, jbyteArray dictBuffer, jboolean legacy, jint compressionLevel, jobject params) {
     if (dictBuffer == NULL) return -ZSTD_error_dictionary_wrong;
     size_t size = -ZSTD_error_memory_allocation;
+    ZDICT_fastCover_params_t p;
+    jboolean fastCover = JNI_FALSE, optimize = JNI_FALSE;
+    if (params != NULL) JNI_ZDICT_getParams(env, params, &p, &fastCover, &optimize);
     jsize num_samples = (*env)->GetArrayLength(env, samples);
     size_t *samples_sizes = malloc(sizeof(size_t) * num_samples);
     if (!samples_sizes) {
@@ -44,20 +114,20 @@ JNIEXPORT jlong Java_com_github_luben_zstd_Zstd_trainFromBuffer0
         cursor += length;
     }
     size_t dict_capacity = (*env)->GetArrayLength(env, dictBuffer);
-    void *dict_buff =  (*env)->GetPrimitiveArrayCritical(env, dictBuffer, NULL);
+    /* train into native memory, as it can take long and the GC must not be blocked meanwhile */
+    void *dict_buff = malloc(dict_capacity);
     if (dict_buff == NULL) {
+        jclass eClass = (*env)->FindClass(env, "java/lang/OutOfMemoryError");
+        (*env)->ThrowNew(env, eClass, "native heap");
         goto E3;
     }
-
-    if (legacy == JNI_TRUE) {
-        ZDICT_legacy_params_t params;
-        memset(&params,0,sizeof(params));
-        params.zParams.compressionLevel = compressionLevel;
-        size = ZDICT_trainFromBuffer_legacy(dict_buff, dict_capacity, samples_buffer, samples_sizes, num_samples, params);
-    } else {
-        size = ZDICT_trainFromBuffer(dict_buff, dict_capacity, samples_buffer, samples_sizes, num_samples, compressionLevel);
+    size = JNI_ZDICT_train(dict_buff, dict_capacity, samples_buffer, samples_sizes, num_samples,
+            legacy, compressionLevel, params != NULL ? &p : NULL, fastCover, optimize);
+    if (!ZDICT_isError(size)) {
+        (*env)->SetByteArrayRegion(env, dictBuffer, 0, size, (jbyte*) dict_buff);
+        if (params != NULL && optimize == JNI_TRUE) JNI_ZDICT_setParams(env, params, &p);
     }
-    (*env)->ReleasePrimitiveArrayCritical(env, dictBuffer, dict_buff, 0);
+    free(dict_buff);
 
 E3: free(samples_buffer);
 E2: free(samples_sizes);
@@ -65,9 +135,12 @@ E1: return size;
 }
 
 JNIEXPORT jlong Java_com_github_luben_zstd_Zstd_trainFromBufferDirect0
-  (JNIEnv *env, jclass obj, jobject samples, jintArray sampleSizes, jobject dictBuffer, jboolean legacy, jint compressionLevel) {
+  (JNIEnv *env, jclass obj, jobject samples, jintArray sampleSizes, jobject dictBuffer, jboolean legacy, jint compressionLevel, jobject params) {
 
     size_t size = -ZSTD_error_memory_allocation;
+    ZDICT_fastCover_params_t p;
+    jboolean fastCover = JNI_FALSE, optimize = JNI_FALSE;
+    if (params != NULL) JNI_ZDICT_getParams(env, params, &p, &fastCover, &optimize);
     void *samples_buffer = (*env)->GetDirectBufferAddress(env, samples);
     size_t samples_capacity = (*env)->GetDirectBufferCapacity(env, samples);
     void *dict_buff = (*env)->GetDirectBufferAddress(env, dictBuffer);
@@ -98,14 +171,9 @@ JNIEXPORT jlong Java_com_github_luben_zstd_Zstd_trainFromBufferDirect0
     (*env)->ReleasePrimitiveArrayCritical(env, sampleSizes, sample_sizes_array, JNI_ABORT);
     if (total_samples_size > samples_capacity) goto E2;
 
-    if (legacy == JNI_TRUE) {
-        ZDICT_legacy_params_t params;
-        memset(&params, 0, sizeof(params));
-        params.zParams.compressionLevel = compressionLevel;
-        size = ZDICT_trainFromBuffer_legacy(dict_buff, dict_capacity, samples_buffer, samples_sizes, num_samples, params);
-    } else {
-        size = ZDICT_trainFromBuffer(dict_buff, dict_capacity, samples_buffer, samples_sizes, num_samples, compressionLevel);
-    }
+    size = JNI_ZDICT_train(dict_buff, dict_capacity, samples_buffer, samples_sizes, num_samples,
+            legacy, compressionLevel, params != NULL ? &p : NULL, fastCover, optimize);
+    if (!ZDICT_isError(size) && params != NULL && optimize == JNI_TRUE) JNI_ZDICT_setParams(env, params, &p);
 E2: free(samples_sizes);
 E1: return size;
 }
@@ -4,6 +4,7 @@
 #include <jni.h>
 #include <zstd.h>
 #include <zstd_errors.h>
+#include <compress/hist.h>
 #include <stdint.h>
 
 
@@ -232,6 +233,31 @@ JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_Zstd_compressBound
     return ZSTD_compressBound((size_t) size);
 }
 
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    sequenceBound
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_Zstd_sequenceBound
+  (JNIEnv *env, jclass obj, jlong size) {
+    return ZSTD_sequenceBound((size_t) size);
+}
+
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    mergeBlockDelimiters0
+ * Signature: ([II)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_mergeBlockDelimiters0
+  (JNIEnv *env, jclass obj, jintArray sequences, jint nb_sequences) {
+    if (nb_sequences < 0 || nb_sequences > (*env)->GetArrayLength(env, sequences) / 4) return 0;
+    ZSTD_Sequence *seqs = (*env)->GetPrimitiveArrayCritical(env, sequences, NULL);
+    if (seqs == NULL) return 0;
+    size_t size = ZSTD_mergeBlockDelimiters(seqs, (size_t) nb_sequences);
+    (*env)->ReleasePrimitiveArrayCritical(env, sequences, seqs, 0);
+    return (jint) size;
+}
+
 /*
  * Class:     com_github_luben_zstd_Zstd
  * Method:    isError
@@ -414,6 +440,36 @@ JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setDecompressionMagicless
     return ZSTD_DCtx_setParameter((ZSTD_DCtx *)(intptr_t) stream, ZSTD_d_format, format);
 }
 
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setCompressionStableInBuffer
+ * Signature: (JZ)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setCompressionStableInBuffer
+  (JNIEnv *env, jclass obj, jlong stream, jboolean stable) {
+    return ZSTD_CCtx_setParameter((ZSTD_CCtx *)(intptr_t) stream, ZSTD_c_stableInBuffer, (stable == JNI_TRUE));
+}
+
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setCompressionStableOutBuffer
+ * Signature: (JZ)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setCompressionStableOutBuffer
+  (JNIEnv *env, jclass obj, jlong stream, jboolean stable) {
+    return ZSTD_CCtx_setParameter((ZSTD_CCtx *)(intptr_t) stream, ZSTD_c_stableOutBuffer, (stable == JNI_TRUE));
+}
+
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setDecompressionStableOutBuffer
+ * Signature: (JZ)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setDecompressionStableOutBuffer
+  (JNIEnv *env, jclass obj, jlong stream, jboolean stable) {
+    return ZSTD_DCtx_setParameter((ZSTD_DCtx *)(intptr_t) stream, ZSTD_d_stableOutBuffer, (stable == JNI_TRUE));
+}
+
 /*
  * Class:     com_github_luben_zstd_Zstd
  * Method:    setCompressionWorkers
@@ -424,6 +480,16 @@ JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setCompressionWorkers
     return ZSTD_CCtx_setParameter((ZSTD_CCtx *)(intptr_t) stream, ZSTD_c_nbWorkers, workers);
 }
 
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setCompressionThreadPool
+ * Signature: (JJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setCompressionThreadPool
+  (JNIEnv *env, jclass obj, jlong stream, jlong pool) {
+    return ZSTD_CCtx_refThreadPool((ZSTD_CCtx *)(intptr_t) stream, (ZSTD_threadPool *)(intptr_t) pool);
+}
+
 /*
  * Class:     com_github_luben_zstd_Zstd
  * Method:    setCompressionJobSize
@@ -494,6 +560,39 @@ JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setCompressionMinMatch
     return ZSTD_CCtx_setParameter((ZSTD_CCtx *)(intptr_t) stream, ZSTD_c_minMatch, minMatch);
 }
 
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setCompressionRsyncable
+ * Signature: (JZ)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setCompressionRsyncable
+  (JNIEnv *env, jclass obj, jlong stream, jboolean rsyncable) {
+    return ZSTD_CCtx_setParameter((ZSTD_CCtx *)(intptr_t) stream, ZSTD_c_rsyncable, (rsyncable == JNI_TRUE));
+}
+
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setCompressionSrcSizeHint
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setCompressionSrcSizeHint
+  (JNIEnv *env, jclass obj, jlong stream, jint srcSizeHint) {
+    return ZSTD_CCtx_setParameter((ZSTD_CCtx *)(intptr_t) stream, ZSTD_c_srcSizeHint, srcSizeHint);
+}
+
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setCompressionPledgedSrcSize
+ * Signature: (JJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setCompressionPledgedSrcSize
+  (JNIEnv *env, jclass obj, jlong stream, jlong srcSize) {
+    if (srcSize < 0) {
+        return -ZSTD_error_srcSize_wrong;
+    }
+    return ZSTD_CCtx_setPledgedSrcSize((ZSTD_CCtx *)(intptr_t) stream, (unsigned long long) srcSize);
+}
+
 /*
  * Class:     com_github_luben_zstd_Zstd
  * Method:    setCompressionTargetLength
@@ -504,6 +603,16 @@ JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setCompressionTargetLengt
     return ZSTD_CCtx_setParameter((ZSTD_CCtx *)(intptr_t) stream, ZSTD_c_targetLength, targetLength);
 }
 
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setCompressionTargetCBlockSize
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setCompressionTargetCBlockSize
+  (JNIEnv *env, jclass obj, jlong stream, jint targetCBlockSize) {
+    return ZSTD_CCtx_setParameter((ZSTD_CCtx *)(intptr_t) stream, ZSTD_c_targetCBlockSize, targetCBlockSize);
+}
+
 /*
  * Class:     com_github_luben_zstd_Zstd
  * Method:    setCompressionStrategy
@@ -545,6 +654,17 @@ JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setSequenceProducerFallba
     return ZSTD_CCtx_setParameter((ZSTD_CCtx*)(intptr_t) stream, ZSTD_c_enableSeqProducerFallback, (fallbackFlag == JNI_TRUE));
 }
 
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setBlockDelimiters
+ * Signature: (JZ)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setBlockDelimiters
+  (JNIEnv *env, jclass obj, jlong stream, jboolean explicitDelimiters) {
+    return ZSTD_CCtx_setParameter((ZSTD_CCtx*)(intptr_t) stream, ZSTD_c_blockDelimiters,
+        explicitDelimiters == JNI_TRUE ? ZSTD_sf_explicitBlockDelimiters : ZSTD_sf_noBlockDelimiters);
+}
+
 /*
  * Class:     com_github_luben_zstd_Zstd
  * Method:    setSearchForExternalRepcodes
@@ -565,6 +685,46 @@ JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setEnableLongDistanceMatc
     return ZSTD_CCtx_setParameter((ZSTD_CCtx*)(intptr_t) stream, ZSTD_c_enableLongDistanceMatching, enableLDM);
 }
 
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setLiteralCompressionMode
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setLiteralCompressionMode
+  (JNIEnv *env, jclass obj, jlong stream, jint literalCompressionMode) {
+    return ZSTD_CCtx_setParameter((ZSTD_CCtx*)(intptr_t) stream, ZSTD_c_literalCompressionMode, literalCompressionMode);
+}
+
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setBlockSplitterLevel
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setBlockSplitterLevel
+  (JNIEnv *env, jclass obj, jlong stream, jint blockSplitterLevel) {
+    return ZSTD_CCtx_setParameter((ZSTD_CCtx*)(intptr_t) stream, ZSTD_c_blockSplitterLevel, blockSplitterLevel);
+}
+
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setSplitAfterSequences
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setSplitAfterSequences
+  (JNIEnv *env, jclass obj, jlong stream, jint splitAfterSequences) {
+    return ZSTD_CCtx_setParameter((ZSTD_CCtx*)(intptr_t) stream, ZSTD_c_splitAfterSequences, splitAfterSequences);
+}
+
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    setUseRowMatchFinder
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_setUseRowMatchFinder
+  (JNIEnv *env, jclass obj, jlong stream, jint useRowMatchFinder) {
+    return ZSTD_CCtx_setParameter((ZSTD_CCtx*)(intptr_t) stream, ZSTD_c_useRowMatchFinder, useRowMatchFinder);
+}
+
 /*
  * Class:     com_github_luben_zstd_Zstd
  * Methods:   header constants access
@@ -635,6 +795,64 @@ JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_maxCompressionLevel
     return ZSTD_maxCLevel();
 }
 
+/* Accumulates the histogram of `samples` slices of `sample_size` bytes spread evenly over the source */
+static void sampled_histogram(unsigned *count, const char *src, size_t src_size, size_t sample_size, size_t samples) {
+    if (samples <= 1 || src_size <= sample_size * samples) {
+        HIST_add(count, src, src_size);
+        return;
+    }
+    size_t step = (src_size - sample_size) / (samples - 1);
+    size_t i;
+    for (i = 0; i < samples; i++) {
+        HIST_add(count, src + i * step, sample_size);
+    }
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressibilityProbe
+ * Method:    histogram0
+ * Signature: ([BIIII[I)V
+ */
+JNIEXPORT void JNICALL Java_com_github_luben_zstd_ZstdCompressibilityProbe_histogram0
+  (JNIEnv *env, jclass obj, jbyteArray src, jint offset, jint length, jint sample_size, jint samples, jintArray counts) {
+    unsigned count[256] = {0};
+    if (NULL == src || offset < 0 || length < 0 || sample_size <= 0 || samples <= 0) return;
+    if (offset > (*env)->GetArrayLength(env, src) - length) return;
+    char *src_buff = (*env)->GetPrimitiveArrayCritical(env, src, NULL);
+    if (src_buff == NULL) return;
+    sampled_histogram(count, src_buff + offset, (size_t) length, (size_t) sample_size, (size_t) samples);
+    (*env)->ReleasePrimitiveArrayCritical(env, src, src_buff, JNI_ABORT);
+    (*env)->SetIntArrayRegion(env, counts, 0, 256, (jint *) count);
+}
+
+/*
+ * Class:     com_github_luben_zstd_ZstdCompressibilityProbe
+ * Method:    histogramDirect0
+ * Signature: (Ljava/nio/ByteBuffer;IIII[I)V
+ */
+JNIEXPORT void JNICALL Java_com_github_luben_zstd_ZstdCompressibilityProbe_histogramDirect0
+  (JNIEnv *env, jclass obj, jobject src, jint offset, jint length, jint sample_size, jint samples, jintArray counts) {
+    unsigned count[256] = {0};
+    if (NULL == src || offset < 0 || length < 0 || sample_size <= 0 || samples <= 0) return;
+    if (offset > (*env)->GetDirectBufferCapacity(env, src) - length) return;
+    char *src_buff = (*env)->GetDirectBufferAddress(env, src);
+    if (src_buff == NULL) return;
+    sampled_histogram(count, src_buff + offset, (size_t) length, (size_t) sample_size, (size_t) samples);
+    (*env)->SetIntArrayRegion(env, counts, 0, 256, (jint *) count);
+}
+
+/*
+ * Class:     com_github_luben_zstd_Zstd
+ * Method:    getCompressionLevel
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_github_luben_zstd_Zstd_getCompressionLevel
+  (JNIEnv *env, jclass obj, jlong stream) {
+    int level = ZSTD_CLEVEL_DEFAULT;
+    ZSTD_CCtx_getParameter((ZSTD_CCtx *)(intptr_t) stream, ZSTD_c_compressionLevel, &level);
+    return level;
+}
+
 #define JNI_ZSTD_ERROR(err, name) \
   JNIEXPORT jlong JNICALL Java_com_github_luben_zstd_Zstd_err##name \
     (JNIEnv *env, jclass obj) { \
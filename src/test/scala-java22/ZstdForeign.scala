@@ -0,0 +1,215 @@
+package com.github.luben.zstd
+
+import org.scalatest.flatspec.AnyFlatSpec
+
+import java.lang.foreign.{Arena, MemorySegment}
+import java.lang.foreign.ValueLayout.JAVA_BYTE
+import java.nio.ByteBuffer
+import scala.util.Using
+
+class ZstdForeignSpec extends AnyFlatSpec {
+
+  def sample(size: Int): Array[Byte] = {
+    val rnd = new scala.util.Random(size)
+    Array.fill(size)(('a' + rnd.nextInt(8)).toByte)
+  }
+
+  val sizes = List(0, 100, ZstdForeignDowncalls.CRITICAL_SIZE.toInt, 1024 * 1024)
+
+  "ZstdForeign" should "be available on Java 22+" in {
+    assert(ZstdForeignDowncalls.AVAILABLE)
+    assert(ZstdForeign.INSTANCE.isInstanceOf[ZstdForeignBackend])
+  }
+
+  for (size <- sizes) {
+    it should s"round-trip byte arrays and direct buffers through the contexts with $size bytes" in {
+      val input = sample(size)
+      Using.Manager { use =>
+        val cctx = use(new ZstdCompressCtx())
+        val dctx = use(new ZstdDecompressCtx())
+        // the byte arrays go through the critical downcalls
+        cctx.setMaxCriticalSize(0)
+        dctx.setMaxCriticalSize(0)
+        val compressed = cctx.compress(input)
+        assert(dctx.decompress(compressed, size).toSeq == input.toSeq)
+
+        val src = ByteBuffer.allocateDirect(size)
+        src.put(input).flip()
+        val dst = ByteBuffer.allocateDirect(Zstd.compressBound(size).toInt)
+        val csize = cctx.compressDirectByteBuffer(dst, 0, dst.capacity(), src, 0, size)
+        assert(csize == compressed.length)
+        val out = ByteBuffer.allocateDirect(size)
+        assert(dctx.decompressDirectByteBuffer(out, 0, size, dst, 0, csize) == size)
+        val result = new Array[Byte](size)
+        out.get(result)
+        assert(result.toSeq == input.toSeq)
+      }.get
+    }
+
+    it should s"round-trip native and heap segments with $size bytes" in {
+      val input = sample(size)
+      Using.Manager { use =>
+        val cctx = use(new ZstdCompressCtx())
+        val dctx = use(new ZstdDecompressCtx())
+        val arena = use(Arena.ofConfined())
+        val nativeSrc = arena.allocate(Math.max(size, 1)).asSlice(0, size).copyFrom(MemorySegment.ofArray(input))
+        val compressed = cctx.compress(nativeSrc, arena)
+        assert(compressed.isNative)
+        val decompressed = dctx.decompress(compressed, size, arena)
+        assert(decompressed.toArray(JAVA_BYTE).toSeq == input.toSeq)
+
+        val heapDst = MemorySegment.ofArray(new Array[Byte](Zstd.compressBound(size).toInt))
+        val csize = cctx.compress(heapDst, MemorySegment.ofArray(input))
+        assert(csize == compressed.byteSize())
+        val heapOut = MemorySegment.ofArray(new Array[Byte](size))
+        assert(dctx.decompress(heapOut, heapDst.asSlice(0, csize)) == size)
+        assert(heapOut.toArray(JAVA_BYTE).toSeq == input.toSeq)
+      }.get
+    }
+  }
+
+  it should "report the errors of the downcalls" in {
+    Using.Manager { use =>
+      val cctx = use(new ZstdCompressCtx())
+      val dctx = use(new ZstdDecompressCtx())
+      val input = sample(1024 * 1024)
+      val small = MemorySegment.ofArray(new Array[Byte](10))
+      assertThrows[ZstdException] {
+        cctx.compress(small, MemorySegment.ofArray(input))
+      }
+      val compressed = MemorySegment.ofArray(cctx.compress(input))
+      assertThrows[ZstdException] {
+        dctx.decompress(MemorySegment.ofArray(new Array[Byte](input.length - 1)), compressed)
+      }
+      // the contexts are still usable
+      val out = MemorySegment.ofArray(new Array[Byte](input.length))
+      assert(dctx.decompress(out, compressed) == input.length)
+    }.get
+  }
+
+  it should "not call a JavaSequenceProducer from a critical downcall" in {
+    Using.Manager { use =>
+      val calls = new java.util.concurrent.atomic.AtomicInteger()
+      // all literals
+      val producer = new JavaSequenceProducer {
+        override def produceSequences(sequences: ByteBuffer, src: ByteBuffer, dict: ByteBuffer, level: Int,
+                                      windowSize: Long): Long = {
+          calls.incrementAndGet()
+          sequences.putInt(0).putInt(src.remaining).putInt(0).putInt(0)
+          1
+        }
+      }
+      val cctx = use(new ZstdCompressCtx()).registerSequenceProducer(producer)
+      assert(!cctx.allowsCriticalCall())
+      val arena = use(Arena.ofConfined())
+      // small enough for the critical downcall, on the heap and in native memory
+      val input = sample(1000)
+      val heapDst = MemorySegment.ofArray(new Array[Byte](Zstd.compressBound(input.length).toInt))
+      val size = cctx.compress(heapDst, MemorySegment.ofArray(input))
+      assert(calls.get == 1)
+      assert(Zstd.decompress(heapDst.asSlice(0, size).toArray(JAVA_BYTE), input.length).toSeq == input.toSeq)
+      val compressed = cctx.compress(arena.allocate(input.length).copyFrom(MemorySegment.ofArray(input)), arena)
+      assert(calls.get == 2)
+      assert(Zstd.decompress(compressed.toArray(JAVA_BYTE), input.length).toSeq == input.toSeq)
+
+      cctx.registerSequenceProducer(null)
+      assert(cctx.allowsCriticalCall())
+    }.get
+  }
+
+  it should "round-trip segments through the JNI fallback" in {
+    val input = sample(100 * 1024)
+    Using.Manager { use =>
+      val cctx = use(new ZstdCompressCtx())
+      val dctx = use(new ZstdDecompressCtx())
+      val confined = use(Arena.ofConfined())
+      val shared = use(Arena.ofShared())
+      for (arena <- Seq(confined, shared, Arena.global(), Arena.ofAuto())) {
+        val src = arena.allocate(input.length).copyFrom(MemorySegment.ofArray(input))
+        val dst = arena.allocate(Zstd.compressBound(input.length))
+        val size = cctx.compressNative(dst, src)
+        val out = arena.allocate(input.length)
+        assert(dctx.decompressNative(out, dst.asSlice(0, size)) == input.length)
+        assert(out.toArray(JAVA_BYTE).toSeq == input.toSeq)
+      }
+      val heapDst = MemorySegment.ofArray(new Array[Byte](Zstd.compressBound(input.length).toInt))
+      val size = cctx.compressNative(heapDst, MemorySegment.ofArray(input))
+      val heapOut = MemorySegment.ofArray(new Array[Byte](input.length))
+      assert(dctx.decompressNative(heapOut, heapDst.asSlice(0, size)) == input.length)
+      assert(heapOut.toArray(JAVA_BYTE).toSeq == input.toSeq)
+    }.get
+  }
+
+  it should "only pass the segments confined to the current thread in place to JNI" in {
+    Using.Manager { use =>
+      val confined = use(Arena.ofConfined())
+      val shared = use(Arena.ofShared())
+      assert(ZstdForeignDowncalls.isConfined(confined.allocate(10)))
+      assert(!ZstdForeignDowncalls.isConfined(shared.allocate(10)))
+      assert(!ZstdForeignDowncalls.isConfined(Arena.global().allocate(10)))
+      assert(!ZstdForeignDowncalls.isConfined(Arena.ofAuto().allocate(10)))
+      assert(!ZstdForeignDowncalls.isConfined(MemorySegment.ofArray(new Array[Byte](10))))
+    }.get
+  }
+
+  it should "reject a read-only destination segment" in {
+    Using.Manager { use =>
+      val cctx = use(new ZstdCompressCtx())
+      val dctx = use(new ZstdDecompressCtx())
+      val input = sample(1000)
+      val compressed = MemorySegment.ofArray(cctx.compress(input))
+      val readOnly = MemorySegment.ofArray(new Array[Byte](Zstd.compressBound(input.length).toInt)).asReadOnly()
+      assertThrows[IllegalArgumentException] {
+        cctx.compress(readOnly, MemorySegment.ofArray(input))
+      }
+      assertThrows[IllegalArgumentException] {
+        dctx.decompress(readOnly, compressed)
+      }
+    }.get
+  }
+
+  it should "reject the segments of a closed arena or of another thread" in {
+    Using.Manager { use =>
+      val cctx = use(new ZstdCompressCtx())
+      val dctx = use(new ZstdDecompressCtx())
+      val input = sample(1000)
+      val compressed = MemorySegment.ofArray(cctx.compress(input))
+      val out = MemorySegment.ofArray(new Array[Byte](input.length))
+
+      val closed = Arena.ofConfined()
+      val src = closed.allocate(input.length).copyFrom(MemorySegment.ofArray(input))
+      val dst = closed.allocate(input.length)
+      closed.close()
+      assertThrows[IllegalStateException] {
+        cctx.compress(MemorySegment.ofArray(new Array[Byte](2000)), src)
+      }
+      assertThrows[IllegalStateException] {
+        cctx.compressNative(MemorySegment.ofArray(new Array[Byte](2000)), src)
+      }
+      assertThrows[IllegalStateException] {
+        dctx.decompress(dst, compressed)
+      }
+      assertThrows[IllegalStateException] {
+        dctx.decompressNative(dst, compressed)
+      }
+
+      val owned = new java.util.concurrent.atomic.AtomicReference[MemorySegment]()
+      val owner = new Thread(() => {
+        val arena = Arena.ofConfined()
+        owned.set(arena.allocate(input.length).copyFrom(MemorySegment.ofArray(input)))
+      })
+      owner.start()
+      owner.join()
+      assertThrows[WrongThreadException] {
+        cctx.compress(MemorySegment.ofArray(new Array[Byte](2000)), owned.get)
+      }
+      assertThrows[WrongThreadException] {
+        cctx.compressNative(MemorySegment.ofArray(new Array[Byte](2000)), owned.get)
+      }
+
+      // the contexts are still usable
+      assert(dctx.decompress(out, compressed) == input.length)
+      assert(out.toArray(JAVA_BYTE).toSeq == input.toSeq)
+    }.get
+  }
+}
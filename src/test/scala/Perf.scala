@@ -211,6 +211,33 @@ class ZstdPerfSpec extends AnyFlatSpec  {
   }
 
 
+  def benchTuned(name: String, input: Array[Byte], level: Int, tune: ZstdCompressCtx => Unit): Unit = {
+    var nsc = new AllocTracker
+    var nsd = new AllocTracker
+    val c_ctx = new ZstdCompressCtx()
+    c_ctx.setLevel(level)
+    tune(c_ctx)
+    val d_ctx = new ZstdDecompressCtx()
+    val compressed: Array[Byte] = Array.fill[Byte](Zstd.compressBound(input.size.toLong).toInt)(0)
+    val output: Array[Byte] = Array.fill[Byte](input.size)(0)
+    var compressedSize = 0;
+
+    for (i <- 1 to cycles) {
+      nsc.timeAndAlloc {
+        compressedSize = c_ctx.compress(compressed, input)
+      }
+      nsd.timeAndAlloc {
+        d_ctx.decompressByteArray(output, 0, output.size, compressed, 0, compressedSize)
+      }
+    }
+
+    report(name, compressedSize, input.size, cycles, nsc, nsd)
+    assert (input.toSeq == output.toSeq)
+    c_ctx.close()
+    d_ctx.close()
+  }
+
+
   def benchStream(name: String, input: Array[Byte], level: Int = 1): Unit = {
     val size  = input.length
 
@@ -323,6 +350,46 @@ class ZstdPerfSpec extends AnyFlatSpec  {
   }
 
 
+  def benchStreamRsyncable(name: String, input: Array[Byte], level: Int = 1): Unit = {
+    // the next snapshot, with a small change near the start
+    val changed = input.take(1000) ++ "inserted text".getBytes ++ input.drop(1000)
+    def compress(data: Array[Byte], rsyncable: Boolean): Array[Byte] = {
+      val os = new ByteArrayOutputStream(Zstd.compressBound(data.length.toLong).toInt)
+      val zos = new ZstdOutputStream(os, level)
+      zos.setWorkers(2)
+      zos.setJobSize(1 << 20)
+      zos.setRsyncable(rsyncable)
+      zos.write(data)
+      zos.close()
+      os.toByteArray
+    }
+    // the compressed bytes shared with the previous snapshot, before and after the change
+    def shared(a: Array[Byte], b: Array[Byte]): Int =
+      a.zip(b).takeWhile(p => p._1 == p._2).length + a.reverseIterator.zip(b.reverseIterator).takeWhile(p => p._1 == p._2).length
+
+    for (rsyncable <- List(false, true)) {
+      val nsc = new AllocTracker
+      var compressed: Array[Byte] = null
+      nsc.timeAndAlloc {
+        for (i <- 1 to cycles) {
+          compressed = compress(input, rsyncable)
+        }
+      }
+      val next = compress(changed, rsyncable)
+      val dedup = shared(compressed, next).toDouble / next.length
+      val speed = cycles.toDouble * input.length / (1024 * 1024) / (nsc.nanos.toDouble / 1000000000L)
+      println(s"""
+      $name${if (rsyncable) " (rsyncable)" else ""}
+      --
+      Compression:        ${speed.toLong} MB/s
+      Compression Ratio:  ${input.length.toDouble / compressed.length}
+      Deduplicated:       ${(dedup * 100).toInt}% of the next snapshot
+      """)
+      assert(Zstd.decompress(next, changed.length).toSeq == changed.toSeq)
+    }
+  }
+
+
   def benchDirectBufferStream(name: String, input: Array[Byte], level: Int = 1): Unit = {
 
     val compressedBuffer = ByteBuffer.allocateDirect(Zstd.compressBound(input.length.toLong).toInt);
@@ -419,11 +486,35 @@ class ZstdPerfSpec extends AnyFlatSpec  {
     }
   }
 
+  // text mixed with already entropy coded parts
+  lazy val mixed = buff.grouped(64 * 1024).zipWithIndex.flatMap { case (chunk, i) =>
+    if (i % 2 == 0) chunk else Zstd.compress(chunk, 19)
+  }.toArray
+
+  for (level <- List(1, 3, 5)) {
+    it should s"be tunable for mixed data at level $level" in {
+      benchTuned(s"Mixed data at $level", mixed, level, _ => ())
+      benchTuned(s"Mixed data at $level with raw literals", mixed, level,
+        _.setLiteralCompressionMode(Zstd.ParamSwitch.DISABLE))
+      benchTuned(s"Mixed data at $level with Huffman literals", mixed, level,
+        _.setLiteralCompressionMode(Zstd.ParamSwitch.ENABLE))
+      benchTuned(s"Mixed data at $level with the strongest block splitting", mixed, level,
+        _.setBlockSplitterLevel(6).setSplitAfterSequences(Zstd.ParamSwitch.ENABLE))
+      benchTuned(s"Mixed data at $level without block splitting", mixed, level,
+        _.setBlockSplitterLevel(1).setSplitAfterSequences(Zstd.ParamSwitch.DISABLE))
+      benchTuned(s"Mixed data at $level with the row match finder", mixed, level,
+        _.setUseRowMatchFinder(Zstd.ParamSwitch.ENABLE))
+      benchTuned(s"Mixed data at $level without the row match finder", mixed, level,
+        _.setUseRowMatchFinder(Zstd.ParamSwitch.DISABLE))
+    }
+  }
+
   for (level <- levels) {
     it should s"be fast with streaming at level $level" in {
         benchStream(s"Streaming at $level", buff, level)
         benchStreamWithBufferPool(s"Streaming with BufferPool at $level", buff, level)
         benchStreamMT(s"Streaming (multi-threaded) at $level", buff, level)
+        benchStreamRsyncable(s"Streaming (multi-threaded) snapshots at $level", buff, level)
         benchDirectBufferStream(s"Streaming at $level to direct ByteBuffers", buff, level)
         benchStreamLDM(s"Streaming at $level with Long Distance Matching", buff, level)
     }
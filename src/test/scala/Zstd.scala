@@ -1549,6 +1549,847 @@ class ZstdSpec extends AnyFlatSpec with ScalaCheckPropertyChecks {
     }.get
   }
 
+  "shared thread pool" should "be used by multiple contexts and streams" in {
+    val file = new File("src/test/resources/xml")
+    val buff = java.nio.file.Files.readAllBytes(file.toPath)
+    val pool = new ZstdThreadPool(2)
+    Using.Manager { use =>
+      val cctx1 = use(new ZstdCompressCtx()).setWorkers(2).setThreadPool(pool)
+      val cctx2 = use(new ZstdCompressCtx()).setWorkers(2).setThreadPool(pool)
+      // setting the same pool again is a no-op, changing it is not allowed
+      cctx1.setThreadPool(pool)
+      val other = use(new ZstdThreadPool(1))
+      assertThrows[IllegalStateException] {
+        cctx1.setThreadPool(other)
+      }
+      for (cctx <- Seq(cctx1, cctx2)) {
+        val compressed = cctx.compress(buff)
+        assert(Zstd.decompress(compressed, buff.length).toSeq == buff.toSeq)
+      }
+
+      val os  = new ByteArrayOutputStream(Zstd.compressBound(file.length).toInt)
+      val zos = new ZstdOutputStream(os).setWorkers(2).setThreadPool(pool)
+      zos.write(buff)
+      zos.close()
+      assert(Zstd.decompress(os.toByteArray, buff.length).toSeq == buff.toSeq)
+
+      // the pool is still referenced by the contexts
+      assertThrows[IllegalStateException] {
+        pool.close()
+      }
+    }.get
+    pool.close()
+  }
+
+  "compression with multiple buffers" should "roundtrip a single frame" in {
+    val buff = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath)
+    Using.Manager { use =>
+      val cctx = use(new ZstdCompressCtx()).setLevel(3).setChecksum(true)
+      val dctx = use(new ZstdDecompressCtx())
+      // split the input over heap and direct buffers of uneven sizes
+      val splits = Seq(0, 1, 1000, 65536, 200000, buff.length)
+      val srcs = splits.zip(splits.tail).zipWithIndex.map { case ((from, to), i) =>
+        if (i % 2 == 0) ByteBuffer.wrap(buff, from, to - from)
+        else ByteBuffer.allocateDirect(to - from).put(buff, from, to - from).flip()
+      }.toArray
+      val dsts = Array.fill((Zstd.compressBound(buff.length) / 65536 + 1).toInt)(ByteBuffer.allocateDirect(65536))
+      val compressedSize = cctx.compressByteBuffers(dsts, srcs)
+      assert(srcs.forall(!_.hasRemaining))
+      assert(dsts.map(_.position().toLong).sum == compressedSize)
+
+      val compressed = ByteBuffer.allocate(compressedSize.toInt)
+      dsts.foreach(dst => compressed.put(dst.flip().duplicate()))
+      assert(Zstd.getFrameContentSize(compressed.array()) == buff.length)
+      assert(Zstd.decompress(compressed.array(), buff.length).toSeq == buff.toSeq)
+
+      // decompress the chunks into small destination buffers
+      val outs = Array.fill(buff.length / 10000 + 1)(ByteBuffer.allocateDirect(10000))
+      assert(dctx.decompressByteBuffers(outs, dsts.map(_.duplicate())) == buff.length)
+      val decompressed = ByteBuffer.allocate(buff.length)
+      outs.foreach(out => decompressed.put(out.flip()))
+      assert(decompressed.array().toSeq == buff.toSeq)
+
+      // from and to heap buffers too, larger than the staging buffers
+      val heapOuts = Seq(ByteBuffer.allocateDirect(1000), ByteBuffer.allocate(300000), ByteBuffer.allocate(buff.length))
+      val heapSrcs = Seq(dsts(0).duplicate(), ByteBuffer.wrap(compressed.array(), dsts(0).limit(), compressed.limit() - dsts(0).limit()))
+      assert(dctx.decompressByteBuffers(heapOuts.toArray, heapSrcs.toArray) == buff.length)
+      assert(heapSrcs.forall(!_.hasRemaining))
+      val fromHeap = ByteBuffer.allocate(buff.length)
+      heapOuts.foreach(out => fromHeap.put(out.flip()))
+      assert(fromHeap.array().toSeq == buff.toSeq)
+      assertThrows[IllegalArgumentException] {
+        dctx.decompressByteBuffers(Array(ByteBuffer.allocate(100).asReadOnlyBuffer()), Array(ByteBuffer.wrap(compressed.array())))
+      }
+
+      // too small destinations and truncated sources are reported, the contexts can be used again
+      assertThrows[ZstdException] {
+        cctx.compressByteBuffers(Array(ByteBuffer.allocate(16)), Array(ByteBuffer.wrap(buff)))
+      }
+      assert(cctx.compressByteBuffers(Array(ByteBuffer.allocate(compressed.limit())), Array(ByteBuffer.wrap(buff))) == compressedSize)
+      assertThrows[ZstdException] {
+        dctx.decompressByteBuffers(Array(ByteBuffer.allocateDirect(100)), Array(ByteBuffer.wrap(compressed.array())))
+      }
+      assertThrows[ZstdException] {
+        dctx.decompressByteBuffers(Array(ByteBuffer.allocate(buff.length)), Array(ByteBuffer.wrap(compressed.array(), 0, 100)))
+      }
+      val out = ByteBuffer.allocate(buff.length)
+      assert(dctx.decompressByteBuffers(Array(out), Array(ByteBuffer.wrap(compressed.array()))) == buff.length)
+      assert(out.array().toSeq == buff.toSeq)
+    }.get
+  }
+
+  "contexts with max critical size" should "roundtrip byte arrays through staging buffers" in {
+    Using.Manager { use =>
+      val cctx = use(new ZstdCompressCtx()).setLevel(3).setChecksum(true).setMaxCriticalSize(1000)
+      val dctx = use(new ZstdDecompressCtx()).setMaxCriticalSize(1000)
+      forAll { input: Array[Byte] =>
+        {
+          val compressed = cctx.compress(input)
+          assert(Zstd.getFrameContentSize(compressed) == input.length)
+          assert(Zstd.decompress(compressed, input.length).toSeq == input.toSeq)
+          assert(dctx.decompress(cctx.compress(input), input.length).toSeq == input.toSeq)
+          // all frames are decompressed, like in one shot
+          val twice = compressed ++ compressed
+          assert(dctx.decompress(twice, 2 * input.length).toSeq == (input ++ input).toSeq)
+        }
+      }
+      val buff = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath)
+      val compressed = cctx.compress(buff)
+      assertThrows[ZstdException] {
+        dctx.decompress(compressed, buff.length - 1)
+      }
+      assertThrows[ZstdException] {
+        dctx.decompress(compressed.take(compressed.length - 1), buff.length)
+      }
+      assertThrows[ZstdException] {
+        cctx.compressByteArray(new Array[Byte](100), 0, 100, buff, 0, buff.length)
+      }
+      // the context is still usable after the errors
+      assert(dctx.decompress(cctx.compress(buff), buff.length).toSeq == buff.toSeq)
+
+      // reset restores the default and drops the staging buffers
+      def field(ctx: AnyRef, name: String): Any = {
+        val f = ctx.getClass.getDeclaredField(name)
+        f.setAccessible(true)
+        f.get(ctx)
+      }
+      for (ctx <- Seq(cctx, dctx)) {
+        assert(field(ctx, "staging_in") != null)
+      }
+      cctx.reset()
+      dctx.reset()
+      for (ctx <- Seq(cctx, dctx)) {
+        assert(field(ctx, "max_critical_size") == Zstd.MAX_CRITICAL_SIZE)
+        assert(field(ctx, "staging_in") == null)
+        assert(field(ctx, "staging_out") == null)
+      }
+      assert(dctx.decompress(cctx.compress(buff), buff.length).toSeq == buff.toSeq)
+    }.get
+  }
+
+  "compression of native memory" should "roundtrip with contexts" in {
+    val field = classOf[sun.misc.Unsafe].getDeclaredField("theUnsafe")
+    field.setAccessible(true)
+    val unsafe = field.get(null).asInstanceOf[sun.misc.Unsafe]
+    val buff = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath)
+    val bound = Zstd.compressBound(buff.length)
+    val src = unsafe.allocateMemory(buff.length)
+    val dst = unsafe.allocateMemory(bound)
+    val out = unsafe.allocateMemory(buff.length)
+    try {
+      for (i <- buff.indices) unsafe.putByte(src + i, buff(i))
+      Using.Manager { use =>
+        val cctx = use(new ZstdCompressCtx()).setLevel(6).setChecksum(true)
+        val dctx = use(new ZstdDecompressCtx())
+        val size = cctx.compressUnsafe(dst, bound, src, buff.length)
+        assert(size > 0 && size < buff.length)
+        assert(dctx.decompressUnsafe(out, buff.length, dst, size) == buff.length)
+        assert(buff.indices.forall(i => unsafe.getByte(out + i) == buff(i)))
+        assertThrows[ZstdException] {
+          dctx.decompressUnsafe(out, buff.length - 1, dst, size)
+        }
+        assertThrows[IllegalArgumentException] {
+          cctx.compressUnsafe(dst, bound, src, -1)
+        }
+      }.get
+    } finally {
+      unsafe.freeMemory(src)
+      unsafe.freeMemory(dst)
+      unsafe.freeMemory(out)
+    }
+  }
+
+  "contexts with prefix" should "delta compress against the previous version" in {
+    Using.Manager { use =>
+      val previous = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath).take(500000)
+      val current = previous.take(200000) ++ "inserted text".getBytes ++ previous.drop(200000)
+      val cctx = use(new ZstdCompressCtx()).setLevel(3).setChecksum(true)
+      val dctx = use(new ZstdDecompressCtx())
+      val plain = cctx.compress(current)
+
+      val delta = cctx.refPrefix(previous).compress(current)
+      assert(delta.length < plain.length / 20)
+      assert(dctx.refPrefix(previous).decompress(delta, current.length).toSeq == current.toSeq)
+
+      // direct buffer prefix, with a position
+      val prefix = ByteBuffer.allocateDirect(previous.length + 10)
+      prefix.position(10)
+      prefix.put(previous)
+      prefix.position(10)
+      val delta2 = cctx.refPrefix(prefix).compress(current)
+      assert(delta2.toSeq == delta.toSeq)
+      assert(dctx.refPrefix(prefix).decompress(delta2, current.length).toSeq == current.toSeq)
+
+      // the prefix is used only for the next frame
+      val next = cctx.compress(current)
+      assert(next.toSeq == plain.toSeq)
+      assert(dctx.decompress(next, current.length).toSeq == current.toSeq)
+      assertThrows[ZstdException] {
+        dctx.decompress(delta, current.length)
+      }
+      assertThrows[IllegalArgumentException] {
+        cctx.refPrefix(ByteBuffer.allocate(10))
+      }
+    }.get
+  }
+
+  "ZstdPatch" should "create and apply patches between large files" in {
+    Using.Manager { use =>
+      val rnd = new scala.util.Random(42)
+      val previous = new Array[Byte](16 << 20)
+      rnd.nextBytes(previous)
+      val current = previous.take(1000) ++ "inserted text".getBytes ++ previous.slice(1000, 10 << 20) ++ previous.drop(12 << 20)
+
+      val files = Seq.fill(4)(java.nio.file.Files.createTempFile("zstd-patch", ".bin"))
+      val Seq(referenceFile, targetFile, patchFile, resultFile) = files
+      try {
+        java.nio.file.Files.write(referenceFile, previous)
+        java.nio.file.Files.write(targetFile, current)
+        ZstdPatch.create(referenceFile, targetFile, patchFile, 3)
+        assert(java.nio.file.Files.size(patchFile) < current.length / 1000)
+        ZstdPatch.apply(referenceFile, patchFile, resultFile)
+        assert(java.nio.file.Files.readAllBytes(resultFile).toSeq == current.toSeq)
+      } finally {
+        files.foreach(java.nio.file.Files.deleteIfExists)
+      }
+
+      // the same with buffers, the window covers the whole reference
+      val reference = ByteBuffer.allocateDirect(previous.length)
+      reference.put(previous).flip()
+      val src = ByteBuffer.allocateDirect(current.length)
+      src.put(current).flip()
+      val patch = ByteBuffer.allocateDirect(Zstd.compressBound(current.length).toInt)
+      val cctx = use(new ZstdCompressCtx()).setLevel(3)
+      val size = ZstdPatch.create(cctx, reference, src, patch)
+      assert(size < current.length / 1000)
+      assert(reference.remaining == previous.length)
+      patch.flip()
+      val dst = ByteBuffer.allocateDirect(current.length)
+      val dctx = use(new ZstdDecompressCtx())
+      assert(ZstdPatch.apply(dctx, reference, patch, dst) == current.length)
+      dst.flip()
+      val result = new Array[Byte](current.length)
+      dst.get(result)
+      assert(result.toSeq == current.toSeq)
+
+      // a heap reference is rejected before changing the parameters
+      val checked = use(new ZstdCompressCtx()).setLevel(19)
+      assertThrows[IllegalArgumentException] {
+        checked.refPatchFrom(ByteBuffer.wrap(previous), current.length)
+      }
+      assert(checked.getParameters.getWindowLog == 0 && checked.getParameters.getTargetLength == 0)
+      // the optimal parsers use the max target length
+      assert(checked.refPatchFrom(reference, current.length) == 25)
+      assert(checked.getParameters.getWindowLog == 25)
+      assert(checked.getParameters.getTargetLength == Zstd.blockSizeMax)
+    }.get
+  }
+
+  "compressibility probe" should "detect incompressible data" in {
+    Using.Manager { use =>
+      val text = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath).take(1 << 20)
+      val random = new Array[Byte](1 << 20)
+      new scala.util.Random(42).nextBytes(random)
+
+      val probe = new ZstdCompressibilityProbe()
+      assert(probe.estimateRatio(random, 0, random.length) < 1.03)
+      assert(probe.decide(random, 0, random.length) == ZstdCompressibilityProbe.Action.STORE)
+      assert(probe.estimateRatio(text, 0, text.length) > 1.1)
+      assert(probe.decide(text, 0, text.length) == ZstdCompressibilityProbe.Action.COMPRESS)
+      assert(probe.estimateRatio(random, 0, 0).isPosInfinity)
+      val direct = ByteBuffer.allocateDirect(random.length)
+      direct.put(random).flip()
+      assert(probe.decide(direct) == ZstdCompressibilityProbe.Action.STORE)
+      assert(direct.remaining == random.length)
+      assertThrows[IllegalArgumentException] {
+        probe.decide(ByteBuffer.wrap(random))
+      }
+      assertThrows[IllegalArgumentException] {
+        new ZstdCompressibilityProbe(1.5, 1.1)
+      }
+
+      // the probe doesn't change the compression of compressible data
+      val cctx = use(new ZstdCompressCtx()).setLevel(19)
+      val plain = cctx.compress(text)
+      cctx.setCompressibilityProbe(probe)
+      assert(cctx.compress(text).toSeq == plain.toSeq)
+      val stored = cctx.compress(random)
+      assert(stored.length < random.length + 100)
+      assert(Zstd.decompress(stored, random.length).toSeq == random.toSeq)
+      // and the configured level is kept
+      assert(cctx.compress(text).toSeq == plain.toSeq)
+      // reset removes the probe
+      cctx.reset()
+      val probeField = classOf[ZstdCompressCtx].getDeclaredField("probe")
+      probeField.setAccessible(true)
+      assert(probeField.get(cctx) == null)
+
+      val os = new ByteArrayOutputStream()
+      val zos = new ZstdOutputStream(os, 19).setCompressibilityProbe(probe)
+      zos.write(random)
+      zos.flush()
+      zos.write(text)
+      zos.close()
+      assert(Zstd.decompress(os.toByteArray, random.length + text.length).toSeq == (random ++ text).toSeq)
+    }.get
+  }
+
+  "sequence compression" should "roundtrip generated and external sequences" in {
+    Using.Manager { use =>
+      val text = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath).take(1 << 20)
+      val cctx = use(new ZstdCompressCtx()).setLevel(3)
+
+      // zstd's own sequences, with the block delimiters
+      val generated = cctx.generateSequences(text)
+      assert(generated.length / 4 <= Zstd.sequenceBound(text.length))
+      assert(generated.grouped(4).map(seq => seq(1) + seq(2)).sum == text.length)
+      cctx.setBlockDelimiters(true)
+      val compressed = cctx.compressSequences(generated, text)
+      assert(Zstd.decompress(compressed, text.length).toSeq == text.toSeq)
+      assert(compressed.length < cctx.compress(text).length * 1.1)
+
+      val merged = generated.clone()
+      val nbMerged = Zstd.mergeBlockDelimiters(merged, merged.length / 4)
+      assert(nbMerged < generated.length / 4)
+      cctx.setBlockDelimiters(false)
+      val fromMerged = cctx.compressSequences(merged.take(nbMerged * 4), text)
+      assert(Zstd.decompress(fromMerged, text.length).toSeq == text.toSeq)
+
+      // sequences found outside of zstd: one record repeated
+      val record = new Array[Byte](1000)
+      new scala.util.Random(42).nextBytes(record)
+      val records = Array.fill(100)(record).flatten
+      val external = Array(record.length, record.length, records.length - record.length, 0)
+      val dedup = cctx.compressSequences(external, records)
+      assert(dedup.length < 2 * record.length)
+      assert(Zstd.decompress(dedup, records.length).toSeq == records.toSeq)
+
+      // with direct buffers
+      val sequences = ByteBuffer.allocateDirect(external.length * 4).order(ByteOrder.nativeOrder())
+      sequences.asIntBuffer().put(external)
+      val src = ByteBuffer.allocateDirect(records.length)
+      src.put(records).flip()
+      val dst = ByteBuffer.allocateDirect(Zstd.compressBound(records.length).toInt)
+      assert(cctx.compressSequences(dst, sequences, src) == dedup.length)
+      assert(dst.position() == dedup.length && !sequences.hasRemaining && !src.hasRemaining)
+      dst.flip()
+      val result = new Array[Byte](dedup.length)
+      dst.get(result)
+      assert(result.toSeq == dedup.toSeq)
+
+      src.rewind()
+      val out = ByteBuffer.allocateDirect((Zstd.sequenceBound(records.length) * 16).toInt).order(ByteOrder.nativeOrder())
+      val count = cctx.generateSequences(out, src)
+      assert(out.position() == count * 16)
+      assertThrows[IllegalArgumentException] {
+        cctx.compressSequences(dst, ByteBuffer.allocateDirect(16).order(ByteOrder.BIG_ENDIAN), src)
+      }
+
+      // the natives reject heap buffers, whose capacity is reported as -1
+      val generate = classOf[ZstdCompressCtx].getDeclaredMethod("generateSequencesDirect0", classOf[Long],
+        classOf[ByteBuffer], classOf[Int], classOf[Int], classOf[ByteBuffer], classOf[Int], classOf[Int])
+      generate.setAccessible(true)
+      val compress = classOf[ZstdCompressCtx].getDeclaredMethod("compressSequencesDirect0", classOf[Long],
+        classOf[ByteBuffer], classOf[Int], classOf[Int], classOf[ByteBuffer], classOf[Int], classOf[Int],
+        classOf[ByteBuffer], classOf[Int], classOf[Int], classOf[Boolean])
+      compress.setAccessible(true)
+      val heap = ByteBuffer.allocate(16)
+      src.rewind()
+      dst.clear()
+      assert(Zstd.isError(generate.invoke(null, Long.box(cctx.getNativePtr), heap, Int.box(0), Int.box(1),
+        src, Int.box(0), Int.box(records.length)).asInstanceOf[Long]))
+      assert(Zstd.isError(compress.invoke(null, Long.box(cctx.getNativePtr), dst, Int.box(0), Int.box(dst.capacity),
+        heap, Int.box(0), Int.box(1), src, Int.box(0), Int.box(records.length), Boolean.box(true)).asInstanceOf[Long]))
+      assert(Zstd.isError(compress.invoke(null, Long.box(cctx.getNativePtr), dst, Int.box(0), Int.box(dst.capacity),
+        sequences, Int.box(0), Int.box(1), ByteBuffer.wrap(records), Int.box(0), Int.box(records.length), Boolean.box(true)).asInstanceOf[Long]))
+
+      // invalid sequences are rejected
+      val invalid = Array(2 * record.length, record.length, 100, 0)
+      assertThrows[ZstdException] {
+        cctx.compressSequences(invalid, records)
+      }
+    }.get
+  }
+
+  "JavaSequenceProducer" should "produce the sequences in Java" in {
+    Using.Manager { use =>
+      val record = new Array[Byte](1000)
+      new scala.util.Random(42).nextBytes(record)
+      val records = Array.fill(1000)(record).flatten
+
+      // finds the repetitions of the records in each block
+      val calls = new java.util.concurrent.atomic.AtomicInteger()
+      @volatile var failure: Option[RuntimeException] = None
+      @volatile var corrupt = false
+      @volatile var error = false
+      val producer = new JavaSequenceProducer {
+        override def produceSequences(sequences: ByteBuffer, src: ByteBuffer, dict: ByteBuffer, level: Int,
+                                      windowSize: Long): Long = {
+          calls.incrementAndGet()
+          failure.foreach(e => throw e)
+          if (error) {
+            return JavaSequenceProducer.ERROR
+          }
+          val period = record.length
+          val size = src.remaining
+          val repeated = size > period + 3 && (period until size).forall(i => src.get(i) == src.get(i - period))
+          if (repeated) {
+            sequences.putInt(if (corrupt) 1 << 24 else period).putInt(period).putInt(size - period).putInt(0)
+          } else {
+            sequences.putInt(0).putInt(size).putInt(0).putInt(0)
+          }
+          1
+        }
+      }
+      val cctx = use(new ZstdCompressCtx()).setLevel(3).registerSequenceProducer(producer)
+
+      val compressed = cctx.compress(records)
+      assert(calls.get >= (records.length + (128 << 10) - 1) / (128 << 10))
+      assert(compressed.length < records.length / 50)
+      assert(Zstd.decompress(compressed, records.length).toSeq == records.toSeq)
+
+      // blocks without repetitions are literals
+      val random = new Array[Byte](300 * 1000)
+      new scala.util.Random(43).nextBytes(random)
+      assert(Zstd.decompress(cctx.compress(random), random.length).toSeq == random.toSeq)
+
+      // direct buffers and streaming
+      val src = ByteBuffer.allocateDirect(records.length)
+      src.put(records).flip()
+      val dst = cctx.compress(src)
+      assert(dst.remaining < records.length / 20)
+      val decompressed = ByteBuffer.allocateDirect(records.length)
+      Zstd.decompress(decompressed, dst)
+      decompressed.flip()
+      assert(decompressed == ByteBuffer.wrap(records))
+      assertThrows[IllegalArgumentException] {
+        cctx.compressByteBufferStream(ByteBuffer.allocate(1000), ByteBuffer.allocateDirect(1000), EndDirective.END)
+      }
+      assertThrows[IllegalStateException] {
+        cctx.generateSequences(records)
+      }
+
+      // exceptions are rethrown
+      failure = Some(new IllegalStateException("match finder failed"))
+      val thrown = intercept[IllegalStateException] {
+        cctx.compress(records)
+      }
+      assert(thrown.getMessage == "match finder failed")
+      cctx.setSequenceProducerFallback(true)
+      assertThrows[IllegalStateException] {
+        cctx.compress(records)
+      }
+      failure = None
+
+      // errors fall back to the internal match finder
+      error = true
+      assert(Zstd.decompress(cctx.compress(records), records.length).toSeq == records.toSeq)
+      cctx.setSequenceProducerFallback(false)
+      assertThrows[ZstdException] {
+        cctx.compress(records)
+      }
+      error = false
+
+      // compressSequences keeps the validation of the producer
+      val external = Array(record.length, record.length, records.length - record.length, 0)
+      assert(Zstd.decompress(cctx.compressSequences(external, records), records.length).toSeq == records.toSeq)
+
+      // offsets outside of the window are rejected
+      corrupt = true
+      assertThrows[ZstdException] {
+        cctx.compress(records)
+      }
+      corrupt = false
+      assert(cctx.compress(records).toSeq == compressed.toSeq)
+
+      cctx.registerSequenceProducer(null)
+      assert(Zstd.decompress(cctx.compress(records), records.length).toSeq == records.toSeq)
+
+      // reset removes the producer, also on the Java side
+      cctx.registerSequenceProducer(producer)
+      assert(!cctx.allowsCriticalCall())
+      cctx.reset()
+      assert(cctx.allowsCriticalCall())
+      val before = calls.get
+      assert(Zstd.decompress(cctx.compress(records), records.length).toSeq == records.toSeq)
+      assert(calls.get == before)
+      // and the generation of sequences is available again
+      assert(cctx.generateSequences(records).length > 0)
+    }.get
+  }
+
+  "ZstdAdaptiveOutputStream" should "adapt the level to the bottleneck" in {
+    val input = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath).take(4 << 20)
+    // a slow network
+    val slow = new ByteArrayOutputStream() {
+      override def write(b: Array[Byte], off: Int, len: Int): Unit = {
+        Thread.sleep(10)
+        super.write(b, off, len)
+      }
+    }
+    val raising = new ZstdAdaptiveOutputStream(slow, 1, 1, 6, 0).setUpdateInterval(256 * 1024)
+    input.grouped(64 * 1024).foreach(raising.write)
+    assert(raising.getLevel > 1)
+    raising.close()
+    assert(Zstd.decompress(slow.toByteArray, input.length).toSeq == input.toSeq)
+
+    for (workers <- List(0, 2)) {
+      val fast = new ByteArrayOutputStream()
+      val lowering = new ZstdAdaptiveOutputStream(fast, 19, 1, 19, workers).setUpdateInterval(256 * 1024)
+      lowering.write(input)
+      assert(lowering.getLevel < 19)
+      lowering.close()
+      assert(Zstd.decompress(fast.toByteArray, input.length).toSeq == input.toSeq)
+    }
+
+    // the interval lowered in the middle of the stream
+    val output = new ByteArrayOutputStream()
+    val lowered = new ZstdAdaptiveOutputStream(output, 3, 1, 6, 0).setUpdateInterval(256 * 1024)
+    lowered.write(input, 0, 100000)
+    lowered.setUpdateInterval(1000)
+    lowered.write(input, 100000, input.length - 100000)
+    lowered.close()
+    assert(Zstd.decompress(output.toByteArray, input.length).toSeq == input.toSeq)
+
+    assertThrows[IllegalArgumentException] {
+      new ZstdAdaptiveOutputStream(new ByteArrayOutputStream(), 10, 1, 6, 0)
+    }
+  }
+
+  "literal and block splitter controls" should "roundtrip mixed data" in {
+    Using.Manager { use =>
+      val text = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath).take(1 << 20)
+      // already entropy coded parts mixed with text
+      val input = text.grouped(64 * 1024).flatMap(chunk => chunk ++ Zstd.compress(chunk.reverse, 19)).toArray
+      val cctx = use(new ZstdCompressCtx()).setLevel(3)
+      val default = cctx.compress(input)
+      val raw = cctx.setLiteralCompressionMode(Zstd.ParamSwitch.DISABLE).compress(input)
+      assert(raw.length > default.length)
+      assert(Zstd.decompress(raw, input.length).toSeq == input.toSeq)
+      cctx.setLiteralCompressionMode(Zstd.ParamSwitch.AUTO)
+        .setBlockSplitterLevel(6)
+        .setSplitAfterSequences(Zstd.ParamSwitch.ENABLE)
+      val split = cctx.compress(input)
+      assert(split.length < raw.length)
+      assert(Zstd.decompress(split, input.length).toSeq == input.toSeq)
+      for (rowMatchFinder <- Zstd.ParamSwitch.values) {
+        cctx.setLevel(5).setUseRowMatchFinder(rowMatchFinder)
+        assert(Zstd.decompress(cctx.compress(input), input.length).toSeq == input.toSeq)
+      }
+      assertThrows[ZstdException] {
+        cctx.setBlockSplitterLevel(7)
+      }
+    }.get
+  }
+
+  "compression parameters" should "be derived, validated, applied and read back" in {
+    Using.Manager { use =>
+      import ZstdCompressionParameters.Parameter
+      val input = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath).take(100000)
+      val level19 = ZstdCompressionParameters.forLevel(19)
+      assert(level19 == ZstdCompressionParameters.forLevel(19, 0, 0))
+      assert(level19.hashCode == ZstdCompressionParameters.forLevel(19).hashCode)
+      assert(level19 != ZstdCompressionParameters.forLevel(3))
+      // smaller inputs get smaller tables
+      val small = ZstdCompressionParameters.forLevel(19, input.length, 0)
+      assert(small.getWindowLog < level19.getWindowLog)
+      assert(Parameter.WINDOW_LOG.getLowerBound == 10)
+      assert(Parameter.STRATEGY.getUpperBound == 9)
+      assert(small.get(Parameter.STRATEGY) == small.getStrategy)
+
+      val cctx = use(new ZstdCompressCtx())
+      val unset = new ZstdCompressionParameters.Builder().build()
+      assert(cctx.getParameters == unset)
+      val params = small.withWindowLog(15).withStrategy(5).validate()
+      assert(cctx.setParameters(params).getParameters == params)
+      val built = new ZstdCompressionParameters.Builder().setWindowLog(15).setHashLog(small.getHashLog)
+        .setChainLog(small.getChainLog).setSearchLog(small.getSearchLog).setMinMatch(small.getMinMatch)
+        .setTargetLength(small.getTargetLength).setStrategy(5).build()
+      assert(built == params)
+      assert(built.get(Parameter.HASH_LOG) == small.getHashLog && built.get(Parameter.CHAIN_LOG) == small.getChainLog)
+      val compressed = cctx.compress(input)
+      assert(Zstd.decompress(compressed, input.length).toSeq == input.toSeq)
+
+      val invalid = params.withHashLog(40)
+      assertThrows[IllegalArgumentException] {
+        invalid.validate()
+      }
+      assertThrows[ZstdException] {
+        cctx.setParameters(invalid)
+      }
+      // nothing applied
+      assert(cctx.getParameters == params)
+      // unset parameters are not valid
+      assertThrows[ZstdException] {
+        cctx.setParameters(unset)
+      }
+    }.get
+  }
+
+  "streams with pledged size" should "write the content size and check it" in {
+    Using.Manager { use =>
+      val input = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath).take(100000)
+      val os = new ByteArrayOutputStream()
+      val zos = use(new ZstdOutputStream(os).setPledgedSrcSize(input.length).setCloseFrameOnFlush(true))
+      zos.write(input)
+      zos.flush()
+      val first = os.toByteArray
+      assert(Zstd.getFrameContentSize(first) == input.length)
+      assert(Zstd.decompress(first, input.length).toSeq == input.toSeq)
+      // the pledge was only for the first frame
+      zos.write(input, 0, 1000)
+      zos.close()
+      val second = os.toByteArray.drop(first.length)
+      assert(Zstd.getFrameContentSize(second) <= 0)
+
+      val zos2 = use(new ZstdOutputStream(new ByteArrayOutputStream()).setPledgedSrcSize(input.length))
+      zos2.write(input, 0, 1000)
+      assertThrows[ZstdIOException] {
+        zos2.close()
+      }
+      assertThrows[IllegalArgumentException] {
+        new ZstdOutputStream(new ByteArrayOutputStream()).setPledgedSrcSize(-1)
+      }
+    }.get
+  }
+
+  it should "choose smaller windows with a size hint" in {
+    Using.Manager { use =>
+      val input = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath).take(5000)
+      // the window descriptor follows the magic number and the frame header descriptor
+      def windowLog(frame: Array[Byte]): Int = 10 + ((frame(5) & 0xFF) >> 3)
+      def compress(hint: Int): Array[Byte] = {
+        val os = new ByteArrayOutputStream()
+        val zos = new ZstdOutputStream(os).setLevel(3).setSrcSizeHint(hint)
+        zos.write(input)
+        zos.close()
+        os.toByteArray
+      }
+      val unknown = compress(0)
+      val hinted = compress(input.length)
+      assert(windowLog(hinted) < windowLog(unknown))
+      assert(Zstd.decompress(hinted, input.length).toSeq == input.toSeq)
+
+      val cctx = use(new ZstdCompressCtx()).setLevel(3).setSrcSizeHint(input.length)
+      val dst = ByteBuffer.allocateDirect(Zstd.compressBound(input.length).toInt)
+      val src = ByteBuffer.allocateDirect(input.length)
+      src.put(input).flip()
+      // starting with END would pledge the whole input
+      cctx.compressDirectByteBufferStream(dst, src, EndDirective.CONTINUE)
+      while (!cctx.compressDirectByteBufferStream(dst, src, EndDirective.END)) {}
+      dst.flip()
+      val compressed = new Array[Byte](dst.remaining)
+      dst.get(compressed)
+      assert(windowLog(compressed) < windowLog(unknown))
+    }.get
+  }
+
+  "rsyncable compression" should "keep most of the output after a local change" in {
+    Using.Manager { use =>
+      val input = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath)
+      val changed = input.take(1000) ++ "inserted text".getBytes ++ input.drop(1000)
+      // compressed bytes shared with the previous version, before and after the change
+      def shared(a: Array[Byte], b: Array[Byte]): Int =
+        a.zip(b).takeWhile(p => p._1 == p._2).length + a.reverseIterator.zip(b.reverseIterator).takeWhile(p => p._1 == p._2).length
+
+      val cctx = use(new ZstdCompressCtx()).setLevel(3).setWorkers(2).setJobSize(1 << 20)
+      val plain = shared(cctx.compress(input), cctx.compress(changed))
+      cctx.setRsyncable(true)
+      val compressed = cctx.compress(input)
+      val compressedChanged = cctx.compress(changed)
+      val rsyncable = shared(compressed, compressedChanged)
+      assert(rsyncable > compressed.length / 3)
+      assert(rsyncable > plain * 2)
+      assert(Zstd.decompress(compressedChanged, changed.length).toSeq == changed.toSeq)
+
+      val os = new ByteArrayOutputStream()
+      val zos = use(new ZstdOutputStream(os).setLevel(3).setWorkers(2).setJobSize(1 << 20).setRsyncable(true))
+      zos.write(changed)
+      zos.close()
+      assert(shared(compressed, os.toByteArray) > compressed.length / 3)
+      assert(Zstd.decompress(os.toByteArray, changed.length).toSeq == changed.toSeq)
+    }.get
+  }
+
+  "stable buffers" should "stream directly from and into the caller buffers" in {
+    Using.Manager { use =>
+      val input = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath)
+      val src = ByteBuffer.allocateDirect(input.length)
+      src.put(input).flip()
+      val dst = ByteBuffer.allocateDirect(Zstd.compressBound(input.length).toInt)
+      val cctx = use(new ZstdCompressCtx()).setLevel(3).setStableInBuffer(true).setStableOutBuffer(true)
+      // the limit of the input grows, like data arriving in the buffer
+      var limit = 0
+      var done = false
+      while (!done) {
+        limit = Math.min(limit + 100000, input.length)
+        src.limit(limit)
+        val end = limit == input.length
+        done = cctx.compressDirectByteBufferStream(dst, src, if (end) EndDirective.END else EndDirective.CONTINUE) && end
+      }
+      dst.flip()
+      val compressed = new Array[Byte](dst.remaining)
+      dst.duplicate().get(compressed)
+      assert(Zstd.decompress(compressed, input.length).toSeq == input.toSeq)
+
+      val dctx = use(new ZstdDecompressCtx()).setStableOutBuffer(true)
+      val out = ByteBuffer.allocateDirect(input.length)
+      done = false
+      limit = 0
+      while (!done) {
+        limit = Math.min(limit + 10000, compressed.length)
+        dst.limit(limit)
+        done = dctx.decompressDirectByteBufferStream(out, dst)
+      }
+      out.flip()
+      val result = new Array[Byte](out.remaining)
+      out.get(result)
+      assert(result.toSeq == input.toSeq)
+
+      // consuming the output in the middle of the frame breaks the guarantee
+      src.clear()
+      val small = ByteBuffer.allocateDirect(dst.capacity)
+      src.limit(100000)
+      cctx.compressDirectByteBufferStream(small, src, EndDirective.FLUSH)
+      small.clear()
+      src.limit(input.length)
+      assertThrows[ZstdException] {
+        cctx.compressDirectByteBufferStream(small, src, EndDirective.END)
+      }
+    }.get
+  }
+
+  it should "not stage the byte arrays" in {
+    Using.Manager { use =>
+      val input = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath)
+      for ((in, out) <- Seq((true, false), (false, true), (true, true))) {
+        val cctx = use(new ZstdCompressCtx()).setLevel(3).setMaxCriticalSize(1000)
+          .setStableInBuffer(in).setStableOutBuffer(out)
+        val dctx = use(new ZstdDecompressCtx()).setMaxCriticalSize(1000).setStableOutBuffer(out)
+        val compressed = cctx.compress(input)
+        assert(dctx.decompress(compressed, input.length).toSeq == input.toSeq)
+      }
+      // the staging is required by a JavaSequenceProducer
+      val producer = new JavaSequenceProducer {
+        override def produceSequences(sequences: ByteBuffer, src: ByteBuffer, dict: ByteBuffer, level: Int,
+                                      windowSize: Long): Long = {
+          sequences.putInt(0).putInt(src.remaining).putInt(0).putInt(0)
+          1
+        }
+      }
+      val cctx = use(new ZstdCompressCtx()).registerSequenceProducer(producer).setStableInBuffer(true)
+      assertThrows[IllegalStateException] {
+        cctx.compress(input)
+      }
+      cctx.setStableInBuffer(false)
+      assert(Zstd.decompress(cctx.compress(input), input.length).toSeq == input.toSeq)
+    }.get
+  }
+
+  "target compressed block size" should "split the output in smaller blocks and roundtrip" in {
+    Using.Manager { use =>
+      val input = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath).take(1 << 20)
+      val plain = use(new ZstdCompressCtx()).setLevel(3).compress(input)
+      val cctx = use(new ZstdCompressCtx()).setLevel(3).setTargetCBlockSize(2048)
+      val small = cctx.compress(input)
+      // each block has its own header and entropy tables
+      assert(small.length > plain.length)
+      assert(Zstd.decompress(small, input.length).toSeq == input.toSeq)
+      assertThrows[ZstdException] {
+        cctx.setTargetCBlockSize(1 << 20)
+      }
+
+      val os = new ByteArrayOutputStream()
+      val zos = use(new ZstdOutputStream(os).setLevel(3).setTargetCBlockSize(2048))
+      zos.write(input)
+      zos.close()
+      assert(Zstd.decompress(os.toByteArray, input.length).toSeq == input.toSeq)
+    }.get
+  }
+
+  "flush policy" should "flush the streams after the pending bytes limit" in {
+    Using.Manager { use =>
+      val input = java.nio.file.Files.readAllBytes(new File("src/test/resources/xml").toPath).take(10000)
+      val os = new ByteArrayOutputStream()
+      val zos = use(new ZstdOutputStream(os).setFlushPolicy(4000, 0))
+      zos.write(input, 0, 3000)
+      assert(os.size == 0)
+      zos.write(input, 3000, 1000)
+      val flushed = os.size
+      assert(flushed > 0)
+      // the flushed blocks are decodable without the end of the frame
+      val zis = use(new ZstdInputStream(new ByteArrayInputStream(os.toByteArray)).setContinuous(true))
+      val partial = new Array[Byte](4000)
+      var read = 0
+      while (read < partial.length) {
+        read += zis.read(partial, read, partial.length - read)
+      }
+      assert(partial.toSeq == input.take(4000).toSeq)
+      zos.write(input, 4000, 1000)
+      assert(os.size == flushed)
+      zos.write(input, 5000, 5000)
+      zos.close()
+      assert(Zstd.decompress(os.toByteArray, input.length).toSeq == input.toSeq)
+      assertThrows[IllegalArgumentException] {
+        zos.setFlushPolicy(-1, 0)
+      }
+
+      // by time, checked on writes
+      val os2 = new ByteArrayOutputStream()
+      val zos2 = use(new ZstdOutputStream(os2).setFlushPolicy(0, 10))
+      zos2.write(input, 0, 100)
+      Thread.sleep(20)
+      zos2.write(input, 100, 100)
+      assert(os2.size > 0)
+
+      // direct buffers
+      val compressed = ByteBuffer.allocateDirect(Zstd.compressBound(input.length).toInt)
+      var flushes = 0
+      val zds = use(new ZstdDirectBufferCompressingStreamNoFinalizer(ByteBuffer.allocateDirect(65536), 3) {
+        override protected def flushBuffer(toFlush: ByteBuffer): ByteBuffer = {
+          toFlush.flip()
+          compressed.put(toFlush)
+          toFlush.clear()
+          flushes += 1
+          toFlush
+        }
+      }).setTargetCBlockSize(2048).setFlushPolicy(4000, 0)
+      val src = ByteBuffer.allocateDirect(input.length)
+      src.put(input).flip()
+      src.limit(3000)
+      zds.compress(src)
+      assert(flushes == 0)
+      src.limit(input.length)
+      zds.compress(src)
+      assert(flushes == 1)
+      zds.close()
+      compressed.flip()
+      val result = new Array[Byte](compressed.remaining)
+      compressed.get(result)
+      assert(Zstd.decompress(result, input.length).toSeq == input.toSeq)
+    }.get
+  }
+
   "advanced compression api" should "produce the same file as binary zstd" in {
     Using.Manager { use =>
       val file = new File("src/test/resources/xml")
@@ -44,6 +44,115 @@ class ZstdDictSpec extends AnyFlatSpec {
     }
   }
 
+  "Zstd" should "train dictionaries with COVER and fastCover parameters" in {
+    val samples = source.sliding(1024, 1024).take(1024).map(_.toArray).toArray
+    val trainer = new ZstdDictTrainer(1024 * 1024, 16 * 1024)
+    for (sample <- samples) {
+      trainer.addSample(sample)
+    }
+    // optimization fills in the selected parameters
+    val optimized = new ZstdDictTrainParams().setD(8).setSteps(4).setNbThreads(2).setOptimize(true)
+    val dict = trainer.trainSamples(optimized)
+    assert(optimized.getK > 0)
+    assert(Zstd.getDictIdFromDict(dict) != 0)
+    val input = samples.take(16).flatten
+    val compressed = Zstd.compressUsingDict(input, dict, 3)
+    assert(Zstd.decompress(compressed, dict, input.length).toSeq == input.toSeq)
+
+    // reuse the selected parameters with COVER and a fixed dictID
+    val cover = new ZstdDictTrainParams().setFastCover(false).setK(optimized.getK).setD(optimized.getD).setDictId(42)
+    val dictBuffer = new Array[Byte](16 * 1024)
+    val size = Zstd.trainFromBuffer(samples, dictBuffer, cover)
+    assert(!Zstd.isError(size))
+    assert(Zstd.getDictIdFromDict(dictBuffer.take(size.toInt)) == 42)
+
+    // k and d are required without optimization
+    intercept[ZstdException] {
+      trainer.trainSamples(new ZstdDictTrainParams())
+    }
+  }
+
+  "Zstd" should "train dictionaries from a reservoir of samples" in {
+    val samples = source.sliding(1024, 1024).map(_.toArray).toArray
+    val budget = 256 * 1024
+    val trainer = new ZstdReservoirDictTrainer(budget, 16 * 1024)
+    for (sample <- samples) {
+      trainer.addSample(sample)
+    }
+    assert(trainer.getSamplesSeen == samples.length)
+    assert(trainer.getSamplesSize <= budget)
+    assert(trainer.getSamplesKept > 200)
+    val indexes = trainer.getSampleIndexes
+    assert(indexes.length == trainer.getSamplesKept)
+    assert(indexes.distinct.length == indexes.length)
+    // not only the first samples are kept
+    assert(indexes.last > samples.length / 2)
+
+    val dict = trainer.trainSamples()
+    val retrained = trainer.trainSamples(new ZstdDictTrainParams().setK(200).setD(8))
+    for (d <- List(dict, retrained)) {
+      val input = samples(indexes.last.toInt)
+      val compressed = Zstd.compressUsingDict(input, d, 3)
+      assert(Zstd.decompress(compressed, d, input.length).toSeq == input.toSeq)
+    }
+
+    trainer.clear()
+    assert(trainer.getSamplesKept == 0)
+    assert(!trainer.addSample(new Array[Byte](budget + 1)))
+  }
+
+  "Zstd" should "refill the reservoir after evicting a large sample" in {
+    val budget = 100000
+    val trainer = new ZstdReservoirDictTrainer(budget, 16 * 1024)
+    val small = new Array[Byte](1000)
+    for (_ <- 0 until 200) {
+      trainer.addSample(small)
+    }
+    trainer.addSample(new Array[Byte](90000))
+    for (_ <- 0 until 1000000) {
+      trainer.addSample(small)
+    }
+    assert(trainer.getSamplesSeen == 1000201)
+    assert(trainer.getSamplesSize <= budget)
+    // the budget freed by the eviction of the large sample is used again
+    assert(trainer.getSamplesSize > 90000)
+    assert(trainer.getSamplesKept > 90)
+    // the kept samples are spread over the whole stream
+    val indexes = trainer.getSampleIndexes
+    assert(indexes.head < 500000 && indexes.last > 500000)
+  }
+
+  "Zstd" should "evaluate dictionaries on holdout samples" in {
+    val samples = source.sliding(1024, 1024).take(2048).map(_.toArray).toArray
+    val trainer = new ZstdDictTrainer(1024 * 1024, 16 * 1024)
+    val (training, holdout) = samples.zipWithIndex.partition(_._2 % 2 == 0)
+    for ((sample, _) <- training) {
+      trainer.addSample(sample)
+    }
+    val dict = trainer.trainSamples()
+    val evaluator = new ZstdDictEvaluator(holdout.map(_._1)).setIterations(2).setParallelism(2)
+    val results = evaluator.evaluate(java.util.Arrays.asList(null, dict), 1, 3)
+    assert(results.size == 4)
+    val List(noDict1, noDict3, dict1, dict3) = List(results.get(0), results.get(1), results.get(2), results.get(3))
+    assert(noDict1.getDictId == 0 && noDict1.getLevel == 1)
+    assert(noDict3.getDictId == 0 && noDict3.getLevel == 3)
+    assert(dict1.getDictId == Zstd.getDictIdFromDict(dict) && dict1.getDictSize == dict.length)
+    assert(dict3.getLevel == 3)
+    // small samples compress much better with a dictionary
+    assert(dict1.getRatio > noDict1.getRatio * 1.5)
+    assert(dict3.getRatio > noDict3.getRatio * 1.5)
+    for (r <- List(noDict1, noDict3, dict1, dict3)) {
+      // the total of the samples, not of the iterations
+      assert(r.getOriginalSize == 1024 * 1024)
+      assert(r.getCompressionSpeed > 0 && r.getDecompressionSpeed > 0)
+    }
+    assert(dict1.getCompressDictLoadNanos > 0 && dict1.getDecompressDictLoadNanos > 0)
+    // the sequential evaluation with a single iteration gives the same sizes
+    val single = new ZstdDictEvaluator(holdout.map(_._1)).evaluate(dict, 3)
+    assert(single.getCompressedSize == dict3.getCompressedSize)
+    assert(single.getOriginalSize == dict3.getOriginalSize)
+  }
+
   val input = source.toArray
   val legacyS = List(true, false)
   val levels = List(1)
@@ -392,6 +501,355 @@ class ZstdDictSpec extends AnyFlatSpec {
       assert(input.toSeq == output.toSeq)
     }
 
+    it should s"resolve dictionaries from a registry with legacy $legacy" in {
+      val id1 = Zstd.getDictIdFromDict(dict)
+      val id2 = Zstd.getDictIdFromDict(dict2)
+      assert(id1 != id2)
+      val part1 = input.take(100000)
+      val part2 = input.slice(100000, 150000)
+      val frame1 = Zstd.compress(part1, new ZstdDictCompress(dict, 1))
+      val frame2 = Zstd.compress(part2, new ZstdDictCompress(dict2, 1))
+
+      var loads = 0
+      val registry = new ZstdDictRegistry(1, new ZstdDictRegistry.Loader {
+        override def load(dictId: Long): ZstdDictDecompress = {
+          loads += 1
+          if (dictId == id1) new ZstdDictDecompress(dict)
+          else if (dictId == id2) new ZstdDictDecompress(dict2)
+          else null
+        }
+      })
+
+      // one-shot, alternating dictionaries
+      Using.resource(new ZstdDecompressCtx()) { ctx =>
+        ctx.setDictRegistry(registry)
+        for (_ <- 1 to 3) {
+          assert(ctx.decompress(frame1, part1.length).toSeq == part1.toSeq)
+          assert(ctx.decompress(frame2, part2.length).toSeq == part2.toSeq)
+          val src = ByteBuffer.allocateDirect(frame2.length)
+          src.put(frame2).flip()
+          val dst = ctx.decompress(src, part2.length)
+          val out = new Array[Byte](part2.length)
+          dst.get(out)
+          assert(out.toSeq == part2.toSeq)
+        }
+      }
+      // the context keeps only the current dictionary, the registry evicts the other one
+      assert(loads == 6)
+      assert(registry.size == 1)
+
+      // one call with frames using different dictionaries
+      Using.resource(new ZstdDecompressCtx()) { ctx =>
+        ctx.setDictRegistry(registry)
+        val frames = frame1 ++ frame2 ++ frame1
+        val expected = part1 ++ part2 ++ part1
+        assert(ctx.decompress(frames, expected.length).toSeq == expected.toSeq)
+        val src = ByteBuffer.allocateDirect(frames.length)
+        src.put(frames).flip()
+        val dst = ctx.decompress(src, expected.length)
+        val out = new Array[Byte](expected.length)
+        dst.get(out)
+        assert(out.toSeq == expected.toSeq)
+        // with byte arrays larger than the max critical size
+        ctx.setMaxCriticalSize(16 * 1024)
+        assert(ctx.decompress(frames, expected.length).toSeq == expected.toSeq)
+        // streaming, the dictionary is resolved at the start of each frame
+        src.rewind()
+        val streamed = ByteBuffer.allocateDirect(expected.length)
+        while (src.hasRemaining) {
+          ctx.decompressDirectByteBufferStream(streamed, src)
+        }
+        streamed.flip()
+        streamed.get(out)
+        assert(out.toSeq == expected.toSeq)
+        // with the frame headers split across calls
+        val chunk = ByteBuffer.allocateDirect(3)
+        streamed.clear()
+        src.rewind()
+        while (src.hasRemaining) {
+          chunk.clear()
+          while (chunk.hasRemaining && src.hasRemaining) chunk.put(src.get())
+          chunk.flip()
+          while (chunk.hasRemaining) {
+            ctx.decompressDirectByteBufferStream(streamed, chunk)
+          }
+        }
+        streamed.flip()
+        streamed.get(out)
+        assert(out.toSeq == expected.toSeq)
+      }
+
+      // the replaced dictionaries are not pinned by the context
+      val ddict1 = new ZstdDictDecompress(dict)
+      val ddict2 = new ZstdDictDecompress(dict2)
+      val pinned = new ZstdDictRegistry(2)
+      pinned.register(ddict1)
+      pinned.register(ddict2)
+      Using.resource(new ZstdDecompressCtx()) { ctx =>
+        ctx.setDictRegistry(pinned)
+        assert(ctx.decompress(frame1, part1.length).toSeq == part1.toSeq)
+        assert(ctx.decompress(frame2, part2.length).toSeq == part2.toSeq)
+        ddict1.close()
+        intercept[IllegalStateException] {
+          ddict2.close()
+        }
+      }
+      ddict2.close()
+
+      // streaming, frames with different dictionaries
+      val concatenated = frame1 ++ frame2 ++ frame1
+      val expected = part1 ++ part2 ++ part1
+      val zis = new ZstdInputStream(new ByteArrayInputStream(concatenated)).setDictRegistry(registry)
+      val output = new ByteArrayOutputStream()
+      val block = new Array[Byte](7919)
+      var read = zis.read(block)
+      while (read >= 0) {
+        output.write(block, 0, read)
+        read = zis.read(block)
+      }
+      zis.close()
+      assert(output.toByteArray.toSeq == expected.toSeq)
+
+      // streaming, magicless frames
+      def magicless(data: Array[Byte], d: Array[Byte]): Array[Byte] =
+        Using.resource(new ZstdCompressCtx()) { cctx =>
+          cctx.setMagicless(true).setDictID(true).loadDict(d)
+          cctx.compress(data)
+        }
+      val magiclessFrames = magicless(part1, dict) ++ magicless(part2, dict2) ++ magicless(part1, dict)
+      val mzis = new ZstdInputStream(new ByteArrayInputStream(magiclessFrames)).setMagicless(true).setDictRegistry(registry)
+      val moutput = new ByteArrayOutputStream()
+      read = mzis.read(block)
+      while (read >= 0) {
+        moutput.write(block, 0, read)
+        read = mzis.read(block)
+      }
+      mzis.close()
+      assert(moutput.toByteArray.toSeq == expected.toSeq)
+
+      // unknown dictionary
+      val empty = new ZstdDictRegistry(4)
+      Using.resource(new ZstdDecompressCtx()) { ctx =>
+        ctx.setDictRegistry(empty)
+        val e = intercept[ZstdException] {
+          ctx.decompress(frame1, part1.length)
+        }
+        assert(e.getErrorCode == Zstd.errDictionaryWrong)
+        empty.register(dict)
+        assert(ctx.decompress(frame1, part1.length).toSeq == part1.toSeq)
+      }
+    }
+
+    it should s"build dictionaries with advanced parameters with legacy $legacy" in {
+      val samples = input.grouped(1024).take(64).toArray
+      val ddict = new ZstdDictDecompress(dict)
+      def roundTrip(cdict: ZstdDictCompress, level: Int): Long = {
+        Using.resource(new ZstdCompressCtx()) { cctx =>
+          cctx.setLevel(level).loadDict(cdict)
+          Using.resource(new ZstdDecompressCtx()) { dctx =>
+            dctx.loadDict(ddict)
+            samples.map { sample =>
+              val compressed = cctx.compress(sample)
+              assert(dctx.decompress(compressed, sample.length).toSeq == sample.toSeq)
+              compressed.length.toLong
+            }.sum
+          }
+        }
+      }
+      Using.Manager { use =>
+        val plain = use(new ZstdDictCompress(dict, 7))
+        val dds = use(new ZstdDictCompress.Builder().setLevel(7).setEnableDedicatedDictSearch(true).build(dict))
+        // the dedicated search structure has larger hash tables, zstd falls back silently to the
+        // normal one when the parameters don't support it
+        assert(dds.sizeOf > plain.sizeOf)
+        val defaults = use(new ZstdDictCompress.Builder().setLevel(7).build(dict))
+        assert(defaults.sizeOf == plain.sizeOf)
+        val plainSize = roundTrip(plain, 7)
+        val ddsSize = roundTrip(dds, 7)
+        // dedicated dict search trades a bit of ratio for speed
+        assert(ddsSize < plainSize * 1.1)
+
+        val buffer = wrapInDirectByteBuffer(dict)
+        val custom = use(new ZstdDictCompress.Builder().setLevel(5).setStrategy(4).setHashLog(16).setChainLog(16)
+          .setByReference(true).build(buffer))
+        assert(custom.getByReferenceBuffer eq buffer)
+        assert(roundTrip(custom, 5) > 0)
+      }.get
+
+      val e = intercept[ZstdException] {
+        new ZstdDictCompress.Builder().setWindowLog(1).build(dict)
+      }
+      assert(e.getErrorCode == Zstd.errParameterOutOfBound)
+      ddict.close()
+    }
+
+    it should s"write and map dictionary files with legacy $legacy" in {
+      val path = java.nio.file.Files.createTempFile("zstd-dict", ".zdict")
+      try {
+        val metadata = new java.util.LinkedHashMap[String, String]()
+        metadata.put("trainer", "fastCover")
+        metadata.put("samples", "1024")
+        ZstdDictFile.write(path, dict, 5, metadata)
+        val file = ZstdDictFile.read(path)
+        assert(file.getDictId == Zstd.getDictIdFromDict(dict))
+        assert(file.getLevel == 5)
+        assert(file.getMetadata == metadata)
+        val content = new Array[Byte](dict.length)
+        file.getContent.get(content)
+        assert(content.toSeq == dict.toSeq)
+
+        Using.Manager { use =>
+          val cdict = use(file.loadCompress())
+          val ddict = use(file.loadDecompress())
+          assert(ddict.getDictId == file.getDictId)
+          // the dictionaries reference the mapped content
+          assert(ddict.getByReferenceBuffer.isDirect)
+          assert(cdict.getByReferenceBuffer.isDirect)
+          val compressed = Zstd.compress(input, cdict)
+          assert(Zstd.decompress(compressed, ddict, input.length).toSeq == input.toSeq)
+        }.get
+
+        // corrupted content
+        val bytes = java.nio.file.Files.readAllBytes(path)
+        bytes(bytes.length - 1) = (bytes(bytes.length - 1) ^ 1).toByte
+        java.nio.file.Files.write(path, bytes)
+        val e = intercept[ZstdIOException] {
+          ZstdDictFile.read(path)
+        }
+        assert(e.getErrorCode == Zstd.errChecksumWrong)
+        assert(ZstdDictFile.read(path, false).getLevel == 5)
+        // truncated header
+        java.nio.file.Files.write(path, bytes.take(30))
+        val e2 = intercept[ZstdIOException] {
+          ZstdDictFile.read(path)
+        }
+        assert(e2.getErrorCode == Zstd.errDictionaryCorrupted)
+      } finally {
+        // can't be deleted while mapped on Windows
+        if (!path.toFile.delete()) path.toFile.deleteOnExit()
+      }
+    }
+
+    it should s"choose per payload between dictionary, prefix and no dictionary with legacy $legacy" in {
+      val small = input.slice(1000, 1500)
+      val large = input.slice(100000, 300000)
+      val registry = new ZstdDictRegistry(4)
+      registry.register(dict)
+      Using.Manager { use =>
+        val cdict = use(new ZstdDictCompress(dict, 3))
+        val cctx = use(new ZstdCompressCtx()).setLevel(3)
+        val dctx = use(new ZstdDecompressCtx()).setDictRegistry(registry)
+        val policy = new ZstdDictPolicy(cctx, cdict).setDictMaxSize(16 * 1024)
+        // the policy enables the dictID per frame with the dictionary
+        cctx.setDictID(false)
+        assert(policy.getDecision(small.length) == ZstdDictPolicy.Decision.DICT)
+        assert(policy.getDecision(large.length) == ZstdDictPolicy.Decision.NONE)
+
+        // the dictID in the frame tells the decompressor which dictionary to use
+        val smallFrame = policy.compress(small)
+        val largeFrame = policy.compress(large)
+        assert(Zstd.getDictIdFromFrame(smallFrame) == Zstd.getDictIdFromDict(dict))
+        assert(Zstd.getDictIdFromFrame(largeFrame) == 0)
+        assert(dctx.decompress(smallFrame, small.length).toSeq == small.toSeq)
+        assert(dctx.decompress(largeFrame, large.length).toSeq == large.toSeq)
+        assert(policy.getDecisionCount(ZstdDictPolicy.Decision.DICT) == 1)
+        assert(policy.getDecisionCount(ZstdDictPolicy.Decision.NONE) == 1)
+
+        // sampling picks the smallest output, the dictionary is the best for small payloads
+        policy.setDictMaxSize(0).setSamplingInterval(10)
+        assert(policy.getDecision(small.length) == ZstdDictPolicy.Decision.NONE)
+        val sampled = policy.compress(small)
+        assert(sampled.toSeq == smallFrame.toSeq)
+        assert(policy.getDecision(small.length) == ZstdDictPolicy.Decision.DICT)
+        assert(policy.getDecision(small.length * 4) == ZstdDictPolicy.Decision.NONE)
+
+        // the prefix is the best for a new version of a payload
+        val previous = ByteBuffer.allocateDirect(large.length)
+        previous.put(large).flip()
+        val current = large.take(50000) ++ "changed".getBytes ++ large.drop(50000)
+        policy.setPrefix(previous).setSamplingInterval(1)
+        val src = ByteBuffer.allocateDirect(current.length)
+        src.put(current).flip()
+        val dst = ByteBuffer.allocateDirect(Zstd.compressBound(current.length).toInt)
+        val size = policy.compress(dst, src)
+        assert(policy.getDecision(current.length) == ZstdDictPolicy.Decision.PREFIX)
+        assert(size < 1000)
+        assert(!src.hasRemaining && dst.position == size)
+        dst.flip()
+        val frame = new Array[Byte](size)
+        dst.get(frame)
+        // like frames without dictionary
+        assert(Zstd.getDictIdFromFrame(frame) == 0)
+        val plain = use(new ZstdDecompressCtx())
+        assert(plain.refPrefix(previous).decompress(frame, current.length).toSeq == current.toSeq)
+      }.get
+    }
+
+    it should s"share digested dictionaries through a cache with legacy $legacy" in {
+      val cache = new ZstdDictCache(1)
+      val c1 = cache.acquireCompress(dict, 1)
+      // the same content, not the same array
+      val c2 = cache.acquireCompress(dict.clone(), 1)
+      assert(c1 eq c2)
+      val c3 = cache.acquireCompress(dict, 3)
+      assert(!(c1 eq c3))
+      val d1 = cache.acquireDecompress(dict)
+      assert(cache.size == 3)
+      // the users can't close the shared dictionaries
+      assertThrows[IllegalStateException] {
+        c1.close()
+      }
+
+      val compressed = Using.resource(new ZstdCompressCtx()) { ctx =>
+        ctx.loadDict(c1).compress(input)
+      }
+      Using.resource(new ZstdDecompressCtx()) { ctx =>
+        assert(ctx.loadDict(d1).decompress(compressed, input.length).toSeq == input.toSeq)
+      }
+
+      // released dictionaries are kept while there are at most 1 unused
+      cache.release(c1)
+      cache.release(d1)
+      assert(cache.size == 3)
+      assert(cache.acquireCompress(dict, 1) eq c1)
+      cache.release(c2)
+      cache.release(c1)
+      cache.release(c3)
+      assert(cache.size == 1)
+      assertThrows[IllegalArgumentException] {
+        cache.release(c3)
+      }
+      cache.clear()
+      assert(cache.size == 0)
+      // the evicted dictionaries are closed, the next acquire digests the content again
+      assertThrows[IllegalStateException] {
+        c1.acquireSharedLock()
+      }
+      val c4 = cache.acquireCompress(dict, 1)
+      assert(!(c4 eq c1))
+      cache.release(c4)
+
+      // the dictionaries built with different parameters are not shared
+      val builder = new ZstdDictCompress.Builder().setLevel(5).setEnableDedicatedDictSearch(true)
+      val b1 = cache.acquireCompress(dict, builder)
+      assert(cache.acquireCompress(dict, builder.copy()) eq b1)
+      val b2 = cache.acquireCompress(dict, builder.setEnableDedicatedDictSearch(false))
+      val b3 = cache.acquireCompress(dict, builder.setChainLog(16))
+      val l5 = cache.acquireCompress(dict, 5)
+      assert(Set(b1, b2, b3, l5).size == 4)
+      val withBuilder = Using.resource(new ZstdCompressCtx()) { ctx =>
+        ctx.loadDict(b1).compress(input)
+      }
+      Using.resource(new ZstdDecompressCtx()) { ctx =>
+        assert(ctx.loadDict(dict).decompress(withBuilder, input.length).toSeq == input.toSeq)
+      }
+      for (d <- List(b1, b1, b2, b3, l5)) {
+        cache.release(d)
+      }
+      cache.clear()
+      assert(cache.size == 0)
+    }
+
     it should s"round-trip streaming ByteBuffer compression/decompression with fast dict with legacy $legacy" in {
       val cdict = new ZstdDictCompress(dict, 0, dict.size, 1)
       val size  = input.length